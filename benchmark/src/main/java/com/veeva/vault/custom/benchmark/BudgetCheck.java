@@ -0,0 +1,47 @@
+package com.veeva.vault.custom.benchmark;
+
+import com.veeva.vault.custom.fake.FakeVault;
+import com.veeva.vault.custom.udc.vSDKServiceBudget;
+
+/**
+ * Runs every Scenario at each batch size with the service budgets in strict mode, and fails when an
+ * entry point exceeds its budget or a check of its outcome fails. The exit code is 1 on a failure, so
+ * the check can be run by a build:
+ *
+ *     java -cp target/benchmarks.jar com.veeva.vault.custom.benchmark.BudgetCheck
+ */
+
+public class BudgetCheck {
+
+	public static void main(String[] args) {
+		int failures = 0;
+		for (Scenario scenario : Scenario.values()) {
+			for (int batchSize : ServiceCallReport.BATCH_SIZES) {
+				FakeVault vault = ServiceCallReport.newVault(0);
+				Runnable entryPoint = scenario.prepare(vault, batchSize);
+				vault.newRequest();
+				vSDKServiceBudget.setStrict(true);
+
+				String problem;
+				try {
+					entryPoint.run();
+					problem = scenario.check(vault);
+				}
+				catch (RuntimeException e) {
+					problem = e.getMessage();
+				}
+
+				if (problem != null) {
+					System.out.println("FAIL " + scenario.getEntryPoint() + " x" + batchSize + ": " + problem);
+					failures++;
+				}
+			}
+		}
+
+		if (failures > 0) {
+			System.out.println(failures + " scenario runs failed.");
+			System.exit(1);
+		}
+		System.out.println("All scenario runs are within their service budgets.");
+	}
+}
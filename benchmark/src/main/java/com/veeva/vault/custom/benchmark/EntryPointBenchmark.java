@@ -0,0 +1,85 @@
+package com.veeva.vault.custom.benchmark;
+
+import com.veeva.vault.custom.fake.FakeVault;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/******************************************************************************
+ * Benchmark:    EntryPointBenchmark
+ *-----------------------------------------------------------------------------
+ * Description: Times each trigger and action of the Scenario enum against a
+ *              FakeVault, at batch sizes of 1, 50, 500 and 1000 records or
+ *              documents.
+ *
+ *              Every invocation gets a new vault with the data of the
+ *              scenario, so earlier invocations do not change the result.
+ *              At the end of each iteration, the service calls per record
+ *              of the last invocation are printed. A change in these
+ *              numbers is a change in round trips, even when the time
+ *              without latency hardly moves.
+ *
+ *              latencyMillis adds a wait to every service call, for
+ *              example -p latencyMillis=20 for a vault under load.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntryPointBenchmark {
+
+	@Param
+	public Scenario scenario;
+
+	@Param({"1", "50", "500", "1000"})
+	public int batchSize;
+
+	// Wait of every service call in milliseconds
+	@Param({"0"})
+	public long latencyMillis;
+
+	private FakeVault vault;
+	private Runnable entryPoint;
+
+	@Setup(Level.Invocation)
+	public void prepare() {
+		vault = ServiceCallReport.newVault(latencyMillis);
+		entryPoint = scenario.prepare(vault, batchSize);
+		vault.newRequest();
+	}
+
+	@Benchmark
+	public void execute() {
+		entryPoint.run();
+	}
+
+	@TearDown(Level.Iteration)
+	public void report() {
+		System.out.println();
+		System.out.println(ServiceCallReport.format(scenario, batchSize, vault));
+	}
+}
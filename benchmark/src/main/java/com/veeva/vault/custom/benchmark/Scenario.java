@@ -0,0 +1,231 @@
+package com.veeva.vault.custom.benchmark;
+
+import com.veeva.vault.custom.actions.vSDKExternalHttpCallout;
+import com.veeva.vault.custom.actions.vSDKLocalHttpCalloutAction;
+import com.veeva.vault.custom.actions.vSDKVaultToVaultHttpCalloutAction;
+import com.veeva.vault.custom.fake.FakeHttpRequest;
+import com.veeva.vault.custom.fake.FakeHttpResponse;
+import com.veeva.vault.custom.fake.FakeVault;
+import com.veeva.vault.custom.triggers.vSDKQueryService;
+import com.veeva.vault.custom.triggers.vSDKRecordService;
+import com.veeva.vault.sdk.api.action.DocumentActionContext;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordEvent;
+import com.veeva.vault.sdk.api.data.RecordTriggerContext;
+import com.veeva.vault.sdk.api.document.DocumentVersion;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The triggers and actions that are benchmarked. `prepare` stores the data an entry point reads
+ * in a FakeVault, adds the HTTP routes it calls, and returns the call of the entry point for a
+ * batch of records or documents.
+ */
+
+public enum Scenario {
+
+	//Half of the names already exist with one copy, and every name is inserted twice. The insert runs the
+	//BEFORE_INSERT and AFTER_INSERT triggers of vSDKQueryService and vSDKRecordService, as a vault does.
+	QUERY_SERVICE_TRIGGER("vSDKQueryService insert") {
+		@Override
+		Runnable prepare(FakeVault vault, int batchSize) {
+
+			vault.relationship("vsdk_service_basics__cr", SERVICE_BASICS, "related_to__c");
+			List<Record> records = new ArrayList<>();
+
+			for (int i = 0; i < batchSize; i++) {
+				int nameNumber = i / 2;
+				String name = "Record " + nameNumber;
+				if (nameNumber % 2 == 0 && i % 2 == 0) {
+					String originalId = vault.insert(SERVICE_BASICS, fields("name__v", name));
+					vault.insert(SERVICE_BASICS, fields("name__v", "Copy of: '" + name + "' 1", "related_to__c", originalId));
+				}
+				records.add(vault.newRecord(SERVICE_BASICS, fields("name__v", name)));
+			}
+
+			RecordTriggerContext beforeInsert = vault.newRecordTriggerContext(RecordEvent.BEFORE_INSERT, records);
+			RecordTriggerContext afterInsert = vault.newRecordTriggerContext(RecordEvent.AFTER_INSERT, records);
+			return () -> {
+				new vSDKQueryService().execute(beforeInsert);
+				vault.insertRecords(records);
+				new vSDKQueryService().execute(afterInsert);
+				new vSDKRecordService().execute(afterInsert);
+			};
+		}
+
+		//Every copy is related to its original, and only the originals get related records.
+		@Override
+		String check(FakeVault vault) {
+			for (Map<String, Object> row : vault.getRows(SERVICE_BASICS)) {
+				String name = String.valueOf(row.get("name__v"));
+				if (name.startsWith("Copy of: ") && row.get("related_to__c") == null) {
+					return "Copy " + name + " is not related to its original.";
+				}
+				if (name.startsWith("Related to: 'Copy of: ")) {
+					return "Related record " + name + " was created for a copy.";
+				}
+			}
+			return null;
+		}
+	},
+
+	//Every inserted record gets its related records.
+	RECORD_SERVICE_TRIGGER("vSDKRecordService AFTER_INSERT") {
+		@Override
+		Runnable prepare(FakeVault vault, int batchSize) {
+
+			List<Record> records = new ArrayList<>();
+			for (int i = 0; i < batchSize; i++) {
+				Map<String, Object> values = fields("name__v", "Record " + i);
+				values.put("id", vault.insert(SERVICE_BASICS, values));
+				records.add(vault.newRecord(SERVICE_BASICS, values));
+			}
+
+			RecordTriggerContext context = vault.newRecordTriggerContext(RecordEvent.AFTER_INSERT, records);
+			return () -> new vSDKRecordService().execute(context);
+		}
+	},
+
+	//Every document has another owner, so every role is updated and the workflow is started on every document.
+	LOCAL_HTTP_CALLOUT_ACTION("vSDKLocalHttpCalloutAction") {
+		@Override
+		Runnable prepare(FakeVault vault, int batchSize) {
+
+			List<DocumentVersion> documents = documents(vault, batchSize);
+			for (DocumentVersion document : documents) {
+				vault.documentRoleUser(document.getValue("id", ValueType.STRING), "owner__v", "1000002");
+			}
+
+			Map<String, Object> input = fields("owner__c", "1000003", "viewer__c", "1000004", "editor__c", "1000005");
+			input.put("id", vault.insert("vsdk_user_input_object__c", input));
+			Record inputRecord = vault.newRecord("vsdk_user_input_object__c", input);
+
+			vault.route(FakeVault.LOCAL, "POST", "/api/v19.1/objects/documents/lifecycle_actions", request -> {
+				Map<String, Object> action = fields("label__v", "Start HTTP Workflow", "name__v", "start_http_workflow__c",
+						"lifecycle__v", "vsdk_http_lifecycle__c", "state__v", "draft__c");
+				List<Object> actions = new ArrayList<>();
+				actions.add(action);
+				return FakeHttpResponse.ok(fields("responseStatus", "SUCCESS", "lifecycle_actions__v", actions));
+			});
+			vault.route(FakeVault.LOCAL, "PUT", "/api/v19.1/objects/documents/lifecycle_actions/", request -> {
+				List<Object> rows = new ArrayList<>();
+				for (String docId : request.getParameter("docIds").split(",")) {
+					rows.add(fields("responseStatus", "SUCCESS", "id", Long.valueOf(docId.split(":")[0])));
+				}
+				return FakeHttpResponse.success(rows);
+			});
+
+			DocumentActionContext context = vault.newDocumentActionContext(documents, inputRecord);
+			return () -> new vSDKLocalHttpCalloutAction().execute(context);
+		}
+	},
+
+	//Every document has one connection to the same target vault, where no crosslink exists yet.
+	VAULT_TO_VAULT_HTTP_CALLOUT_ACTION("vSDKVaultToVaultHttpCalloutAction") {
+		@Override
+		Runnable prepare(FakeVault vault, int batchSize) {
+
+			vault.relationship("document_vsdk_connection__cr", "document_vsdk_connection__c", "document__c");
+			List<DocumentVersion> documents = documents(vault, batchSize);
+			for (DocumentVersion document : documents) {
+				vault.insert("document_vsdk_connection__c", fields("document__c", document.getValue("id", ValueType.STRING),
+						"api_name__sys", V2V_CONNECTION, "remote_connection_id__sys", "0CN000000000101"));
+			}
+
+			FakeVault target = new FakeVault();
+			target.insert("connection__sys", fields("id", "0CN000000000101", "remote_vault_id__sys", "1000"));
+
+			vault.route(V2V_CONNECTION, "POST", "/api/v19.1/query", request -> FakeHttpResponse.success(target.select(request.getParameter("q"))));
+			vault.route(V2V_CONNECTION, "POST", "/api/v19.1/objects/documents/batch", request -> createCrosslinks(target, request));
+
+			DocumentActionContext context = vault.newDocumentActionContext(documents, null);
+			return () -> new vSDKVaultToVaultHttpCalloutAction().execute(context);
+		}
+	},
+
+	//Every document is enriched from the same external resource.
+	EXTERNAL_HTTP_CALLOUT("vSDKExternalHttpCallout") {
+		@Override
+		Runnable prepare(FakeVault vault, int batchSize) {
+
+			List<DocumentVersion> documents = documents(vault, batchSize);
+			vault.route("external_http_callout", "GET", "/api/unknown/", request ->
+					FakeHttpResponse.ok(fields("data", fields("id", 2, "name", "fuchsia rose", "pantone_value", "17-2031"))));
+
+			DocumentActionContext context = vault.newDocumentActionContext(documents, null);
+			return () -> new vSDKExternalHttpCallout().execute(context);
+		}
+	};
+
+	static final String SERVICE_BASICS = "vsdk_service_basics__c";
+	static final String V2V_CONNECTION = "vsdk_v2v_connection";
+
+	private final String entryPoint;
+
+	Scenario(String entryPoint) {
+		this.entryPoint = entryPoint;
+	}
+
+	public String getEntryPoint() {
+		return entryPoint;
+	}
+
+	/**
+	 * @param vault installed on the current thread, with no data yet
+	 * @param batchSize number of records or documents passed to the entry point
+	 * @return runs the entry point once
+	 */
+
+	abstract Runnable prepare(FakeVault vault, int batchSize);
+
+	/**
+	 * @param vault after the entry point has run
+	 * @return what the entry point did wrong, or null
+	 */
+
+	String check(FakeVault vault) {
+		return null;
+	}
+
+	//Stores the documents of a document action and returns their versions.
+	private static List<DocumentVersion> documents(FakeVault vault, int batchSize) {
+
+		List<DocumentVersion> documents = new ArrayList<>();
+		for (int i = 0; i < batchSize; i++) {
+			String id = String.valueOf(200000 + i);
+			Map<String, Object> values = fields("id", id, "version_id", id + "_0_1", "name__v", "Document " + i,
+					"major_version_number__v", BigDecimal.ZERO, "minor_version_number__v", BigDecimal.ONE,
+					"type__v", "vsdk_http_doctype__c", "lifecycle__v", "vsdk_http_lifecycle__c", "status__v", "draft__c");
+			vault.insert("documents", values);
+			documents.add(vault.newDocumentVersion(values));
+		}
+		return documents;
+	}
+
+	//Answers the CSV create of the Vault API with one result per row, in the same order.
+	private static FakeHttpResponse createCrosslinks(FakeVault target, FakeHttpRequest request) {
+
+		List<Object> rows = new ArrayList<>();
+		String[] lines = request.getBody().split("\n");
+		for (int i = 1; i < lines.length; i++) {
+			String[] columns = lines[i].replace("\"", "").split(",");
+			String id = target.insert("documents", fields("source_document_id__v", new BigDecimal(columns[0]),
+					"source_vault_id__v", new BigDecimal(columns[1]), "name__v", columns[3]));
+			rows.add(fields("responseStatus", "SUCCESS", "id", Long.valueOf(id)));
+		}
+		return FakeHttpResponse.success(rows);
+	}
+
+	private static Map<String, Object> fields(Object... namesAndValues) {
+		Map<String, Object> values = new LinkedHashMap<>();
+		for (int i = 0; i < namesAndValues.length; i += 2) {
+			values.put((String) namesAndValues[i], namesAndValues[i + 1]);
+		}
+		return values;
+	}
+}
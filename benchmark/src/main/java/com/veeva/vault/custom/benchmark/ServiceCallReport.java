@@ -0,0 +1,59 @@
+package com.veeva.vault.custom.benchmark;
+
+import com.veeva.vault.custom.fake.FakeVault;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Prints the service calls per record of every Scenario at each batch size, without timing them.
+ * The counts do not depend on the machine, so the output can be compared between two builds:
+ *
+ *     java -cp target/benchmarks.jar com.veeva.vault.custom.benchmark.ServiceCallReport
+ *
+ * Warnings and errors logged by an entry point, and a failed check of its outcome, are printed below its line.
+ */
+
+public class ServiceCallReport {
+
+	static final int[] BATCH_SIZES = {1, 50, 500, 1000};
+
+	public static void main(String[] args) {
+		for (Scenario scenario : Scenario.values()) {
+			for (int batchSize : BATCH_SIZES) {
+				FakeVault vault = newVault(0);
+				Runnable entryPoint = scenario.prepare(vault, batchSize);
+				vault.newRequest();
+				entryPoint.run();
+
+				System.out.println(format(scenario, batchSize, vault));
+				vault.getLogService().getWarnings().forEach(warning -> System.out.println("    WARN  " + warning));
+				vault.getLogService().getErrors().forEach(error -> System.out.println("    ERROR " + error));
+				String problem = scenario.check(vault);
+				if (problem != null) {
+					System.out.println("    CHECK " + problem);
+				}
+			}
+		}
+	}
+
+	//Returns an installed vault whose services all wait latencyMillis per call.
+	static FakeVault newVault(long latencyMillis) {
+		FakeVault vault = new FakeVault().install();
+		for (String service : new String[] {FakeVault.QUERY, FakeVault.RECORD, FakeVault.DOCUMENT,
+				FakeVault.DOCUMENT_ROLE, FakeVault.GROUP, FakeVault.HTTP}) {
+			vault.latency(service, latencyMillis);
+		}
+		return vault;
+	}
+
+	//Formats the calls of the last request, such as "vSDKRecordService AFTER_INSERT x500: 0.0040 calls/record (RecordService=2)".
+	static String format(Scenario scenario, int batchSize, FakeVault vault) {
+		StringBuilder calls = new StringBuilder();
+		for (Map.Entry<String, Integer> entry : vault.getCalls().entrySet()) {
+			calls.append(calls.length() > 0 ? ", " : "").append(entry.getKey()).append("=").append(entry.getValue());
+		}
+		return String.format(Locale.ROOT, "%s x%d: %.4f calls/record (%s)", scenario.getEntryPoint(), batchSize,
+				(double) vault.getCallCount() / batchSize, calls);
+	}
+}
@@ -0,0 +1,140 @@
+package com.veeva.vault.custom.fake;
+
+import com.veeva.vault.sdk.api.core.BatchOperation;
+import com.veeva.vault.sdk.api.core.BatchOperationError;
+import com.veeva.vault.sdk.api.core.ErrorResult;
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.data.PositionalRecordId;
+import com.veeva.vault.sdk.api.role.PositionalDocumentVersionId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A BatchOperation of a fake service. `execute` counts one round trip, checks every input and,
+ * unless an error rolls back the batch, applies the inputs without an error.
+ */
+
+public class FakeBatchOperation {
+
+	//Checks and applies one input of the batch.
+	interface Item {
+
+		//Returns the error message of the input, or null when it can be applied.
+		String check(int position);
+
+		//Applies the input and returns the ID of the saved record or document.
+		String apply(int position);
+	}
+
+	private final FakeVault vault;
+	private final String service;
+	private final int size;
+	private final Item item;
+	private final Class<?> successType;
+	private Consumer<List<Object>> successConsumer;
+	private Consumer<List<Object>> errorConsumer;
+	private boolean rollbackOnErrors;
+
+	FakeBatchOperation(FakeVault vault, String service, int size, Item item, Class<?> successType) {
+		this.vault = vault;
+		this.service = service;
+		this.size = size;
+		this.item = item;
+		this.successType = successType;
+	}
+
+	@SuppressWarnings("rawtypes")
+	static BatchOperation ofRecords(FakeVault vault, int size, Item item) {
+		return FakeProxy.of(BatchOperation.class, new FakeBatchOperation(vault, FakeVault.RECORD, size, item, PositionalRecordId.class));
+	}
+
+	@SuppressWarnings("rawtypes")
+	static BatchOperation ofDocumentRoles(FakeVault vault, int size, Item item) {
+		return FakeProxy.of(BatchOperation.class, new FakeBatchOperation(vault, FakeVault.DOCUMENT_ROLE, size, item, PositionalDocumentVersionId.class));
+	}
+
+	public FakeBatchOperation onSuccesses(Consumer<List<Object>> successConsumer) {
+		this.successConsumer = successConsumer;
+		return this;
+	}
+
+	public FakeBatchOperation onErrors(Consumer<List<Object>> errorConsumer) {
+		this.errorConsumer = errorConsumer;
+		return this;
+	}
+
+	public FakeBatchOperation rollbackOnErrors() {
+		this.rollbackOnErrors = true;
+		return this;
+	}
+
+	public void execute() {
+
+		vault.roundTrip(service);
+		List<Object> successes = new ArrayList<>();
+		List<Object> errors = new ArrayList<>();
+		String[] messages = new String[size];
+
+		for (int position = 0; position < size; position++) {
+			messages[position] = item.check(position);
+			if (messages[position] != null) {
+				errors.add(FakeProxy.of(BatchOperationError.class, new Result(position, null, messages[position])));
+			}
+		}
+		if (!errors.isEmpty() && rollbackOnErrors) {
+			throw new RollbackException("OPERATION_NOT_ALLOWED", messages[FakeProxy.target(errors.get(0), Result.class).position]);
+		}
+
+		for (int position = 0; position < size; position++) {
+			if (messages[position] == null) {
+				successes.add(FakeProxy.of(successType, new Result(position, item.apply(position), null)));
+			}
+		}
+		if (!successes.isEmpty() && successConsumer != null) {
+			successConsumer.accept(successes);
+		}
+		if (!errors.isEmpty() && errorConsumer != null) {
+			errorConsumer.accept(errors);
+		}
+	}
+
+	//A PositionalRecordId, PositionalDocumentVersionId or BatchOperationError.
+	public static class Result {
+
+		private final int position;
+		private final String id;
+		private final String message;
+
+		Result(int position, String id, String message) {
+			this.position = position;
+			this.id = id;
+			this.message = message;
+		}
+
+		public int getInputPosition() {
+			return position;
+		}
+
+		public String getRecordId() {
+			return id;
+		}
+
+		public String getDocumentVersionId() {
+			return id;
+		}
+
+		public ErrorResult getError() {
+			return FakeProxy.of(ErrorResult.class, this);
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		public String getType() {
+			return "INVALID_DATA";
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.veeva.vault.custom.fake;
+
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordChange;
+import com.veeva.vault.sdk.api.data.RecordEvent;
+import com.veeva.vault.sdk.api.document.DocumentVersion;
+
+import java.util.List;
+
+/**
+ * The RecordTriggerContext or DocumentActionContext passed to a trigger or action.
+ */
+
+public class FakeContext {
+
+	private final RecordEvent recordEvent;
+	private final List<RecordChange> recordChanges;
+	private final List<DocumentVersion> documentVersions;
+	private final Record userInputRecord;
+
+	FakeContext(RecordEvent recordEvent, List<RecordChange> recordChanges, List<DocumentVersion> documentVersions, Record userInputRecord) {
+		this.recordEvent = recordEvent;
+		this.recordChanges = recordChanges;
+		this.documentVersions = documentVersions;
+		this.userInputRecord = userInputRecord;
+	}
+
+	public RecordEvent getRecordEvent() {
+		return recordEvent;
+	}
+
+	public List<RecordChange> getRecordChanges() {
+		return recordChanges;
+	}
+
+	public List<DocumentVersion> getDocumentVersions() {
+		return documentVersions;
+	}
+
+	public Record getUserInputRecord() {
+		return userInputRecord;
+	}
+
+	//A RecordChange of an insert, which has no old record.
+	public static class Change {
+
+		private final Record newRecord;
+
+		Change(Record newRecord) {
+			this.newRecord = newRecord;
+		}
+
+		public Record getNew() {
+			return newRecord;
+		}
+
+		public Record getOld() {
+			return null;
+		}
+	}
+}
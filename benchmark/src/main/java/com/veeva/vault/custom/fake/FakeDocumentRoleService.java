@@ -0,0 +1,137 @@
+package com.veeva.vault.custom.fake;
+
+import com.veeva.vault.sdk.api.core.BatchOperation;
+import com.veeva.vault.sdk.api.document.DocumentVersion;
+import com.veeva.vault.sdk.api.role.DocumentRole;
+import com.veeva.vault.sdk.api.role.DocumentRoleUpdate;
+import com.veeva.vault.sdk.api.role.GetDocumentRolesResponse;
+import com.veeva.vault.sdk.api.role.GetUserInDocumentRolesResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The DocumentRoleService of a FakeVault, backed by `FakeVault.documentRoleUser`. Role and membership
+ * lookups and batch updates are one round trip each.
+ */
+
+public class FakeDocumentRoleService {
+
+	private final FakeVault vault;
+
+	FakeDocumentRoleService(FakeVault vault) {
+		this.vault = vault;
+	}
+
+	public GetDocumentRolesResponse getDocumentRoles(List<DocumentVersion> documentVersions, String roleName) {
+		vault.roundTrip(FakeVault.DOCUMENT_ROLE);
+		return FakeProxy.of(GetDocumentRolesResponse.class, new RolesResponse(vault, roleName));
+	}
+
+	public GetUserInDocumentRolesResponse getUserInDocumentRoles(String userId, List<DocumentRole> documentRoles) {
+		vault.roundTrip(FakeVault.DOCUMENT_ROLE);
+		return FakeProxy.of(GetUserInDocumentRolesResponse.class, new UserInRolesResponse(userId));
+	}
+
+	public DocumentRoleUpdate newDocumentRoleUpdate(String roleName, DocumentVersion documentVersion) {
+		return FakeProxy.of(DocumentRoleUpdate.class, new Update(docId(documentVersion), roleName));
+	}
+
+	@SuppressWarnings("rawtypes")
+	public BatchOperation batchUpdateDocumentRoles(List<DocumentRoleUpdate> documentRoleUpdates) {
+		return FakeBatchOperation.ofDocumentRoles(vault, documentRoleUpdates.size(), new FakeBatchOperation.Item() {
+
+			@Override
+			public String check(int position) {
+				return null;
+			}
+
+			@Override
+			public String apply(int position) {
+				Update update = FakeProxy.target(documentRoleUpdates.get(position), Update.class);
+				List<String> users = vault.getDocumentRoleUsers(update.docId, update.roleName);
+				users.removeAll(update.removed);
+				users.addAll(update.added);
+				return update.docId;
+			}
+		});
+	}
+
+	private static String docId(DocumentVersion documentVersion) {
+		return String.valueOf(FakeProxy.target(documentVersion, FakeRecord.class).getValues().get("id"));
+	}
+
+	//A GetDocumentRolesResponse. The users of each role are copied when it is read.
+	public static class RolesResponse {
+
+		private final FakeVault vault;
+		private final String roleName;
+
+		RolesResponse(FakeVault vault, String roleName) {
+			this.vault = vault;
+			this.roleName = roleName;
+		}
+
+		public DocumentRole getDocumentRole(DocumentVersion documentVersion) {
+			List<String> users = new ArrayList<>(vault.getDocumentRoleUsers(docId(documentVersion), roleName));
+			return FakeProxy.of(DocumentRole.class, new Role(roleName, users));
+		}
+	}
+
+	public static class Role {
+
+		private final String roleName;
+		private final List<String> users;
+
+		Role(String roleName, List<String> users) {
+			this.roleName = roleName;
+			this.users = users;
+		}
+
+		public String getRoleName() {
+			return roleName;
+		}
+
+		public List<String> getUsers() {
+			return users;
+		}
+
+		public List<String> getGroups() {
+			return new ArrayList<>();
+		}
+	}
+
+	public static class UserInRolesResponse {
+
+		private final String userId;
+
+		UserInRolesResponse(String userId) {
+			this.userId = userId;
+		}
+
+		public boolean isUserInDocumentRole(DocumentRole documentRole) {
+			return FakeProxy.target(documentRole, Role.class).users.contains(userId);
+		}
+	}
+
+	public static class Update {
+
+		private final String docId;
+		private final String roleName;
+		private final List<String> added = new ArrayList<>();
+		private final List<String> removed = new ArrayList<>();
+
+		Update(String docId, String roleName) {
+			this.docId = docId;
+			this.roleName = roleName;
+		}
+
+		public void addUsers(List<String> userIds) {
+			added.addAll(userIds);
+		}
+
+		public void removeUsers(List<String> userIds) {
+			removed.addAll(userIds);
+		}
+	}
+}
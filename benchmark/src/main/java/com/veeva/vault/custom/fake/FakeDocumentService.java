@@ -0,0 +1,50 @@
+package com.veeva.vault.custom.fake;
+
+import com.veeva.vault.sdk.api.document.DocumentVersion;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The DocumentService of a FakeVault. Documents are stored as rows of "documents".
+ * Each saveDocumentVersions call is one round trip.
+ */
+
+public class FakeDocumentService {
+
+	static final String OBJECT_NAME = "documents";
+
+	private final FakeVault vault;
+
+	FakeDocumentService(FakeVault vault) {
+		this.vault = vault;
+	}
+
+	public DocumentVersion newDocumentWithId(String id) {
+		FakeRecord document = new FakeRecord(OBJECT_NAME);
+		document.setValue("id", id);
+		return FakeProxy.of(DocumentVersion.class, document);
+	}
+
+	public DocumentVersion newVersionWithId(String versionId) {
+		FakeRecord document = new FakeRecord(OBJECT_NAME);
+		document.setValue("version_id", versionId);
+		document.setValue("id", versionId.split("_")[0]);
+		return FakeProxy.of(DocumentVersion.class, document);
+	}
+
+	public void saveDocumentVersions(List<DocumentVersion> documentVersions) {
+
+		vault.roundTrip(FakeVault.DOCUMENT);
+		for (DocumentVersion documentVersion : documentVersions) {
+			Map<String, Object> values = FakeProxy.target(documentVersion, FakeRecord.class).getValues();
+			Map<String, Object> row = vault.getRow(OBJECT_NAME, String.valueOf(values.get("id")));
+			if (row == null) {
+				vault.insert(OBJECT_NAME, values);
+			}
+			else {
+				row.putAll(values);
+			}
+		}
+	}
+}
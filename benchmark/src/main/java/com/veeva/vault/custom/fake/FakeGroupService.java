@@ -0,0 +1,54 @@
+package com.veeva.vault.custom.fake;
+
+import com.veeva.vault.sdk.api.group.GetGroupsResponse;
+import com.veeva.vault.sdk.api.group.Group;
+
+import java.util.List;
+
+/**
+ * The GroupService of a FakeVault, backed by `FakeVault.groupMember`. Every group exists, and each
+ * lookup is one round trip.
+ */
+
+public class FakeGroupService {
+
+	private final FakeVault vault;
+
+	FakeGroupService(FakeVault vault) {
+		this.vault = vault;
+	}
+
+	public GetGroupsResponse getGroupsByNames(List<String> groupNames) {
+		vault.roundTrip(FakeVault.GROUP);
+		return FakeProxy.of(GetGroupsResponse.class, new GroupsResponse());
+	}
+
+	public boolean isUserInGroup(String userId, Group group) {
+		vault.roundTrip(FakeVault.GROUP);
+		return vault.isGroupMember(group.getName(), userId);
+	}
+
+	public static class GroupsResponse {
+
+		public Group getGroupByName(String groupName) {
+			return FakeProxy.of(Group.class, new FakeGroup(groupName));
+		}
+	}
+
+	public static class FakeGroup {
+
+		private final String name;
+
+		FakeGroup(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getId() {
+			return "group:" + name;
+		}
+	}
+}
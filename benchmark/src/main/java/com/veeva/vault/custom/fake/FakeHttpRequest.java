@@ -0,0 +1,84 @@
+package com.veeva.vault.custom.fake;
+
+import com.veeva.vault.sdk.api.http.HttpMethod;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An HttpRequest of the fake HttpService. Routes read the method, path and parameters from it.
+ */
+
+public class FakeHttpRequest {
+
+	private final String connection;
+	private HttpMethod method = HttpMethod.GET;
+	private final StringBuilder path = new StringBuilder();
+	private final Map<String, String> headers = new LinkedHashMap<>();
+	private final Map<String, String> parameters = new LinkedHashMap<>();
+	private String body;
+
+	FakeHttpRequest(String connection) {
+		this.connection = connection;
+	}
+
+	public FakeHttpRequest setMethod(HttpMethod method) {
+		this.method = method;
+		return this;
+	}
+
+	public FakeHttpRequest appendPath(String pathPart) {
+		path.append(pathPart);
+		return this;
+	}
+
+	public FakeHttpRequest setHeader(String name, String value) {
+		headers.put(name, value);
+		return this;
+	}
+
+	public FakeHttpRequest setBodyParam(String name, String value) {
+		parameters.put(name, value);
+		return this;
+	}
+
+	public FakeHttpRequest setQuerystringParam(String name, String value) {
+		parameters.put(name, value);
+		return this;
+	}
+
+	public FakeHttpRequest setBody(String body) {
+		this.body = body;
+		return this;
+	}
+
+	public FakeHttpRequest setResolveTokens(boolean resolveTokens) {
+		return this;
+	}
+
+	public String getConnection() {
+		return connection;
+	}
+
+	public HttpMethod getMethod() {
+		return method;
+	}
+
+	public String getPath() {
+		return path.toString();
+	}
+
+	//Returns a body or query string parameter, or null.
+	public String getParameter(String name) {
+		return parameters.get(name);
+	}
+
+	public String getBody() {
+		return body;
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + connection + path;
+	}
+}
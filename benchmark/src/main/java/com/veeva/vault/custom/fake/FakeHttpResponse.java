@@ -0,0 +1,83 @@
+package com.veeva.vault.custom.fake;
+
+import com.veeva.vault.sdk.api.http.HttpResponse;
+import com.veeva.vault.sdk.api.json.JsonData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The response of a route. The body is built from maps, lists, strings, numbers and booleans
+ * and is read through the fake JsonData.
+ */
+
+public class FakeHttpResponse {
+
+	private final int statusCode;
+	private final Object body;
+	private final Map<String, List<String>> headers = new LinkedHashMap<>();
+
+	public FakeHttpResponse(int statusCode, Object body) {
+		this.statusCode = statusCode;
+		this.body = body;
+	}
+
+	//A 200 response with the body.
+	public static FakeHttpResponse ok(Object body) {
+		return new FakeHttpResponse(200, body);
+	}
+
+	//A 200 response with a Vault API envelope: responseStatus SUCCESS and the data.
+	public static FakeHttpResponse success(Object data) {
+		Map<String, Object> body = new LinkedHashMap<>();
+		body.put("responseStatus", "SUCCESS");
+		body.put("data", data);
+		return ok(body);
+	}
+
+	//A response with a Vault API envelope: responseStatus FAILURE and one error.
+	public static FakeHttpResponse failure(int statusCode, String type, String message) {
+		Map<String, Object> error = new LinkedHashMap<>();
+		error.put("type", type);
+		error.put("message", message);
+		List<Object> errors = new ArrayList<>();
+		errors.add(error);
+		Map<String, Object> body = new LinkedHashMap<>();
+		body.put("responseStatus", "FAILURE");
+		body.put("errors", errors);
+		return new FakeHttpResponse(statusCode, body);
+	}
+
+	public FakeHttpResponse header(String name, String value) {
+		headers.put(name, Collections.singletonList(value));
+		return this;
+	}
+
+	public int getHttpStatusCode() {
+		return statusCode;
+	}
+
+	public JsonData getResponseBody() {
+		return FakeJson.data(body);
+	}
+
+	public Map<String, List<String>> getHeaders() {
+		return headers;
+	}
+
+	boolean isSuccess() {
+		return statusCode >= 200 && statusCode < 300;
+	}
+
+	HttpResponse<?> toHttpResponse() {
+		return FakeProxy.of(HttpResponse.class, this);
+	}
+
+	@Override
+	public String toString() {
+		return statusCode + " " + FakeJson.write(body);
+	}
+}
@@ -0,0 +1,35 @@
+package com.veeva.vault.custom.fake;
+
+/**
+ * Answers the HTTP requests of one connection, method and path prefix. See `FakeVault.route`.
+ */
+
+public class FakeHttpRoute {
+
+	//Creates the response to a request.
+	public interface Responder {
+		FakeHttpResponse respond(FakeHttpRequest request);
+	}
+
+	private final String connection;
+	private final String method;
+	private final String pathPrefix;
+	private final Responder responder;
+
+	FakeHttpRoute(String connection, String method, String pathPrefix, Responder responder) {
+		this.connection = connection;
+		this.method = method;
+		this.pathPrefix = pathPrefix;
+		this.responder = responder;
+	}
+
+	boolean matches(FakeHttpRequest request) {
+		return connection.equals(request.getConnection())
+				&& (method == null || method.equalsIgnoreCase(request.getMethod().name()))
+				&& request.getPath().startsWith(pathPrefix);
+	}
+
+	FakeHttpResponse respond(FakeHttpRequest request) {
+		return responder.respond(request);
+	}
+}
@@ -0,0 +1,90 @@
+package com.veeva.vault.custom.fake;
+
+import com.veeva.vault.sdk.api.http.HttpOperation;
+import com.veeva.vault.sdk.api.http.HttpOperationError;
+import com.veeva.vault.sdk.api.http.HttpRequest;
+import com.veeva.vault.sdk.api.http.HttpResponse;
+
+import java.util.function.Consumer;
+
+/**
+ * The HttpService of a FakeVault. Each executed request is one round trip, answered by the
+ * routes of the vault. A response with a status outside 2xx goes to the error handler.
+ */
+
+public class FakeHttpService {
+
+	private final FakeVault vault;
+
+	FakeHttpService(FakeVault vault) {
+		this.vault = vault;
+	}
+
+	public HttpRequest newLocalHttpRequest() {
+		return FakeProxy.of(HttpRequest.class, new FakeHttpRequest(FakeVault.LOCAL));
+	}
+
+	public HttpRequest newHttpRequest(String connection) {
+		return FakeProxy.of(HttpRequest.class, new FakeHttpRequest(connection));
+	}
+
+	@SuppressWarnings("rawtypes")
+	public HttpOperation send(HttpRequest request, Object bodyType) {
+		return FakeProxy.of(HttpOperation.class, new Operation(vault, FakeProxy.target(request, FakeHttpRequest.class)));
+	}
+
+	public static class Operation {
+
+		private final FakeVault vault;
+		private final FakeHttpRequest request;
+		private Consumer<HttpResponse<?>> successConsumer;
+		private Consumer<HttpOperationError> errorConsumer;
+
+		Operation(FakeVault vault, FakeHttpRequest request) {
+			this.vault = vault;
+			this.request = request;
+		}
+
+		public Operation onSuccess(Consumer<HttpResponse<?>> successConsumer) {
+			this.successConsumer = successConsumer;
+			return this;
+		}
+
+		public Operation onError(Consumer<HttpOperationError> errorConsumer) {
+			this.errorConsumer = errorConsumer;
+			return this;
+		}
+
+		public void execute() {
+
+			vault.roundTrip(FakeVault.HTTP);
+			FakeHttpResponse response = vault.respond(request);
+
+			if (response.isSuccess()) {
+				if (successConsumer != null) {
+					successConsumer.accept(response.toHttpResponse());
+				}
+			}
+			else if (errorConsumer != null) {
+				errorConsumer.accept(FakeProxy.of(HttpOperationError.class, new Error(response)));
+			}
+		}
+	}
+
+	public static class Error {
+
+		private final FakeHttpResponse response;
+
+		Error(FakeHttpResponse response) {
+			this.response = response;
+		}
+
+		public String getMessage() {
+			return "HTTP " + response.getHttpStatusCode();
+		}
+
+		public HttpResponse<?> getHttpResponse() {
+			return response.toHttpResponse();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.veeva.vault.custom.fake;
+
+import com.veeva.vault.sdk.api.json.JsonArray;
+import com.veeva.vault.sdk.api.json.JsonData;
+import com.veeva.vault.sdk.api.json.JsonObject;
+import com.veeva.vault.sdk.api.json.JsonValueType;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JsonData, JsonObject and JsonArray over a body of maps, lists, strings, numbers and booleans.
+ * Numbers are read as BigDecimal, and any value can be read as a string.
+ */
+
+public final class FakeJson {
+
+	private final Object value;
+
+	private FakeJson(Object value) {
+		this.value = value;
+	}
+
+	static JsonData data(Object body) {
+		return FakeProxy.of(JsonData.class, new FakeJson(body));
+	}
+
+	//JsonData
+	public boolean isValidJson() {
+		return value instanceof Map || value instanceof List;
+	}
+
+	public JsonObject getJsonObject() {
+		return FakeProxy.of(JsonObject.class, new FakeJson(value));
+	}
+
+	public JsonArray getJsonArray() {
+		return FakeProxy.of(JsonArray.class, new FakeJson(value));
+	}
+
+	//JsonObject
+	public Object getValue(Object nameOrIndex, JsonValueType<?> valueType) {
+		Object element = nameOrIndex instanceof Integer ? list().get((Integer) nameOrIndex) : map().get(nameOrIndex);
+		return convert(element, valueType);
+	}
+
+	public boolean contains(String name) {
+		return map().containsKey(name);
+	}
+
+	public List<String> getProperties() {
+		return new ArrayList<>(map().keySet());
+	}
+
+	//JsonArray
+	public int getSize() {
+		return list().size();
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> map() {
+		return (Map<String, Object>) value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Object> list() {
+		return (List<Object>) value;
+	}
+
+	private static Object convert(Object element, JsonValueType<?> valueType) {
+		if (element == null) {
+			return null;
+		}
+		if (valueType == JsonValueType.STRING) {
+			return element instanceof String ? element : write(element);
+		}
+		if (element instanceof Map) {
+			return FakeProxy.of(JsonObject.class, new FakeJson(element));
+		}
+		if (element instanceof List) {
+			return FakeProxy.of(JsonArray.class, new FakeJson(element));
+		}
+		if (element instanceof Number) {
+			return new BigDecimal(element.toString());
+		}
+		return element;
+	}
+
+	static String write(Object element) {
+
+		if (element == null) {
+			return "null";
+		}
+		if (element instanceof String) {
+			return "\"" + ((String) element).replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+		}
+		StringBuilder json = new StringBuilder();
+		if (element instanceof Map) {
+			json.append("{");
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) element).entrySet()) {
+				json.append(json.length() > 1 ? "," : "").append(write(String.valueOf(entry.getKey()))).append(":").append(write(entry.getValue()));
+			}
+			return json.append("}").toString();
+		}
+		if (element instanceof List) {
+			json.append("[");
+			for (Object item : (List<?>) element) {
+				json.append(json.length() > 1 ? "," : "").append(write(item));
+			}
+			return json.append("]").toString();
+		}
+		return String.valueOf(element);
+	}
+
+	@Override
+	public String toString() {
+		return write(value);
+	}
+}
@@ -0,0 +1,84 @@
+package com.veeva.vault.custom.fake;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A LogService that keeps the warnings and errors of the current request and drops everything else,
+ * so logging does not distort the timings.
+ */
+
+public class FakeLogService {
+
+	// Messages kept per request
+	static final int MAX_MESSAGES = 100;
+
+	private final List<String> warnings = new ArrayList<>();
+	private final List<String> errors = new ArrayList<>();
+
+	public void info(String message, Object[] params) {
+	}
+
+	public void debug(String message, Object[] params) {
+	}
+
+	public void warn(String message, Object[] params) {
+		keep(warnings, message, params);
+	}
+
+	public void error(String message, Object[] params) {
+		keep(errors, message, params);
+	}
+
+	public boolean isDebugEnabled() {
+		return false;
+	}
+
+	public boolean isInfoEnabled() {
+		return false;
+	}
+
+	public boolean isWarnEnabled() {
+		return true;
+	}
+
+	public boolean isErrorEnabled() {
+		return true;
+	}
+
+	public void logResourceUsage(String message) {
+	}
+
+	public List<String> getWarnings() {
+		return warnings;
+	}
+
+	public List<String> getErrors() {
+		return errors;
+	}
+
+	void clear() {
+		warnings.clear();
+		errors.clear();
+	}
+
+	//Replaces each {} with the next parameter, as the Vault LogService does.
+	private static void keep(List<String> messages, String message, Object[] params) {
+
+		if (messages.size() >= MAX_MESSAGES) {
+			return;
+		}
+
+		StringBuilder formatted = new StringBuilder();
+		int start = 0;
+		int param = 0;
+		int placeholder;
+		while ((placeholder = message.indexOf("{}", start)) >= 0) {
+			formatted.append(message, start, placeholder);
+			formatted.append(params != null && param < params.length ? String.valueOf(params[param++]) : "{}");
+			start = placeholder + 2;
+		}
+		formatted.append(message.substring(start));
+		messages.add(formatted.toString());
+	}
+}
@@ -0,0 +1,89 @@
+package com.veeva.vault.custom.fake;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Implements a Vault Java SDK interface with a plain object. Each call is passed to the public
+ * method of the object with the same name and number of parameters, so a fake only implements
+ * the calls the triggers and actions actually make. Any other call fails with an
+ * UnsupportedOperationException that names it.
+ *
+ * A method that returns its own object, such as a builder setter, returns the proxy instead.
+ */
+
+final class FakeProxy implements InvocationHandler {
+
+	private static final Map<Class<?>, Map<Method, Method>> TARGET_METHODS = new ConcurrentHashMap<>();
+
+	private final Class<?> type;
+	private final Object target;
+
+	private FakeProxy(Class<?> type, Object target) {
+		this.type = type;
+		this.target = target;
+	}
+
+	static <T> T of(Class<T> type, Object target) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new FakeProxy(type, target)));
+	}
+
+	/**
+	 * @param value a proxy returned by `of`, or any other object
+	 * @return the object behind the proxy, or the value itself
+	 */
+
+	static Object target(Object value) {
+		if (value != null && Proxy.isProxyClass(value.getClass()) && Proxy.getInvocationHandler(value) instanceof FakeProxy) {
+			return ((FakeProxy) Proxy.getInvocationHandler(value)).target;
+		}
+		return value;
+	}
+
+	static <T> T target(Object value, Class<T> targetClass) {
+		return targetClass.cast(target(value));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+		if (method.getDeclaringClass() == Object.class) {
+			switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				default:
+					return target.toString();
+			}
+		}
+
+		Method targetMethod = TARGET_METHODS.computeIfAbsent(target.getClass(), key -> new ConcurrentHashMap<>())
+				.computeIfAbsent(method, this::findTargetMethod);
+		if (targetMethod == null) {
+			throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName() + " is not faked.");
+		}
+
+		try {
+			Object result = targetMethod.invoke(target, args);
+			return result == target ? proxy : result;
+		}
+		catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private Method findTargetMethod(Method method) {
+		for (Method candidate : target.getClass().getMethods()) {
+			if (candidate.getName().equals(method.getName()) && candidate.getParameterCount() == method.getParameterCount()) {
+				candidate.setAccessible(true);
+				return candidate;
+			}
+		}
+		return null;
+	}
+}
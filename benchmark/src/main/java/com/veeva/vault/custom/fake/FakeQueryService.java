@@ -0,0 +1,79 @@
+package com.veeva.vault.custom.fake;
+
+import com.veeva.vault.sdk.api.query.QueryResponse;
+import com.veeva.vault.sdk.api.query.QueryResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The QueryService of a FakeVault. Each query is one round trip and is evaluated on the stored rows
+ * with FakeVql.
+ */
+
+public class FakeQueryService {
+
+	private final FakeVault vault;
+
+	FakeQueryService(FakeVault vault) {
+		this.vault = vault;
+	}
+
+	public QueryResponse query(String query) {
+		vault.roundTrip(FakeVault.QUERY);
+		return Response.of(vault.evaluate(FakeVql.parse(query)));
+	}
+
+	public String escape(String value) {
+		return value.replace("\\", "\\\\").replace("'", "\\'");
+	}
+
+	//A QueryResponse. The results are already read, so they can be streamed more than once.
+	public static class Response {
+
+		private final List<QueryResult> results = new ArrayList<>();
+
+		static QueryResponse of(List<Result> results) {
+			Response response = new Response();
+			for (Result result : results) {
+				response.results.add(FakeProxy.of(QueryResult.class, result));
+			}
+			return FakeProxy.of(QueryResponse.class, response);
+		}
+
+		public Stream<QueryResult> streamResults() {
+			return results.stream();
+		}
+
+		public long getResultCount() {
+			return results.size();
+		}
+	}
+
+	//A QueryResult with the values of a stored row and the rows of its subqueries.
+	public static class Result {
+
+		private final Map<String, Object> row;
+		private final Map<String, List<Result>> subqueryResults;
+
+		Result(Map<String, Object> row, Map<String, List<Result>> subqueryResults) {
+			this.row = row;
+			this.subqueryResults = subqueryResults;
+		}
+
+		public Object getValue(String fieldName, Object valueType) {
+			return row.get(fieldName);
+		}
+
+		public QueryResponse getSubqueryResponse(String relationshipName) {
+			List<Result> related = subqueryResults.get(relationshipName);
+			return Response.of(related == null ? new ArrayList<>() : related);
+		}
+
+		Map<String, Object> getRow() {
+			return row;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package com.veeva.vault.custom.fake;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A Record or DocumentVersion that is not saved yet. Values are returned as they were set,
+ * so the value type of `getValue` is not checked.
+ */
+
+public class FakeRecord {
+
+	private final String objectName;
+	private final Map<String, Object> values = new LinkedHashMap<>();
+
+	FakeRecord(String objectName) {
+		this.objectName = objectName;
+	}
+
+	public Object getValue(String fieldName, Object valueType) {
+		return values.get(fieldName);
+	}
+
+	public void setValue(String fieldName, Object value) {
+		values.put(fieldName, value);
+	}
+
+	public String getObjectName() {
+		return objectName;
+	}
+
+	Map<String, Object> getValues() {
+		return values;
+	}
+
+	@Override
+	public String toString() {
+		return objectName + values;
+	}
+}
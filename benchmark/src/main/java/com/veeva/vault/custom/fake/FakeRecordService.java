@@ -0,0 +1,83 @@
+package com.veeva.vault.custom.fake;
+
+import com.veeva.vault.sdk.api.core.BatchOperation;
+import com.veeva.vault.sdk.api.data.Record;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The RecordService of a FakeVault. A batch save or delete is one round trip. Records saved
+ * without an ID are inserted, and records with an ID must already exist.
+ */
+
+public class FakeRecordService {
+
+	private final FakeVault vault;
+
+	FakeRecordService(FakeVault vault) {
+		this.vault = vault;
+	}
+
+	public Record newRecord(String objectName) {
+		return FakeProxy.of(Record.class, new FakeRecord(objectName));
+	}
+
+	public Record newRecordWithId(String objectName, String id) {
+		FakeRecord record = new FakeRecord(objectName);
+		record.setValue("id", id);
+		return FakeProxy.of(Record.class, record);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public BatchOperation batchSaveRecords(List<Record> records) {
+		return FakeBatchOperation.ofRecords(vault, records.size(), new FakeBatchOperation.Item() {
+
+			@Override
+			public String check(int position) {
+				FakeRecord record = FakeProxy.target(records.get(position), FakeRecord.class);
+				Object id = record.getValues().get("id");
+				if (id != null && vault.getRow(record.getObjectName(), String.valueOf(id)) == null) {
+					return "Record " + id + " of " + record.getObjectName() + " does not exist.";
+				}
+				return null;
+			}
+
+			@Override
+			public String apply(int position) {
+				FakeRecord record = FakeProxy.target(records.get(position), FakeRecord.class);
+				Object id = record.getValues().get("id");
+				if (id == null) {
+					String newId = vault.insert(record.getObjectName(), record.getValues());
+					record.setValue("id", newId);
+					return newId;
+				}
+				vault.getRow(record.getObjectName(), String.valueOf(id)).putAll(record.getValues());
+				return String.valueOf(id);
+			}
+		});
+	}
+
+	@SuppressWarnings("rawtypes")
+	public BatchOperation batchDeleteRecords(List<Record> records) {
+		return FakeBatchOperation.ofRecords(vault, records.size(), new FakeBatchOperation.Item() {
+
+			@Override
+			public String check(int position) {
+				FakeRecord record = FakeProxy.target(records.get(position), FakeRecord.class);
+				Object id = record.getValues().get("id");
+				return id != null && vault.getRow(record.getObjectName(), String.valueOf(id)) != null ? null
+						: "Record " + id + " of " + record.getObjectName() + " does not exist.";
+			}
+
+			@Override
+			public String apply(int position) {
+				FakeRecord record = FakeProxy.target(records.get(position), FakeRecord.class);
+				String id = String.valueOf(record.getValues().get("id"));
+				Map<String, Map<String, Object>> rows = vault.rows(record.getObjectName());
+				rows.remove(id);
+				return id;
+			}
+		});
+	}
+}
@@ -0,0 +1,40 @@
+package com.veeva.vault.custom.fake;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The RequestContext of a FakeVault. Values are kept until `FakeVault.newRequest`.
+ */
+
+class FakeRequestContext implements RequestContext {
+
+	private final Map<String, RequestContextValue> values = new HashMap<>();
+	private String currentUserId = "1000001";
+
+	@Override
+	public String getCurrentUserId() {
+		return currentUserId;
+	}
+
+	@Override
+	public void setValue(String name, RequestContextValue value) {
+		values.put(name, value);
+	}
+
+	@Override
+	public <T extends RequestContextValue> T getValue(String name, Class<T> valueClass) {
+		return valueClass.cast(values.get(name));
+	}
+
+	void setCurrentUserId(String currentUserId) {
+		this.currentUserId = currentUserId;
+	}
+
+	void clear() {
+		values.clear();
+	}
+}
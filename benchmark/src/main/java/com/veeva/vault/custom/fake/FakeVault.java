@@ -0,0 +1,350 @@
+package com.veeva.vault.custom.fake;
+
+import com.veeva.vault.sdk.api.action.DocumentActionContext;
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordChange;
+import com.veeva.vault.sdk.api.data.RecordEvent;
+import com.veeva.vault.sdk.api.data.RecordService;
+import com.veeva.vault.sdk.api.data.RecordTriggerContext;
+import com.veeva.vault.sdk.api.document.DocumentService;
+import com.veeva.vault.sdk.api.document.DocumentVersion;
+import com.veeva.vault.sdk.api.group.GroupService;
+import com.veeva.vault.sdk.api.http.HttpService;
+import com.veeva.vault.sdk.api.query.QueryService;
+import com.veeva.vault.sdk.api.role.DocumentRoleService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/******************************************************************************
+ * Benchmark Class:  FakeVault
+ *-----------------------------------------------------------------------------
+ * Description: An in-memory vault for running the triggers and actions
+ *              outside of Vault. It provides fakes of the QueryService,
+ *              RecordService, DocumentService, DocumentRoleService,
+ *              GroupService and HttpService, backed by in-memory records,
+ *              document roles, group members and HTTP routes.
+ *
+ *              Every call that would be a round trip in a vault, such as a
+ *              query, a batch save or an HTTP callout, is counted per
+ *              service and waits for the latency set for that service.
+ *              Creating records, requests and role updates is free.
+ *
+ *              `install` makes the vault current for the calling thread.
+ *              The ServiceLocator and RequestContext of this module locate
+ *              their services and values in the current vault.
+ *
+ *              Record triggers are not fired by the fake RecordService, and
+ *              "order by" and "limit" in VQL are ignored.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+public class FakeVault {
+
+	// Service names of the call counts and latencies
+	public static final String QUERY = "QueryService";
+	public static final String RECORD = "RecordService";
+	public static final String DOCUMENT = "DocumentService";
+	public static final String DOCUMENT_ROLE = "DocumentRoleService";
+	public static final String GROUP = "GroupService";
+	public static final String HTTP = "HttpService";
+	// Connection of HTTP requests created with newLocalHttpRequest
+	public static final String LOCAL = "local";
+
+	private static final ThreadLocal<FakeVault> CURRENT = new ThreadLocal<>();
+
+	private final Map<Class<?>, Object> services = new HashMap<>();
+	private final Map<String, Long> latencyByService = new HashMap<>();
+	private final Map<String, Integer> callsByService = new TreeMap<>();
+	private final Map<String, Map<String, Map<String, Object>>> rowsByObject = new HashMap<>();
+	private final Map<String, String[]> relationships = new HashMap<>();
+	private final Map<String, Set<String>> usersByGroup = new HashMap<>();
+	private final Map<String, List<String>> usersByDocumentRole = new HashMap<>();
+	private final List<FakeHttpRoute> routes = new ArrayList<>();
+	private final FakeRequestContext requestContext = new FakeRequestContext();
+	private final FakeLogService logService = new FakeLogService();
+	private long nextId = 100000;
+
+	public FakeVault() {
+		services.put(QueryService.class, FakeProxy.of(QueryService.class, new FakeQueryService(this)));
+		services.put(RecordService.class, FakeProxy.of(RecordService.class, new FakeRecordService(this)));
+		services.put(DocumentService.class, FakeProxy.of(DocumentService.class, new FakeDocumentService(this)));
+		services.put(DocumentRoleService.class, FakeProxy.of(DocumentRoleService.class, new FakeDocumentRoleService(this)));
+		services.put(GroupService.class, FakeProxy.of(GroupService.class, new FakeGroupService(this)));
+		services.put(HttpService.class, FakeProxy.of(HttpService.class, new FakeHttpService(this)));
+		services.put(LogService.class, FakeProxy.of(LogService.class, logService));
+	}
+
+	/**
+	 * @return the vault of the current thread
+	 * @throws IllegalStateException when no vault is installed
+	 */
+
+	public static FakeVault current() {
+		FakeVault vault = CURRENT.get();
+		if (vault == null) {
+			throw new IllegalStateException("No FakeVault is installed on this thread.");
+		}
+		return vault;
+	}
+
+	//Makes this vault current for the calling thread.
+	public FakeVault install() {
+		CURRENT.set(this);
+		return this;
+	}
+
+	public <T> T locate(Class<T> serviceClass) {
+		Object service = services.get(serviceClass);
+		if (service == null) {
+			throw new UnsupportedOperationException(serviceClass.getSimpleName() + " is not faked.");
+		}
+		return serviceClass.cast(service);
+	}
+
+	public RequestContext getRequestContext() {
+		return requestContext;
+	}
+
+	public FakeLogService getLogService() {
+		return logService;
+	}
+
+	/**
+	 * Sets the time each call to a service waits, as if it went to a vault.
+	 *
+	 * @param service such as QUERY or HTTP
+	 * @param millis waited per call
+	 */
+
+	public FakeVault latency(String service, long millis) {
+		latencyByService.put(service, millis);
+		return this;
+	}
+
+	public FakeVault currentUser(String userId) {
+		requestContext.setCurrentUserId(userId);
+		return this;
+	}
+
+	//Starts a new request: the request context values, call counts and logged messages are cleared. Stored data is kept.
+	public void newRequest() {
+		requestContext.clear();
+		callsByService.clear();
+		logService.clear();
+	}
+
+	//Returns the number of round trips per service since the last `newRequest`.
+	public Map<String, Integer> getCalls() {
+		return new TreeMap<>(callsByService);
+	}
+
+	public int getCallCount() {
+		int count = 0;
+		for (int calls : callsByService.values()) {
+			count += calls;
+		}
+		return count;
+	}
+
+	/**
+	 * Stores a record or document.
+	 *
+	 * @param objectName such as "vsdk_service_basics__c", or "documents"
+	 * @param values of the fields. A missing "id" is generated.
+	 * @return the ID of the stored row
+	 */
+
+	public String insert(String objectName, Map<String, Object> values) {
+		Map<String, Object> row = new LinkedHashMap<>(values);
+		if (row.get("id") == null) {
+			row.put("id", newId());
+		}
+		String id = String.valueOf(row.get("id"));
+		rowsByObject.computeIfAbsent(objectName, key -> new LinkedHashMap<>()).put(id, row);
+		return id;
+	}
+
+	//Returns the stored row, or null.
+	public Map<String, Object> getRow(String objectName, String id) {
+		Map<String, Map<String, Object>> rows = rowsByObject.get(objectName);
+		return rows == null ? null : rows.get(id);
+	}
+
+	public Collection<Map<String, Object>> getRows(String objectName) {
+		Map<String, Map<String, Object>> rows = rowsByObject.get(objectName);
+		return rows == null ? new ArrayList<>() : rows.values();
+	}
+
+	/**
+	 * Declares a relationship for VQL subqueries.
+	 *
+	 * @param relationshipName such as "vsdk_service_basics__cr"
+	 * @param childObject object of the related rows
+	 * @param parentField field of the related rows with the parent ID
+	 */
+
+	public FakeVault relationship(String relationshipName, String childObject, String parentField) {
+		relationships.put(relationshipName, new String[] {childObject, parentField});
+		return this;
+	}
+
+	public FakeVault groupMember(String groupName, String userId) {
+		usersByGroup.computeIfAbsent(groupName, key -> new HashSet<>()).add(userId);
+		return this;
+	}
+
+	public FakeVault documentRoleUser(String docId, String roleName, String userId) {
+		usersByDocumentRole.computeIfAbsent(docId + ":" + roleName, key -> new ArrayList<>()).add(userId);
+		return this;
+	}
+
+	/**
+	 * Answers HTTP requests. Routes are matched in the order they were added.
+	 *
+	 * @param connection of the request, or LOCAL
+	 * @param method such as "GET", or null for any method
+	 * @param pathPrefix the request path starts with
+	 * @param responder creates the response
+	 */
+
+	public FakeVault route(String connection, String method, String pathPrefix, FakeHttpRoute.Responder responder) {
+		routes.add(new FakeHttpRoute(connection, method, pathPrefix, responder));
+		return this;
+	}
+
+	/**
+	 * Evaluates a VQL query on the stored rows without counting a round trip. A route can use it to
+	 * answer the query endpoint of the Vault API.
+	 *
+	 * @param vql "select ... from ... where ..."
+	 * @return the matching rows
+	 */
+
+	public List<Map<String, Object>> select(String vql) {
+		List<Map<String, Object>> rows = new ArrayList<>();
+		for (FakeQueryService.Result result : evaluate(FakeVql.parse(vql))) {
+			rows.add(result.getRow());
+		}
+		return rows;
+	}
+
+	/**
+	 * Stores new records the way a vault does between the BEFORE and AFTER triggers of an insert,
+	 * without counting a round trip. Each record gets the ID of its stored row.
+	 *
+	 * @param records created with `newRecord`
+	 */
+
+	public void insertRecords(List<Record> records) {
+		for (Record record : records) {
+			FakeRecord fakeRecord = FakeProxy.target(record, FakeRecord.class);
+			fakeRecord.setValue("id", insert(fakeRecord.getObjectName(), fakeRecord.getValues()));
+		}
+	}
+
+	public Record newRecord(String objectName, Map<String, Object> values) {
+		FakeRecord record = new FakeRecord(objectName);
+		record.getValues().putAll(values);
+		return FakeProxy.of(Record.class, record);
+	}
+
+	public DocumentVersion newDocumentVersion(Map<String, Object> values) {
+		FakeRecord document = new FakeRecord("documents");
+		document.getValues().putAll(values);
+		return FakeProxy.of(DocumentVersion.class, document);
+	}
+
+	public RecordTriggerContext newRecordTriggerContext(RecordEvent recordEvent, List<Record> records) {
+		List<RecordChange> recordChanges = new ArrayList<>();
+		for (Record record : records) {
+			recordChanges.add(FakeProxy.of(RecordChange.class, new FakeContext.Change(record)));
+		}
+		return FakeProxy.of(RecordTriggerContext.class, new FakeContext(recordEvent, recordChanges, null, null));
+	}
+
+	public DocumentActionContext newDocumentActionContext(List<DocumentVersion> documentVersions, Record userInputRecord) {
+		return FakeProxy.of(DocumentActionContext.class, new FakeContext(null, null, documentVersions, userInputRecord));
+	}
+
+	//Counts one round trip to the service and waits for its latency.
+	void roundTrip(String service) {
+		callsByService.merge(service, 1, Integer::sum);
+		long millis = latencyByService.getOrDefault(service, 0L);
+		if (millis > 0) {
+			try {
+				Thread.sleep(millis);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	String newId() {
+		return String.valueOf(nextId++);
+	}
+
+	Map<String, Map<String, Object>> rows(String objectName) {
+		return rowsByObject.computeIfAbsent(objectName, key -> new LinkedHashMap<>());
+	}
+
+	List<String> getDocumentRoleUsers(String docId, String roleName) {
+		return usersByDocumentRole.computeIfAbsent(docId + ":" + roleName, key -> new ArrayList<>());
+	}
+
+	boolean isGroupMember(String groupName, String userId) {
+		return usersByGroup.getOrDefault(groupName, new HashSet<>()).contains(userId);
+	}
+
+	FakeHttpResponse respond(FakeHttpRequest request) {
+		for (FakeHttpRoute route : routes) {
+			if (route.matches(request)) {
+				return route.respond(request);
+			}
+		}
+		return FakeHttpResponse.failure(404, "NOT_FOUND", "No route for " + request);
+	}
+
+	List<FakeQueryService.Result> evaluate(FakeVql query) {
+
+		List<FakeQueryService.Result> results = new ArrayList<>();
+		for (Map<String, Object> row : rows(query.getObjectName()).values()) {
+			if (!query.matches(row)) {
+				continue;
+			}
+
+			Map<String, List<FakeQueryService.Result>> subqueryResults = new HashMap<>();
+			for (FakeVql subquery : query.getSubqueries()) {
+				List<FakeQueryService.Result> related = new ArrayList<>();
+				String[] relationship = relationships.get(subquery.getObjectName());
+				if (relationship != null) {
+					for (Map<String, Object> child : rows(relationship[0]).values()) {
+						if (row.get("id").equals(child.get(relationship[1])) && subquery.matches(child)) {
+							related.add(new FakeQueryService.Result(child, new HashMap<>()));
+						}
+					}
+				}
+				subqueryResults.put(subquery.getObjectName(), related);
+			}
+			results.add(new FakeQueryService.Result(row, subqueryResults));
+		}
+		return results;
+	}
+}
@@ -0,0 +1,295 @@
+package com.veeva.vault.custom.fake;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * The part of VQL the triggers and actions use: "select" with fields, LONGTEXT(field) and
+ * relationship subqueries, "from", and a "where" clause of =, !=, <, <=, >, >=, "like", "contains"
+ * and "null" comparisons joined with "and", "or" and parentheses. Anything after the "where"
+ * clause, such as "order by", is ignored.
+ */
+
+final class FakeVql {
+
+	private final String objectName;
+	private final List<FakeVql> subqueries;
+	private final Predicate<Map<String, Object>> where;
+
+	private FakeVql(String objectName, List<FakeVql> subqueries, Predicate<Map<String, Object>> where) {
+		this.objectName = objectName;
+		this.subqueries = subqueries;
+		this.where = where;
+	}
+
+	static FakeVql parse(String vql) {
+		Parser parser = new Parser(tokenize(vql), vql);
+		return parser.select();
+	}
+
+	//The object of a query, or the relationship of a subquery.
+	String getObjectName() {
+		return objectName;
+	}
+
+	List<FakeVql> getSubqueries() {
+		return subqueries;
+	}
+
+	boolean matches(Map<String, Object> row) {
+		return where == null || where.test(row);
+	}
+
+	//A string literal is kept with its quote, so it is never mistaken for a keyword.
+	private static List<String> tokenize(String vql) {
+
+		List<String> tokens = new ArrayList<>();
+		int i = 0;
+		while (i < vql.length()) {
+			char c = vql.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			}
+			else if (c == '\'') {
+				StringBuilder literal = new StringBuilder("'");
+				i++;
+				while (i < vql.length() && vql.charAt(i) != '\'') {
+					if (vql.charAt(i) == '\\' && i + 1 < vql.length()) {
+						i++;
+					}
+					literal.append(vql.charAt(i++));
+				}
+				tokens.add(literal.toString());
+				i++;
+			}
+			else if ("(),".indexOf(c) >= 0) {
+				tokens.add(String.valueOf(c));
+				i++;
+			}
+			else if ("=!<>".indexOf(c) >= 0) {
+				int end = i + 1 < vql.length() && vql.charAt(i + 1) == '=' ? i + 2 : i + 1;
+				if (c == '<' && end == i + 1 && i + 1 < vql.length() && vql.charAt(i + 1) == '>') {
+					end = i + 2;
+				}
+				tokens.add(vql.substring(i, end));
+				i = end;
+			}
+			else {
+				int start = i;
+				while (i < vql.length() && !Character.isWhitespace(vql.charAt(i)) && "(),'=!<>".indexOf(vql.charAt(i)) < 0) {
+					i++;
+				}
+				tokens.add(vql.substring(start, i));
+			}
+		}
+		return tokens;
+	}
+
+	private static final class Parser {
+
+		private final List<String> tokens;
+		private final String vql;
+		private int position;
+
+		Parser(List<String> tokens, String vql) {
+			this.tokens = tokens;
+			this.vql = vql;
+		}
+
+		FakeVql select() {
+
+			expect("select");
+			List<FakeVql> subqueries = new ArrayList<>();
+			do {
+				if (accept("(")) {
+					subqueries.add(select());
+					expect(")");
+				}
+				else {
+					next();
+					//A function such as LONGTEXT(field) returns the field
+					if (accept("(")) {
+						next();
+						expect(")");
+					}
+				}
+			} while (accept(","));
+
+			expect("from");
+			String objectName = next();
+			Predicate<Map<String, Object>> where = accept("where") ? or() : null;
+
+			//Skip "order by", "limit" and the like, up to the end of this query
+			int depth = 0;
+			while (position < tokens.size() && !(depth == 0 && peek(")"))) {
+				depth += peek("(") ? 1 : peek(")") ? -1 : 0;
+				position++;
+			}
+			return new FakeVql(objectName, subqueries, where);
+		}
+
+		private Predicate<Map<String, Object>> or() {
+			Predicate<Map<String, Object>> condition = and();
+			while (accept("or")) {
+				condition = condition.or(and());
+			}
+			return condition;
+		}
+
+		private Predicate<Map<String, Object>> and() {
+			Predicate<Map<String, Object>> condition = term();
+			while (accept("and")) {
+				condition = condition.and(term());
+			}
+			return condition;
+		}
+
+		private Predicate<Map<String, Object>> term() {
+
+			if (accept("(")) {
+				Predicate<Map<String, Object>> condition = or();
+				expect(")");
+				return condition;
+			}
+
+			String field = next();
+			String operator = next().toLowerCase(Locale.ROOT);
+
+			if (operator.equals("contains")) {
+				expect("(");
+				List<Object> values = new ArrayList<>();
+				do {
+					values.add(value(next()));
+				} while (accept(","));
+				expect(")");
+				return row -> values.stream().anyMatch(value -> compare(row.get(field), value) == 0);
+			}
+			if (operator.equals("like")) {
+				Pattern pattern = likePattern((String) value(next()));
+				return row -> row.get(field) != null && pattern.matcher(String.valueOf(row.get(field))).matches();
+			}
+
+			Object value = value(next());
+			if (value == null) {
+				boolean isNull = operator.equals("=");
+				return row -> (row.get(field) == null) == isNull;
+			}
+			switch (operator) {
+				case "=":
+					return row -> row.get(field) != null && compare(row.get(field), value) == 0;
+				case "!=":
+				case "<>":
+					return row -> row.get(field) != null && compare(row.get(field), value) != 0;
+				case "<":
+					return row -> row.get(field) != null && compare(row.get(field), value) < 0;
+				case "<=":
+					return row -> row.get(field) != null && compare(row.get(field), value) <= 0;
+				case ">":
+					return row -> row.get(field) != null && compare(row.get(field), value) > 0;
+				case ">=":
+					return row -> row.get(field) != null && compare(row.get(field), value) >= 0;
+				default:
+					throw new IllegalArgumentException("Unsupported VQL operator '" + operator + "' in: " + vql);
+			}
+		}
+
+		private Object value(String token) {
+			if (token.startsWith("'")) {
+				return token.substring(1);
+			}
+			if (token.equalsIgnoreCase("null")) {
+				return null;
+			}
+			if (token.equalsIgnoreCase("true") || token.equalsIgnoreCase("false")) {
+				return Boolean.valueOf(token);
+			}
+			return new BigDecimal(token);
+		}
+
+		private boolean peek(String token) {
+			return position < tokens.size() && tokens.get(position).equalsIgnoreCase(token);
+		}
+
+		private boolean accept(String token) {
+			if (peek(token)) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(String token) {
+			if (!accept(token)) {
+				throw new IllegalArgumentException("Expected '" + token + "' at token " + position + " of: " + vql);
+			}
+		}
+
+		private String next() {
+			if (position >= tokens.size()) {
+				throw new IllegalArgumentException("Unexpected end of: " + vql);
+			}
+			return tokens.get(position++);
+		}
+	}
+
+	//"%" matches any text. Like VQL, the match ignores case.
+	private static Pattern likePattern(String like) {
+		StringBuilder regex = new StringBuilder();
+		for (String part : like.split("%", -1)) {
+			if (regex.length() > 0) {
+				regex.append(".*");
+			}
+			regex.append(Pattern.quote(part));
+		}
+		return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	}
+
+	//Numbers compare as numbers and dates as instants. Everything else compares as text.
+	private static int compare(Object stored, Object literal) {
+
+		if (stored instanceof TemporalAccessor) {
+			Instant instant = toInstant(stored);
+			Instant other = toInstant(literal);
+			if (instant != null && other != null) {
+				return instant.compareTo(other);
+			}
+		}
+		if (stored instanceof Number || literal instanceof Number) {
+			try {
+				return new BigDecimal(String.valueOf(stored)).compareTo(new BigDecimal(String.valueOf(literal)));
+			}
+			catch (NumberFormatException e) {
+				//Not a number after all, so compare the text
+			}
+		}
+		return String.valueOf(stored).compareTo(String.valueOf(literal));
+	}
+
+	private static Instant toInstant(Object value) {
+		try {
+			if (value instanceof ZonedDateTime) {
+				return ((ZonedDateTime) value).toInstant();
+			}
+			if (value instanceof Instant) {
+				return (Instant) value;
+			}
+			if (value instanceof LocalDate) {
+				return ((LocalDate) value).atStartOfDay(ZoneOffset.UTC).toInstant();
+			}
+			return ZonedDateTime.parse(String.valueOf(value)).toInstant();
+		}
+		catch (RuntimeException e) {
+			return null;
+		}
+	}
+}
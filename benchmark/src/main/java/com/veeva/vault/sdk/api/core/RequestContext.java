@@ -0,0 +1,21 @@
+package com.veeva.vault.sdk.api.core;
+
+import com.veeva.vault.custom.fake.FakeVault;
+
+/**
+ * Replaces the Vault Java SDK RequestContext in the benchmarks. The values live in the
+ * FakeVault of the current thread and are cleared by `FakeVault.newRequest`.
+ */
+
+public interface RequestContext {
+
+	static RequestContext get() {
+		return FakeVault.current().getRequestContext();
+	}
+
+	String getCurrentUserId();
+
+	void setValue(String name, RequestContextValue value);
+
+	<T extends RequestContextValue> T getValue(String name, Class<T> valueClass);
+}
@@ -0,0 +1,18 @@
+package com.veeva.vault.sdk.api.core;
+
+import com.veeva.vault.custom.fake.FakeVault;
+
+/**
+ * Replaces the Vault Java SDK ServiceLocator in the benchmarks. Services are located in the
+ * FakeVault of the current thread instead of the vault the code runs in.
+ */
+
+public final class ServiceLocator {
+
+	private ServiceLocator() {
+	}
+
+	public static <T> T locate(Class<T> serviceClass) {
+		return FakeVault.current().locate(serviceClass);
+	}
+}
@@ -0,0 +1,17 @@
+package com.veeva.vault.sdk.api.core;
+
+import java.util.regex.Pattern;
+
+/**
+ * Replaces the Vault Java SDK StringUtils in the benchmarks. The delimiter is matched literally.
+ */
+
+public final class StringUtils {
+
+	private StringUtils() {
+	}
+
+	public static String[] split(String value, String delimiter) {
+		return value.split(Pattern.quote(delimiter));
+	}
+}
@@ -0,0 +1,36 @@
+package com.veeva.vault.sdk.api.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces the Vault Java SDK VaultCollections in the benchmarks with the JDK collections.
+ */
+
+public final class VaultCollections {
+
+	private VaultCollections() {
+	}
+
+	public static <T> List<T> newList() {
+		return new ArrayList<>();
+	}
+
+	public static <K, V> Map<K, V> newMap() {
+		return new HashMap<>();
+	}
+
+	public static <T> Set<T> newSet() {
+		return new HashSet<>();
+	}
+
+	@SafeVarargs
+	public static <T> List<T> asList(T... values) {
+		return new ArrayList<>(Arrays.asList(values));
+	}
+}
@@ -0,0 +1,68 @@
+package com.veeva.vault.custom.actions;
+
+import com.veeva.vault.custom.udc.vSDKBulkResult;
+import com.veeva.vault.custom.udc.vSDKCalloutMetrics;
+import com.veeva.vault.custom.udc.vSDKCalloutOutbox;
+import com.veeva.vault.custom.udc.vSDKCircuitBreaker;
+import com.veeva.vault.custom.udc.vSDKGroupMembership;
+import com.veeva.vault.custom.udc.vSDKWorkBudget;
+import com.veeva.vault.sdk.api.action.RecordAction;
+import com.veeva.vault.sdk.api.action.RecordActionContext;
+import com.veeva.vault.sdk.api.action.RecordActionInfo;
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+
+
+/******************************************************************************
+ * Record Action:     Process Callout Outbox
+ *-----------------------------------------------------------------------------
+ * Description: Sends the callouts deferred to 'vsdk_callout_outbox__c' by
+ *              the HTTP callout actions.
+ *
+ *              Running the action on any outbox record drains up to
+ *              PROCESS_LIMIT pending callouts that are due, in batches
+ *              grouped by connection. Failed callouts are retried by a
+ *              later run until they are dead-lettered.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@RecordActionInfo(label="SDK: Process Callout Outbox", object="vsdk_callout_outbox__c")
+public class vSDKCalloutOutboxProcessor implements RecordAction {
+
+    // Maximum number of outbox items sent by one run
+    static final int PROCESS_LIMIT = 1000;
+
+    public void execute(RecordActionContext recordActionContext) {
+
+    	LogService logService = ServiceLocator.locate(LogService.class);
+
+    	//Pending items that do not fit in the work budget of this run stay queued for the next run.
+    	vSDKWorkBudget.begin("vSDKCalloutOutboxProcessor");
+    	try {
+	    	vSDKBulkResult result = vSDKCalloutOutbox.process(PROCESS_LIMIT);
+	    	logService.info("Callout outbox: {}", result.getSummary());
+	    	for (String id : result.getFailed().keySet()) {
+	    		logService.error("Callout outbox item {} dead-lettered: {}", id, result.getFailed().get(id));
+	    	}
+
+	    	//Save the callout metrics and circuit breaker counts of this request.
+	    	vSDKCalloutMetrics.flush();
+	    	vSDKCircuitBreaker.flush();
+    	}
+    	finally {
+    		vSDKWorkBudget.end();
+    	}
+    }
+
+	//Only Vault Owners can drain the outbox, since it sends callouts queued by every user.
+	public boolean isExecutable(RecordActionContext recordActionContext) {
+	    return vSDKGroupMembership.isCurrentUserInGroup("vault_owners__v");
+	}
+}
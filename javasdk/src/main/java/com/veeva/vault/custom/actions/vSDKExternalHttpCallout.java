@@ -1,49 +1,123 @@
-package com.veeva.vault.custom.actions;
-
-import com.veeva.vault.sdk.api.core.*;
-import com.veeva.vault.custom.udc.vSDKHttpCallouts;
-import com.veeva.vault.sdk.api.action.DocumentAction;
-import com.veeva.vault.sdk.api.action.DocumentActionContext;
-import com.veeva.vault.sdk.api.action.DocumentActionInfo;
-import com.veeva.vault.sdk.api.document.*;
-
-
-
-/******************************************************************************                                                     
- * Document Action:     External Http Callout
- * Author:      Kevin Nee @ Veeva
- * Date:        2019-03-19
- *-----------------------------------------------------------------------------
- * Description: Provides an example of how to use a External HTTP Callout.
- * 
- * 				This makes an HTTP callout to a free open source public API 
- *              endpoint (https://reqres.in/api/unknown/2). 
- *              
- *              The returned data from the endpoint is then used to set an
- *              external ID (vsdk_http_external_id__c) on the document.
- * 
- *-----------------------------------------------------------------------------
- * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
- *      This code is based on pre-existing content developed and
- *      owned by Veeva Systems Inc. and may only be used in connection
- *      with the deliverable with which it was provided to Customer.
- *--------------------------------------------------------------------
- *
- *******************************************************************************/
-
-@DocumentActionInfo(label="SDK: External Http Callout")
-public class vSDKExternalHttpCallout implements DocumentAction {
-	
-    public void execute(DocumentActionContext documentActionContext) {
-
-    	DocumentVersion docVersion = documentActionContext.getDocumentVersions().get(0);
-    	
-    	String id = docVersion.getValue("id", ValueType.STRING);
-    	
-    	vSDKHttpCallouts.externalHttpCallout(id);
-    }
-
-	public boolean isExecutable(DocumentActionContext documentActionContext) {
-	    return true;
-	}
+package com.veeva.vault.custom.actions;
+
+import com.veeva.vault.sdk.api.core.*;
+import com.veeva.vault.custom.udc.vSDKBulkResult;
+import com.veeva.vault.custom.udc.vSDKCalloutMetrics;
+import com.veeva.vault.custom.udc.vSDKCalloutOutbox;
+import com.veeva.vault.custom.udc.vSDKCircuitBreaker;
+import com.veeva.vault.custom.udc.vSDKHttpCallouts;
+import com.veeva.vault.custom.udc.vSDKServiceBudget;
+import com.veeva.vault.custom.udc.vSDKWorkBudget;
+import com.veeva.vault.sdk.api.action.DocumentAction;
+import com.veeva.vault.sdk.api.action.DocumentActionContext;
+import com.veeva.vault.sdk.api.action.DocumentActionInfo;
+import com.veeva.vault.sdk.api.document.*;
+
+import java.util.List;
+import java.util.Map;
+
+
+
+/******************************************************************************                                                     
+ * Document Action:     External Http Callout
+ * Author:      Kevin Nee @ Veeva
+ * Date:        2019-03-19
+ *-----------------------------------------------------------------------------
+ * Description: Provides an example of how to use a External HTTP Callout.
+ * 
+ * 				This makes an HTTP callout to a free open source public API 
+ *              endpoint (https://reqres.in/api/unknown/2). 
+ *              
+ *              The returned data from the endpoint is then used to set an
+ *              external ID (vsdk_http_external_id__c) on the document.
+ *              
+ *              With BULK_MODE, every selected document is enriched. The
+ *              external data is retrieved once and the documents are saved
+ *              in chunks instead of one callout and one save per document.
+ * 
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@DocumentActionInfo(label="SDK: External Http Callout")
+public class vSDKExternalHttpCallout implements DocumentAction {
+	
+    // Enrich every selected document with one coalesced callout and chunked saves
+    static final boolean BULK_MODE = true;
+    // Queue the enrichment in vsdk_callout_outbox__c instead of calling the external system during the action
+    static final boolean DEFER_CALLOUTS = false;
+    // Callouts allowed: the resource is retrieved once for all documents
+    static final int EXTERNAL_CALLOUTS = 1;
+	
+    public void execute(DocumentActionContext documentActionContext) {
+
+    	//Count the service calls of this action. Exceeding the budget is reported by `end`.
+    	int docCount = documentActionContext.getDocumentVersions().size();
+    	vSDKServiceBudget.begin("vSDKExternalHttpCallout", docCount);
+    	vSDKWorkBudget.begin("vSDKExternalHttpCallout");
+    	vSDKServiceBudget.limit(vSDKServiceBudget.HTTP, EXTERNAL_CALLOUTS);
+    	vSDKServiceBudget.limit(vSDKServiceBudget.DOCUMENT_SAVE, vSDKServiceBudget.chunks(docCount, vSDKHttpCallouts.EXTERNAL_SAVE_CHUNK_SIZE));
+    	
+    	try {
+	    	//With DEFER_CALLOUTS, the enrichment is queued and sent later by vSDKCalloutOutboxProcessor.
+	    	if (DEFER_CALLOUTS) {
+	    		for (DocumentVersion docVersion : documentActionContext.getDocumentVersions()) {
+	    			String docId = docVersion.getValue("id", ValueType.STRING);
+	    			Map<String, String> payload = VaultCollections.newMap();
+	    			payload.put("docId", docId);
+	    			vSDKCalloutOutbox.enqueue("external_http_callout", vSDKCalloutOutbox.EXTERNAL_ENRICHMENT, docId, payload);
+	    		}
+	    		vSDKCalloutOutbox.flush();
+	    		return;
+	    	}
+    	
+	    	if (BULK_MODE) {
+	    		LogService logService = ServiceLocator.locate(LogService.class);
+	    		List<String> docIds = VaultCollections.newList();
+    		
+	    		for (DocumentVersion docVersion : documentActionContext.getDocumentVersions()) {
+	    			docIds.add(docVersion.getValue("id", ValueType.STRING));
+	    		}
+    		
+	    		vSDKBulkResult result = vSDKHttpCallouts.externalHttpCalloutBulk(docIds);
+	    		for (String docId : result.getFailed().keySet()) {
+	    			logService.error("Failed to set the external ID of document - {}: {}", docId, result.getFailed().get(docId));
+	    		}
+    		
+	    		//Documents deferred by the work budget of this request are queued and enriched by vSDKCalloutOutboxProcessor.
+	    		for (String docId : result.getSkipped().keySet()) {
+	    			Map<String, String> payload = VaultCollections.newMap();
+	    			payload.put("docId", docId);
+	    			vSDKCalloutOutbox.enqueue("external_http_callout", vSDKCalloutOutbox.EXTERNAL_ENRICHMENT, docId, payload);
+	    		}
+	    		if (!result.getSkipped().isEmpty()) {
+	    			logService.info("External HTTP enrichment queued for {} documents.", vSDKCalloutOutbox.flush());
+	    		}
+	    	}
+	    	else {
+	    		DocumentVersion docVersion = documentActionContext.getDocumentVersions().get(0);
+    		
+	    		String id = docVersion.getValue("id", ValueType.STRING);
+    		
+	    		vSDKHttpCallouts.externalHttpCallout(id);
+	    	}
+    	
+	    	//Save the callout metrics and circuit breaker counts of this request.
+	    	vSDKCalloutMetrics.flush();
+	    	vSDKCircuitBreaker.flush();
+    	}
+    	finally {
+    		vSDKServiceBudget.end();
+    		vSDKWorkBudget.end();
+    	}
+    }
+
+	public boolean isExecutable(DocumentActionContext documentActionContext) {
+	    return true;
+	}
 }
\ No newline at end of file
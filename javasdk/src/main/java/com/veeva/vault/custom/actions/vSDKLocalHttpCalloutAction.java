@@ -1,168 +1,352 @@
-package com.veeva.vault.custom.actions;
-
-import java.util.List;
-import java.util.Map;
-
-import com.veeva.vault.custom.udc.vSDKHttpCallouts;
-import com.veeva.vault.sdk.api.action.DocumentAction;
-import com.veeva.vault.sdk.api.action.DocumentActionContext;
-import com.veeva.vault.sdk.api.action.DocumentActionInfo;
-import com.veeva.vault.sdk.api.core.LogService;
-import com.veeva.vault.sdk.api.core.RequestContext;
-import com.veeva.vault.sdk.api.core.ServiceLocator;
-import com.veeva.vault.sdk.api.core.ValueType;
-import com.veeva.vault.sdk.api.core.VaultCollections;
-import com.veeva.vault.sdk.api.data.Record;
-import com.veeva.vault.sdk.api.data.RecordService;
-import com.veeva.vault.sdk.api.document.DocumentVersion;
-import com.veeva.vault.sdk.api.group.GetGroupsResponse;
-import com.veeva.vault.sdk.api.group.Group;
-import com.veeva.vault.sdk.api.group.GroupService;
-import com.veeva.vault.sdk.api.role.DocumentRole;
-import com.veeva.vault.sdk.api.role.DocumentRoleService;
-import com.veeva.vault.sdk.api.role.DocumentRoleUpdate;
-import com.veeva.vault.sdk.api.role.GetDocumentRolesResponse;
-
-
-/******************************************************************************                                                     
- * Document Action:     SDK: Local Http Callout
- * Author:      Kevin Nee @ Veeva
- * Date:        2019-03-06
- *-----------------------------------------------------------------------------
- * Description: Provides  an example of a local HTTP Callout.
- * 
- * 				The action automatically changes Owner, Approver,
- *              Senior Leader, Group Leader roles on a vSDK HTTP Document.
- *              
- *              This is done through the DocumentRoleService and a User Action 
- *              Prompt. The prompt ask for the names of users in the updated 
- *              roles.
- *              
- *              Once the new users have been provided and roles have been 
- *              updated, a local HttpService API call is made to initialize
- *              the vSDK HTTP Workflow on the document.
- *              
- *              Only users in the Vault Owners  group can see 
- *              and execute the document action.
- * 
- *-----------------------------------------------------------------------------
- * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
- *      This code is based on pre-existing content developed and
- *      owned by Veeva Systems Inc. and may only be used in connection
- *      with the deliverable with which it was provided to Customer.
- *--------------------------------------------------------------------
- *
- *******************************************************************************/
-
-@DocumentActionInfo(label="SDK: Local Http Callout", user_input_object="vsdk_user_input_object__c", user_input_object_type="")
-public class vSDKLocalHttpCalloutAction implements DocumentAction {
-	
-    // Roles to check on the Document
-    static final String OWNER = "owner__v";
-    static final String APPROVER = "approver__v";
-    static final String VIEWER = "viewer__v";
-    static final String EDITOR = "editor__v";
-    
-	
-	//Only show the SDK user action if the current user is a Vault Owner or in the Employee Success group
-	public boolean isExecutable(DocumentActionContext context) {
-		
-		GroupService groupService = ServiceLocator.locate(GroupService.class);
-		
-		String currentUserId = RequestContext.get().getCurrentUserId();
-		GetGroupsResponse groupsResponse = groupService.getGroupsByNames(VaultCollections.asList("vault_owners__v"));
-
-		Group vaultOwner = groupsResponse.getGroupByName("vault_owners__v");
-		
-		boolean isCurrentUserInGroup = groupService.isUserInGroup(currentUserId, vaultOwner);
-		
-		return isCurrentUserInGroup;
-	}
-	
-    public void execute(DocumentActionContext documentActionContext) {
-
-    	RecordService recordService = ServiceLocator.locate(RecordService.class);
-    	LogService logService = ServiceLocator.locate(LogService.class);
-        DocumentRoleService docRoleService = ServiceLocator.locate(DocumentRoleService.class);
-        
-        // Assuming this is a Document use action, there is one document in the documentActionContext
-        List<DocumentVersion> docVersionList = documentActionContext.getDocumentVersions();
-        List<DocumentRoleUpdate> documentRoleUpdates = VaultCollections.newList();
-    	
-    	//New getUserInputRecord() method to retrieve the input record data.
-    	Record inputRecord = documentActionContext.getUserInputRecord();
-        
-        Map<String,String> userToRoleMap = VaultCollections.newMap();
-        Map<String,String> params = VaultCollections.newMap();
-        
-        userToRoleMap.put(OWNER, inputRecord.getValue("owner__c", ValueType.STRING));
-        userToRoleMap.put(APPROVER, inputRecord.getValue("owner__c", ValueType.STRING));
-        userToRoleMap.put(VIEWER, inputRecord.getValue("viewer__c", ValueType.STRING));
-        userToRoleMap.put(EDITOR, inputRecord.getValue("editor__c", ValueType.STRING));
-
-        checkDocumentRole(docVersionList,documentRoleUpdates,userToRoleMap);
-        
-        if (documentRoleUpdates.size() > 0) {
-	        docRoleService.batchUpdateDocumentRoles(documentRoleUpdates)
-	        .rollbackOnErrors()
-	        .execute();
-	        
-	        logService.info("Document Role update successful.");
-	        
-	        //Delete temporary user input record
-	        recordService.batchDeleteRecords(VaultCollections.asList(inputRecord)).rollbackOnErrors().execute();
-	        
-	        //Loop through all documents and initiate the APR Document workflow for the new owner (manager) of the record.
-    		for (DocumentVersion docVersion : docVersionList) {
-            	String version_id = docVersion.getValue("id", ValueType.STRING) + "_" + 
-        				docVersion.getValue("major_version_number__v", ValueType.NUMBER).toString() + "_" + 
-        				docVersion.getValue("minor_version_number__v", ValueType.NUMBER).toString();
-            	
-            	vSDKHttpCallouts.localGetLifecycleActions(version_id, userToRoleMap.get(OWNER), params);
-    		}
-        }
-    }
-    
-    private void checkDocumentRole(List<DocumentVersion> docVersionList, List<DocumentRoleUpdate> documentRoleUpdates, Map<String,String> userToRoleMap) {
-    	LogService logService = ServiceLocator.locate(LogService.class);
-        DocumentRoleService docRoleService = ServiceLocator.locate(DocumentRoleService.class);
-        
-        // Loop through all defined user role changes in the userToRoleMap. This checks to see if the user
-        // exists in the requested role already and if not, they are added.
-        // All other existing users on the role are then removed.
-        
-        for (String roleToCheck : userToRoleMap.keySet()) {
-        	String userId = userToRoleMap.get(roleToCheck);
-	        GetDocumentRolesResponse docRolesResponse = docRoleService.getDocumentRoles(docVersionList, roleToCheck);
-	        
-	        for (DocumentVersion docVersion : docVersionList) {    
-		        DocumentRole checkedRole = docRolesResponse.getDocumentRole(docVersion);
-		
-		        // Check if new user is in the specified role
-			    if (userId != null) {
-		        	boolean isUserInCheckedRole = docRoleService
-			                .getUserInDocumentRoles(userId, VaultCollections.asList(checkedRole))
-			                .isUserInDocumentRole(checkedRole);
-			        
-			        // Add new user to the specified role
-			        if (!isUserInCheckedRole) {
-			        	
-			        	logService.info("Create DocumentRoleUpdate for userId {} on role {}.", userId, roleToCheck);
-			            DocumentRoleUpdate docRoleUpdate = docRoleService.newDocumentRoleUpdate(roleToCheck, docVersion);
-			            if (!roleToCheck.equals(APPROVER)) {
-				            docRoleUpdate.addUsers(VaultCollections.asList(userId));
-			            }
-			            if (checkedRole.getUsers().size() > 0) {
-			            	docRoleUpdate.removeUsers(checkedRole.getUsers());
-			            }
-			            documentRoleUpdates.add(docRoleUpdate);
-			        }
-		        }
-			    else {
-			    	userId = (checkedRole.getUsers().size() > 0) ? checkedRole.getUsers().get(0) : null;
-			    	userToRoleMap.put(roleToCheck, userId);
-			    }
-	        }
-        }
-    }
-}
+package com.veeva.vault.custom.actions;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.veeva.vault.custom.udc.vSDKBulkResult;
+import com.veeva.vault.custom.udc.vSDKCalloutExecutor;
+import com.veeva.vault.custom.udc.vSDKCalloutMetrics;
+import com.veeva.vault.custom.udc.vSDKCalloutOutbox;
+import com.veeva.vault.custom.udc.vSDKGroupMembership;
+import com.veeva.vault.custom.udc.vSDKHttpCallouts;
+import com.veeva.vault.custom.udc.vSDKLifecycleActionResolver;
+import com.veeva.vault.custom.udc.vSDKServiceBudget;
+import com.veeva.vault.custom.udc.vSDKWorkBudget;
+import com.veeva.vault.sdk.api.action.DocumentAction;
+import com.veeva.vault.sdk.api.action.DocumentActionContext;
+import com.veeva.vault.sdk.api.action.DocumentActionInfo;
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+import com.veeva.vault.sdk.api.document.DocumentVersion;
+import com.veeva.vault.sdk.api.role.DocumentRole;
+import com.veeva.vault.sdk.api.role.DocumentRoleService;
+import com.veeva.vault.sdk.api.role.DocumentRoleUpdate;
+import com.veeva.vault.sdk.api.role.GetDocumentRolesResponse;
+import com.veeva.vault.sdk.api.role.GetUserInDocumentRolesResponse;
+
+
+/******************************************************************************                                                     
+ * Document Action:     SDK: Local Http Callout
+ * Author:      Kevin Nee @ Veeva
+ * Date:        2019-03-06
+ *-----------------------------------------------------------------------------
+ * Description: Provides  an example of a local HTTP Callout.
+ * 
+ * 				The action automatically changes Owner, Approver,
+ *              Senior Leader, Group Leader roles on a vSDK HTTP Document.
+ *              
+ *              This is done through the DocumentRoleService and a User Action 
+ *              Prompt. The prompt ask for the names of users in the updated 
+ *              roles.
+ *              
+ *              Once the new users have been provided and roles have been 
+ *              updated, a local HttpService API call is made to initialize
+ *              the vSDK HTTP Workflow on the document.
+ *              
+ *              With MASS_REASSIGNMENT, for example to hand over the documents
+ *              of someone who left, the selection is handled in chunks of
+ *              ROLE_CHUNK_SIZE documents. The role updates of each chunk are
+ *              built and saved on their own, and the outcome of every
+ *              document is logged as a summary. The workflow is only started
+ *              on documents whose roles were updated.
+ *              
+ *              Only users in the Vault Owners  group can see 
+ *              and execute the document action.
+ * 
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@DocumentActionInfo(label="SDK: Local Http Callout", user_input_object="vsdk_user_input_object__c", user_input_object_type="")
+public class vSDKLocalHttpCalloutAction implements DocumentAction {
+	
+    // Roles to check on the Document
+    static final String OWNER = "owner__v";
+    static final String APPROVER = "approver__v";
+    static final String VIEWER = "viewer__v";
+    static final String EDITOR = "editor__v";
+    // Queue the workflow start in vsdk_callout_outbox__c instead of calling the Vault API during the action
+    static final boolean DEFER_CALLOUTS = false;
+    // Document role calls allowed: a role lookup and a membership lookup per role, and one update
+    static final int DOCUMENT_ROLE_CALLS = 9;
+    // Callouts allowed per chunk of documents with the same type, lifecycle and state: action lookup and action start
+    static final int CALLOUTS_PER_CHUNK = 2;
+    // Check and update the roles in chunks of ROLE_CHUNK_SIZE documents instead of one update for the whole selection
+    static final boolean MASS_REASSIGNMENT = false;
+    // Maximum number of documents in a single batchUpdateDocumentRoles call
+    static final int ROLE_CHUNK_SIZE = 500;
+    // With MASS_REASSIGNMENT, a failed role update rolls back every chunk. Otherwise the updated chunks are kept.
+    static final boolean ROLLBACK_ON_CHUNK_ERRORS = false;
+    
+	
+	//Only show the SDK user action if the current user is a Vault Owner or in the Employee Success group
+	//The membership is memoized, so rendering a document list costs one group lookup per user instead of one per document.
+	public boolean isExecutable(DocumentActionContext context) {
+		return vSDKGroupMembership.isCurrentUserInGroup("vault_owners__v");
+	}
+	
+    public void execute(DocumentActionContext documentActionContext) {
+
+    	RecordService recordService = ServiceLocator.locate(RecordService.class);
+    	LogService logService = ServiceLocator.locate(LogService.class);
+        DocumentRoleService docRoleService = ServiceLocator.locate(DocumentRoleService.class);
+        
+        // Assuming this is a Document use action, there is one document in the documentActionContext
+        List<DocumentVersion> docVersionList = documentActionContext.getDocumentVersions();
+        List<DocumentRoleUpdate> documentRoleUpdates = VaultCollections.newList();
+        List<String> updatedDocIds = VaultCollections.newList();
+        
+        //Count the service calls of this action. Exceeding the budget is reported by `end`.
+        Set<String> lifecycleGroups = VaultCollections.newSet();
+        for (DocumentVersion docVersion : docVersionList) {
+        	lifecycleGroups.add(vSDKLifecycleActionResolver.cacheKey(docVersion));
+        }
+        vSDKServiceBudget.begin("vSDKLocalHttpCalloutAction", docVersionList.size());
+        vSDKWorkBudget.begin("vSDKLocalHttpCalloutAction");
+        vSDKServiceBudget.limit(vSDKServiceBudget.DOCUMENT_ROLE, MASS_REASSIGNMENT ? 
+        		DOCUMENT_ROLE_CALLS * vSDKServiceBudget.chunks(docVersionList.size(), ROLE_CHUNK_SIZE) : DOCUMENT_ROLE_CALLS);
+        vSDKServiceBudget.limit(vSDKServiceBudget.HTTP, CALLOUTS_PER_CHUNK * lifecycleGroups.size() 
+        		* vSDKServiceBudget.chunks(docVersionList.size(), vSDKHttpCallouts.BULK_ACTION_CHUNK_SIZE));
+    	
+        try {
+	    	//New getUserInputRecord() method to retrieve the input record data.
+	    	Record inputRecord = documentActionContext.getUserInputRecord();
+        
+	        Map<String,String> userToRoleMap = VaultCollections.newMap();
+	        Map<String,String> params = VaultCollections.newMap();
+        
+	        userToRoleMap.put(OWNER, inputRecord.getValue("owner__c", ValueType.STRING));
+	        userToRoleMap.put(APPROVER, inputRecord.getValue("owner__c", ValueType.STRING));
+	        userToRoleMap.put(VIEWER, inputRecord.getValue("viewer__c", ValueType.STRING));
+	        userToRoleMap.put(EDITOR, inputRecord.getValue("editor__c", ValueType.STRING));
+
+	        boolean rolesUpdated;
+	        if (MASS_REASSIGNMENT) {
+	        	vSDKBulkResult roleResult = updateDocumentRolesInChunks(docVersionList, userToRoleMap);
+	        	logService.info("Document Role update: {}", roleResult.getSummary());
+	        	for (String docId : roleResult.getFailed().keySet()) {
+	        		logService.error("Failed to update Document Roles for document - {}: {}", docId, roleResult.getFailed().get(docId));
+	        	}
+        	
+	        	//Documents with a failed role update are left out of the workflow start.
+	        	List<DocumentVersion> updatedVersions = VaultCollections.newList();
+	        	for (DocumentVersion docVersion : docVersionList) {
+	        		if (!roleResult.getFailed().containsKey(docVersion.getValue("id", ValueType.STRING))) {
+	        			updatedVersions.add(docVersion);
+	        		}
+	        	}
+	        	docVersionList = updatedVersions;
+	        	rolesUpdated = roleResult.getSucceeded().size() > roleResult.getExisting().size();
+	        }
+	        else {
+		        checkDocumentRole(docVersionList,documentRoleUpdates,updatedDocIds,userToRoleMap);
+		        rolesUpdated = documentRoleUpdates.size() > 0;
+	        
+		        if (rolesUpdated) {
+			        vSDKServiceBudget.count(vSDKServiceBudget.DOCUMENT_ROLE, "vSDKLocalHttpCalloutAction.execute");
+			        docRoleService.batchUpdateDocumentRoles(documentRoleUpdates)
+			        .rollbackOnErrors()
+			        .execute();
+		        
+			        logService.info("Document Role update successful.");
+		        }
+	        }
+        
+	        if (rolesUpdated) {
+		        //Delete temporary user input record
+		        vSDKServiceBudget.count(vSDKServiceBudget.RECORD_DELETE, "vSDKLocalHttpCalloutAction.execute");
+		        recordService.batchDeleteRecords(VaultCollections.asList(inputRecord)).rollbackOnErrors().execute();
+	        
+		        //With DEFER_CALLOUTS, the workflow start is queued and sent later by vSDKCalloutOutboxProcessor.
+		        if (DEFER_CALLOUTS) {
+		        	for (DocumentVersion docVersion : docVersionList) {
+		        		String versionId = docVersion.getValue("id", ValueType.STRING) + "_" + 
+		        				docVersion.getValue("major_version_number__v", ValueType.NUMBER).toString() + "_" + 
+		        				docVersion.getValue("minor_version_number__v", ValueType.NUMBER).toString();
+	        		
+		        		Map<String,String> payload = VaultCollections.newMap();
+		        		payload.put("versionId", versionId);
+		        		payload.put("cacheKey", vSDKLifecycleActionResolver.cacheKey(docVersion));
+		        		payload.put("userId", userToRoleMap.get(OWNER));
+		        		vSDKCalloutOutbox.enqueue(vSDKCalloutExecutor.LOCAL, vSDKCalloutOutbox.WORKFLOW_START, versionId, payload);
+		        	}
+		        	logService.info("HTTP Workflow start queued for {} documents.", vSDKCalloutOutbox.flush());
+		        	return;
+		        }
+	        
+		        //Initiate the APR Document workflow for the new owner (manager) of the record on all documents.
+		        //The documents are sent in chunks to the bulk user action endpoints instead of two callouts per document.
+	    		vSDKBulkResult workflowResult = vSDKHttpCallouts.localStartDocWorkflowBulk(docVersionList, userToRoleMap.get(OWNER), params);
+	    		logService.info("HTTP Workflow start: {}", workflowResult.getSummary());
+	    		for (String versionId : workflowResult.getFailed().keySet()) {
+	    			logService.error("Failed to start HTTP Workflow for document - {}: {}", versionId, workflowResult.getFailed().get(versionId));
+	    		}
+    		
+	    		//Documents deferred by the rate limiter or the work budget of this request are queued
+	    		//and started later by vSDKCalloutOutboxProcessor.
+	    		if (!workflowResult.getSkipped().isEmpty()) {
+	    			for (DocumentVersion docVersion : docVersionList) {
+	    				String versionId = docVersion.getValue("id", ValueType.STRING) + "_" + 
+	    						docVersion.getValue("major_version_number__v", ValueType.NUMBER).toString() + "_" + 
+	    						docVersion.getValue("minor_version_number__v", ValueType.NUMBER).toString();
+	    				if (!workflowResult.getSkipped().containsKey(versionId)) {
+	    					continue;
+	    				}
+    				
+	    				Map<String,String> payload = VaultCollections.newMap();
+	    				payload.put("versionId", versionId);
+	    				payload.put("cacheKey", vSDKLifecycleActionResolver.cacheKey(docVersion));
+	    				payload.put("userId", userToRoleMap.get(OWNER));
+	    				vSDKCalloutOutbox.enqueue(vSDKCalloutExecutor.LOCAL, vSDKCalloutOutbox.WORKFLOW_START, versionId, payload);
+	    			}
+	    			logService.info("HTTP Workflow start queued for {} deferred documents.", vSDKCalloutOutbox.flush());
+	    		}
+	        }
+        
+	        //Save the callout metrics of this request with one batch save.
+	        vSDKCalloutMetrics.flush();
+        }
+        finally {
+        	vSDKServiceBudget.end();
+        	vSDKWorkBudget.end();
+        }
+    }
+    
+    /**
+     * Checks and updates the roles of the documents in chunks of ROLE_CHUNK_SIZE. The updates of a chunk
+     * are built just before they are saved, so only one chunk of updates is held at a time.
+     * 
+     * @param docVersionList selected documents
+     * @param userToRoleMap new user of each role
+     * @return the outcome of every document, keyed by document ID. Documents that already had
+     *         the users in their roles are existing successes.
+     */
+    
+    private vSDKBulkResult updateDocumentRolesInChunks(List<DocumentVersion> docVersionList, Map<String,String> userToRoleMap) {
+    	
+    	LogService logService = ServiceLocator.locate(LogService.class);
+        DocumentRoleService docRoleService = ServiceLocator.locate(DocumentRoleService.class);
+        vSDKBulkResult result = new vSDKBulkResult();
+        int chunkCount = vSDKServiceBudget.chunks(docVersionList.size(), ROLE_CHUNK_SIZE);
+        
+        for (int start = 0; start < docVersionList.size(); start += ROLE_CHUNK_SIZE) {
+        	List<DocumentVersion> chunk = docVersionList.subList(start, Math.min(start + ROLE_CHUNK_SIZE, docVersionList.size()));
+        	int chunkNumber = start / ROLE_CHUNK_SIZE + 1;
+        	List<DocumentRoleUpdate> documentRoleUpdates = VaultCollections.newList();
+        	List<String> updatedDocIds = VaultCollections.newList();
+        	Map<String,String> failed = VaultCollections.newMap();
+        	
+        	checkDocumentRole(chunk, documentRoleUpdates, updatedDocIds, userToRoleMap);
+        	
+        	if (documentRoleUpdates.size() > 0) {
+        		vSDKServiceBudget.count(vSDKServiceBudget.DOCUMENT_ROLE, "vSDKLocalHttpCalloutAction.updateDocumentRolesInChunks");
+        		docRoleService.batchUpdateDocumentRoles(documentRoleUpdates)
+        		.onErrors(batchOperationErrors -> {
+        			batchOperationErrors.forEach(error -> {
+        				String errMsg = error.getError().getMessage();
+        				String docId = updatedDocIds.get(error.getInputPosition());
+        				
+        				if (ROLLBACK_ON_CHUNK_ERRORS) {
+        					throw new RollbackException("OPERATION_NOT_ALLOWED", "Unable to update Document Roles on document: '" + 
+        							docId + "' because of '" + errMsg + "'.");
+        				}
+        				failed.merge(docId, "Chunk " + chunkNumber + ": " + errMsg, (first, next) -> first + "; " + next);
+        			});
+        		})
+        		.execute();
+        	}
+        	
+        	Set<String> updated = VaultCollections.newSet();
+        	updated.addAll(updatedDocIds);
+        	vSDKBulkResult chunkResult = new vSDKBulkResult();
+        	for (DocumentVersion docVersion : chunk) {
+        		String docId = docVersion.getValue("id", ValueType.STRING);
+        		if (failed.containsKey(docId)) {
+        			chunkResult.addFailure(docId, failed.get(docId));
+        		}
+        		else if (updated.contains(docId)) {
+        			chunkResult.addSuccess(docId);
+        		}
+        		else {
+        			chunkResult.addExisting(docId);
+        		}
+        	}
+        	logService.info("Document Role update chunk {} of {}: {}", chunkNumber, chunkCount, chunkResult.getSummary());
+        	result.merge(chunkResult);
+        }
+        return result;
+    }
+    
+    private void checkDocumentRole(List<DocumentVersion> docVersionList, List<DocumentRoleUpdate> documentRoleUpdates, List<String> updatedDocIds, Map<String,String> userToRoleMap) {
+    	LogService logService = ServiceLocator.locate(LogService.class);
+        DocumentRoleService docRoleService = ServiceLocator.locate(DocumentRoleService.class);
+        
+        // Loop through all defined user role changes in the userToRoleMap. This checks to see if the user
+        // exists in the requested role already and if not, they are added.
+        // All other existing users on the role are then removed.
+        // Membership is resolved for all documents with one getUserInDocumentRoles call per role.
+        
+        for (String roleToCheck : userToRoleMap.keySet()) {
+        	String userId = userToRoleMap.get(roleToCheck);
+	        vSDKServiceBudget.count(vSDKServiceBudget.DOCUMENT_ROLE, "vSDKLocalHttpCalloutAction.checkDocumentRole");
+	        GetDocumentRolesResponse docRolesResponse = docRoleService.getDocumentRoles(docVersionList, roleToCheck);
+	        List<DocumentVersion> docsToCheck = VaultCollections.newList();
+	        List<DocumentRole> rolesToCheck = VaultCollections.newList();
+	        
+	        for (DocumentVersion docVersion : docVersionList) {    
+		        DocumentRole checkedRole = docRolesResponse.getDocumentRole(docVersion);
+		        
+		        // If no user was provided, the first user already in the role is kept for the remaining documents
+			    if (userId == null) {
+			    	userId = (checkedRole.getUsers().size() > 0) ? checkedRole.getUsers().get(0) : null;
+			    	userToRoleMap.put(roleToCheck, userId);
+			    }
+			    else {
+			    	docsToCheck.add(docVersion);
+			    	rolesToCheck.add(checkedRole);
+			    }
+	        }
+	        
+	        if (rolesToCheck.isEmpty()) {
+	        	continue;
+	        }
+	        
+	        // Check if new user is in the specified role on every document at once
+	        vSDKServiceBudget.count(vSDKServiceBudget.DOCUMENT_ROLE, "vSDKLocalHttpCalloutAction.checkDocumentRole");
+	        GetUserInDocumentRolesResponse userInRolesResponse = docRoleService.getUserInDocumentRoles(userId, rolesToCheck);
+	        
+	        for (int i = 0; i < docsToCheck.size(); i++) {
+	        	DocumentRole checkedRole = rolesToCheck.get(i);
+	        	boolean addUser = !roleToCheck.equals(APPROVER);
+	        	
+	        	// Skip documents that already have the user in the role, or where there is nothing to add or remove
+	        	if (userInRolesResponse.isUserInDocumentRole(checkedRole) || (!addUser && checkedRole.getUsers().isEmpty())) {
+	        		continue;
+	        	}
+	        	
+	        	// Add new user to the specified role
+	        	logService.info("Create DocumentRoleUpdate for userId {} on role {}.", userId, roleToCheck);
+	            DocumentRoleUpdate docRoleUpdate = docRoleService.newDocumentRoleUpdate(roleToCheck, docsToCheck.get(i));
+	            if (addUser) {
+		            docRoleUpdate.addUsers(VaultCollections.asList(userId));
+	            }
+	            if (checkedRole.getUsers().size() > 0) {
+	            	docRoleUpdate.removeUsers(checkedRole.getUsers());
+	            }
+	            documentRoleUpdates.add(docRoleUpdate);
+	            updatedDocIds.add(docsToCheck.get(i).getValue("id", ValueType.STRING));
+	        }
+        }
+    }
+}
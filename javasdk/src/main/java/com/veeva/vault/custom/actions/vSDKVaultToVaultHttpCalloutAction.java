@@ -1,74 +1,189 @@
-package com.veeva.vault.custom.actions;
-
-import java.util.List;
-import java.util.Map;
-
-import com.veeva.vault.custom.udc.vSDKHttpCallouts;
-import com.veeva.vault.sdk.api.action.DocumentAction;
-import com.veeva.vault.sdk.api.action.DocumentActionContext;
-import com.veeva.vault.sdk.api.action.DocumentActionInfo;
-import com.veeva.vault.sdk.api.core.ServiceLocator;
-import com.veeva.vault.sdk.api.core.ValueType;
-import com.veeva.vault.sdk.api.core.VaultCollections;
-import com.veeva.vault.sdk.api.document.DocumentVersion;
-import com.veeva.vault.sdk.api.query.QueryResponse;
-import com.veeva.vault.sdk.api.query.QueryService;
-
-
-/******************************************************************************                                                     
- * Document Action:     Vault To Vault Http Callout
- * Author:      Kevin Nee @ Veeva
- * Date:        2019-03-06
- *-----------------------------------------------------------------------------
- * Description: Provides an example of how to use a Vault-to-Vault HTTP Callout.
- * 
- * 				This creates a CrossLink in the target vault via the specified 
- * 				Vault to Vault Connection. 
- * 
- *-----------------------------------------------------------------------------
- * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
- *      This code is based on pre-existing content developed and
- *      owned by Veeva Systems Inc. and may only be used in connection
- *      with the deliverable with which it was provided to Customer.
- *--------------------------------------------------------------------
- *
- *******************************************************************************/
-
-@DocumentActionInfo(label="SDK: Vault To Vault Http Callout")
-public class vSDKVaultToVaultHttpCalloutAction implements DocumentAction {
-	
-    public void execute(DocumentActionContext documentActionContext) {
-
-    	QueryService queryService = ServiceLocator.locate(QueryService.class);
-    	DocumentVersion docVersion = documentActionContext.getDocumentVersions().get(0);
-    	Map<String, String> httpParams = VaultCollections.newMap();
-    	List<String> connections = VaultCollections.newList();
-    	
-    	String version_id = docVersion.getValue("id", ValueType.STRING) + "_" + 
-    				docVersion.getValue("major_version_number__v", ValueType.NUMBER).toString() + "_" + 
-    				docVersion.getValue("minor_version_number__v", ValueType.NUMBER).toString();
-    	
-    	httpParams.put("docId", docVersion.getValue("id", ValueType.STRING));
-    	httpParams.put("docName", docVersion.getValue("name__v", ValueType.STRING));
-    	httpParams.put("type", "vSDK HTTP Doctype");
-    	httpParams.put("lifecycle", "vSDK HTTP Doctype Lifecycle");
-    	
-    	String query = "select id, (select api_name__sys, remote_connection_id__sys from document_vsdk_connection__cr) from documents where version_id = '" + version_id + "'";
-
-    	QueryResponse queryResponse = queryService.query(query);
-    	
-    	queryResponse.streamResults().forEach(qr -> {
-            QueryResponse subQueryResponse = qr.getSubqueryResponse("document_vsdk_connection__cr");
-            
-            subQueryResponse.streamResults().forEach(subqr -> {
-            	String connection = subqr.getValue("api_name__sys", ValueType.STRING);
-            	String remoteConnectionId = subqr.getValue("remote_connection_id__sys", ValueType.STRING);
-            	vSDKHttpCallouts.v2vHttpQuery(httpParams, connection, remoteConnectionId);
-            });
-        });
-    }
-
-	public boolean isExecutable(DocumentActionContext documentActionContext) {
-	    return true;
-	}
-}
+package com.veeva.vault.custom.actions;
+
+import java.util.List;
+import java.util.Map;
+
+import com.veeva.vault.custom.udc.vSDKBulkResult;
+import com.veeva.vault.custom.udc.vSDKCalloutMetrics;
+import com.veeva.vault.custom.udc.vSDKCalloutOutbox;
+import com.veeva.vault.custom.udc.vSDKCircuitBreaker;
+import com.veeva.vault.custom.udc.vSDKHttpCallouts;
+import com.veeva.vault.custom.udc.vSDKServiceBudget;
+import com.veeva.vault.custom.udc.vSDKV2VFanOut;
+import com.veeva.vault.custom.udc.vSDKWorkBudget;
+import com.veeva.vault.sdk.api.action.DocumentAction;
+import com.veeva.vault.sdk.api.action.DocumentActionContext;
+import com.veeva.vault.sdk.api.action.DocumentActionInfo;
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.document.DocumentVersion;
+import com.veeva.vault.sdk.api.query.QueryResponse;
+import com.veeva.vault.sdk.api.query.QueryService;
+
+
+/******************************************************************************                                                     
+ * Document Action:     Vault To Vault Http Callout
+ * Author:      Kevin Nee @ Veeva
+ * Date:        2019-03-06
+ *-----------------------------------------------------------------------------
+ * Description: Provides an example of how to use a Vault-to-Vault HTTP Callout.
+ * 
+ * 				This creates a CrossLink in the target vault via the specified 
+ * 				Vault to Vault Connection. 
+ * 
+ *              All selected documents are processed. Their connections are
+ *              retrieved with one query and the CrossLinks are created in
+ *              bulk per target vault.
+ *              
+ *              Each target vault is isolated: a failing or slow target does
+ *              not roll back the others. Targets left unfinished are queued
+ *              in the callout outbox to be resumed.
+ * 
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@DocumentActionInfo(label="SDK: Vault To Vault Http Callout")
+public class vSDKVaultToVaultHttpCalloutAction implements DocumentAction {
+	
+    // Maximum number of version IDs in a single "version_id contains (...)" clause
+    static final int VERSION_CHUNK_SIZE = 250;
+    // Queue the crosslinks in vsdk_callout_outbox__c instead of calling the target vaults during the action
+    static final boolean DEFER_CALLOUTS = false;
+    // Local queries allowed per target vault, in addition to one per chunk of documents: vault ID cache and circuit breaker state
+    static final int QUERIES_PER_CONNECTION = 2;
+    // Local queries allowed once per action: the circuit breaker flush reads the saved counts of every target vault
+    static final int QUERIES_PER_ACTION = 1;
+    // Time allowed for all target vaults. Targets not started by then are left unfinished.
+    static final long FAN_OUT_DEADLINE_MILLIS = 60000;
+    // Queue unfinished targets and deferred documents in vsdk_callout_outbox__c
+    static final boolean RESUME_UNFINISHED = true;
+	
+    public void execute(DocumentActionContext documentActionContext) {
+
+    	QueryService queryService = ServiceLocator.locate(QueryService.class);
+    	LogService logService = ServiceLocator.locate(LogService.class);
+    	List<DocumentVersion> docVersionList = documentActionContext.getDocumentVersions();
+    	Map<String, Map<String, String>> httpParamsByVersionId = VaultCollections.newMap();
+    	
+    	//Count the service calls of this action. The limits are declared once the target vaults are known.
+    	vSDKServiceBudget.begin("vSDKVaultToVaultHttpCalloutAction", docVersionList.size());
+    	vSDKWorkBudget.begin("vSDKVaultToVaultHttpCalloutAction");
+    	
+    	try {
+	    	for (DocumentVersion docVersion : docVersionList) {
+		    	String version_id = docVersion.getValue("id", ValueType.STRING) + "_" + 
+		    				docVersion.getValue("major_version_number__v", ValueType.NUMBER).toString() + "_" + 
+		    				docVersion.getValue("minor_version_number__v", ValueType.NUMBER).toString();
+	    	
+		    	Map<String, String> httpParams = VaultCollections.newMap();
+		    	httpParams.put("docId", docVersion.getValue("id", ValueType.STRING));
+		    	httpParams.put("docName", docVersion.getValue("name__v", ValueType.STRING));
+		    	httpParams.put("type", "vSDK HTTP Doctype");
+		    	httpParams.put("lifecycle", "vSDK HTTP Doctype Lifecycle");
+		    	httpParamsByVersionId.put(version_id, httpParams);
+	    	}
+    	
+	    	//Retrieve the connections of every selected document with one query per chunk of version IDs,
+	    	//then group the documents by connection so each target vault is called once per chunk of documents.
+	    	Map<String, List<Map<String, String>>> documentsByConnection = VaultCollections.newMap();
+	    	List<String> versionIds = VaultCollections.newList();
+	    	versionIds.addAll(httpParamsByVersionId.keySet());
+    	
+	    	for (int start = 0; start < versionIds.size(); start += VERSION_CHUNK_SIZE) {
+	    		List<String> chunk = versionIds.subList(start, Math.min(start + VERSION_CHUNK_SIZE, versionIds.size()));
+		    	String query = "select id, version_id, (select api_name__sys, remote_connection_id__sys from document_vsdk_connection__cr) "
+		    				+ "from documents where version_id contains ('" + String.join("','", chunk) + "')";
+	
+		    	vSDKServiceBudget.count(vSDKServiceBudget.QUERY, "vSDKVaultToVaultHttpCalloutAction.execute");
+		    	QueryResponse queryResponse = queryService.query(query);
+	    	
+		    	queryResponse.streamResults().forEach(qr -> {
+		    		Map<String, String> httpParams = httpParamsByVersionId.get(qr.getValue("version_id", ValueType.STRING));
+		            QueryResponse subQueryResponse = qr.getSubqueryResponse("document_vsdk_connection__cr");
+	            
+		            subQueryResponse.streamResults().forEach(subqr -> {
+		            	String connection = subqr.getValue("api_name__sys", ValueType.STRING);
+	            	
+		            	//Each connection gets its own copy of the parameters because the source vault ID differs per target.
+		            	Map<String, String> connectionParams = VaultCollections.newMap();
+		            	connectionParams.putAll(httpParams);
+		            	connectionParams.put("remoteConnectionId", subqr.getValue("remote_connection_id__sys", ValueType.STRING));
+		            	documentsByConnection.computeIfAbsent(connection, key -> VaultCollections.newList()).add(connectionParams);
+		            });
+		        });
+	    	}
+    	
+	    	//With DEFER_CALLOUTS, the crosslinks are queued and created later by vSDKCalloutOutboxProcessor.
+	    	if (DEFER_CALLOUTS) {
+	    		for (String connection : documentsByConnection.keySet()) {
+	    			for (Map<String, String> httpParams : documentsByConnection.get(connection)) {
+	    				vSDKCalloutOutbox.enqueue(connection, vSDKCalloutOutbox.CROSSLINK_CREATE, httpParams.get("docId"), httpParams);
+	    			}
+	    		}
+	    		logService.info("{} Crosslinks queued.", vSDKCalloutOutbox.flush());
+	    		return;
+	    	}
+    	
+	    	//Each target vault allows one vault ID query, and one existing crosslink query and one create call per chunk of documents.
+	    	int calloutLimit = 0;
+	    	for (List<Map<String, String>> documents : documentsByConnection.values()) {
+	    		calloutLimit += 1 + 2 * vSDKServiceBudget.chunks(documents.size(), vSDKHttpCallouts.BULK_CREATE_CHUNK_SIZE);
+	    	}
+	    	vSDKServiceBudget.limit(vSDKServiceBudget.HTTP, calloutLimit);
+	    	vSDKServiceBudget.limit(vSDKServiceBudget.QUERY, vSDKServiceBudget.chunks(docVersionList.size(), VERSION_CHUNK_SIZE) 
+	    			+ QUERIES_PER_CONNECTION * documentsByConnection.size() + QUERIES_PER_ACTION);
+    	
+	    	//Resolve the source vault IDs and create the crosslinks per target. A failing target does not roll back
+	    	//the others, and targets not started before the deadline are left unfinished.
+	    	vSDKV2VFanOut fanOut = new vSDKV2VFanOut(FAN_OUT_DEADLINE_MILLIS).execute(documentsByConnection);
+	    	vSDKBulkResult targetResult = fanOut.getTargetResult();
+	    	logService.info("Crosslink targets: {}", targetResult.getSummary());
+	    	for (String connection : targetResult.getFailed().keySet()) {
+	    		logService.error("Crosslinks for connection {} failed: {}", connection, targetResult.getFailed().get(connection));
+	    	}
+	    	for (String connection : targetResult.getSkipped().keySet()) {
+	    		logService.warn("Crosslinks for connection {} skipped: {}", connection, targetResult.getSkipped().get(connection));
+	    	}
+    	
+	    	Map<String, vSDKBulkResult> results = fanOut.getDocumentResults();
+	    	for (String connection : results.keySet()) {
+	    		vSDKBulkResult result = results.get(connection);
+	    		logService.info("Crosslinks for connection {}: {}", connection, result.getSummary());
+	    		for (String docId : result.getFailed().keySet()) {
+	    			logService.error("Crosslink for Document ID {} on connection {}: {}", docId, connection, result.getFailed().get(docId));
+	    		}
+	    	}
+    	
+	    	//Unfinished targets and deferred documents, including those deferred by the work budget of this request,
+	    	//are queued so vSDKCalloutOutboxProcessor resumes them.
+	    	if (RESUME_UNFINISHED && !fanOut.getUnfinished().isEmpty()) {
+	    		for (String connection : fanOut.getUnfinished().keySet()) {
+	    			for (Map<String, String> httpParams : fanOut.getUnfinished().get(connection)) {
+	    				vSDKCalloutOutbox.enqueue(connection, vSDKCalloutOutbox.CROSSLINK_CREATE, httpParams.get("docId"), httpParams);
+	    			}
+	    		}
+	    		logService.info("{} unfinished Crosslinks queued.", vSDKCalloutOutbox.flush());
+	    	}
+    	
+	    	//Save the callout metrics and circuit breaker counts of this request.
+	    	vSDKCalloutMetrics.flush();
+	    	vSDKCircuitBreaker.flush();
+    	}
+    	finally {
+    		vSDKServiceBudget.end();
+    		vSDKWorkBudget.end();
+    	}
+    }
+
+	public boolean isExecutable(DocumentActionContext documentActionContext) {
+	    return true;
+	}
+}
\ No newline at end of file
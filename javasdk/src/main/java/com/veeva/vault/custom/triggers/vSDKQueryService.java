@@ -1,112 +1,145 @@
-package com.veeva.vault.custom.triggers;
-
-import com.veeva.vault.sdk.api.data.RecordTriggerInfo;
-import com.veeva.vault.sdk.api.query.QueryResponse;
-import com.veeva.vault.sdk.api.query.QueryResult;
-import com.veeva.vault.sdk.api.query.QueryService;
-import com.veeva.vault.sdk.api.data.RecordEvent;
-import com.veeva.vault.sdk.api.data.RecordTrigger;
-import com.veeva.vault.sdk.api.data.RecordTriggerContext;
-import com.veeva.vault.sdk.api.data.RecordChange;
-
-import java.util.Iterator;
-
-import com.veeva.vault.sdk.api.core.ServiceLocator;
-import com.veeva.vault.sdk.api.core.ValueType;
-
-/**
- * This trigger demonstrates the Vault Java SDK QueryService. It uses the QueryService to:
- * 
- *    - Query for existing 'vsdk_service_basics__c' records with the same name
- *    - If a record with the same name is found: 
- *       - Set the new record's name__v to "Copy of: <name__v>".
- *       - Set the new record as related to the original queried record via the "related_to__c" object field.
- *    - If a record doesn't exist:
- *       - Insert the record with the name__v set as entered in the UI.
- *
- */
-
-@RecordTriggerInfo(object = "vsdk_service_basics__c", events = {RecordEvent.BEFORE_INSERT})
-public class vSDKQueryService implements RecordTrigger {
-
-    public void execute(RecordTriggerContext recordTriggerContext) {
-
-    	RecordEvent recordEvent = recordTriggerContext.getRecordEvent();
-    	QueryService queryService = ServiceLocator.locate(QueryService.class);
-    	
-    	if (recordEvent.toString().equals("BEFORE_INSERT")) {
-	        for (RecordChange inputRecord : recordTriggerContext.getRecordChanges()) {
-	
-	            String name = inputRecord.getNew().getValue("name__v", ValueType.STRING);
-	            String relatedTo = inputRecord.getNew().getValue("related_to__c", ValueType.STRING);
-	            
-	            // Break out of the trigger code if the new record has a related "vsdk_service_basics__c" record.
-	            // This indicates that the records are new inserts from "vSDKRecordService.java" and do not need processing.
-	            if (relatedTo != "" && relatedTo != null) {
-	            	break;
-	            }
-	            
-	            //Set the query up. Verify these queries using the API. 
-	            //The QueryService.escape(string) escapes single quotes and backslashes for use within the query.
-	            String query = "select id, name__v, "
-	            			+ "(select id from vsdk_service_basics__cr where name__v like '" + queryService.escape("Copy of: '" + name + "'") + " %') "  
-	            			+ "from vsdk_service_basics__c where name__v like '" + name + "'";
-	            QueryResponse queryResponse = queryService.query(query);
-	            
-	            //QueryResponse parsed with Iterator
-	            queryAsIterator(queryResponse, inputRecord, name);
-	            
-	            //QueryResponse parsed with Stream
-	            queryAsStream(queryResponse, inputRecord, name);
-	            
-	            
-	            //If the QueryService returns no matching records, insert the new record as is.
-	            if (queryResponse.getResultCount() == 0) {
-	                inputRecord.getNew().setValue("name__v", name);
-	            }
-	        }
-    	}
-    }
-    
-    
-    public void queryAsIterator(QueryResponse queryResponse, RecordChange inputRecord, String recordName) {
-    	
-        Iterator<QueryResult> iterator = queryResponse.streamResults().iterator();
-        
-    	//Iterate over the QueryResponse to grab each individual queried record.
-    	//Once retrieved, you can access the subquery to find out how many "Copy of" records exist already.
-    	//The subquery total value is used to increment the "Copy of" records when a user tries to 
-    	//insert multiple records with the same name.
-        
-        while (iterator.hasNext()) {
-        	
-            QueryResult qr = (QueryResult) iterator.next();
-            QueryResponse subQueryResponse = qr.getSubqueryResponse("vsdk_service_basics__cr");
-            
-            //Change the name of the inserted record to "Copy of: '<name>' x".
-            //Set the record as related to the queried record via the custom "related_to__c" object reference field.
-            String id = qr.getValue("id", ValueType.STRING);
-            inputRecord.getNew().setValue("name__v", "Copy of: '" + recordName + "' " + (subQueryResponse.getResultCount() + 1));
-            inputRecord.getNew().setValue("related_to__c", id);
-        }
-    }
-   
-    public void queryAsStream(QueryResponse queryResponse, RecordChange inputRecord, String recordName) {
-    	
-    	//Stream  over the QueryResponse to grab each individual queried record.
-    	//Once retrieved, you can access the subquery to find out how many "Copy of" records exist already.
-    	//The subquery total value is used to increment the "Copy of" records when a user tries to 
-    	//insert multiple records with the same name.
-    	
-    	queryResponse.streamResults().forEach(qr -> {
-            QueryResponse subQueryResponse = qr.getSubqueryResponse("vsdk_service_basics__cr");
-            
-            //Change the name of the inserted record to "Copy of: '<name>' x".
-            //Set the record as related to the queried record via the custom "related_to__c" object reference field.
-            String id = qr.getValue("id", ValueType.STRING);
-            inputRecord.getNew().setValue("name__v", "Copy of: '" + recordName + "' " + (subQueryResponse.getResultCount() + 1));
-            inputRecord.getNew().setValue("related_to__c", id);
-            
-        });
-    }
+package com.veeva.vault.custom.triggers;
+
+import com.veeva.vault.sdk.api.data.RecordTriggerInfo;
+import com.veeva.vault.sdk.api.data.RecordEvent;
+import com.veeva.vault.sdk.api.data.RecordTrigger;
+import com.veeva.vault.sdk.api.data.RecordTriggerContext;
+import com.veeva.vault.sdk.api.data.RecordChange;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.veeva.vault.custom.udc.vSDKCopyCounter;
+import com.veeva.vault.custom.udc.vSDKCopyNameIndex;
+import com.veeva.vault.custom.udc.vSDKPendingCopyLinks;
+import com.veeva.vault.custom.udc.vSDKServiceBudget;
+
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+/**
+ * This trigger demonstrates the Vault Java SDK QueryService. It uses the QueryService to:
+ * 
+ *    - Query for existing 'vsdk_service_basics__c' records with the same name
+ *    - If a record with the same name is found: 
+ *       - Set the new record's name__v to "Copy of: <name__v>".
+ *       - Set the new record as related to the original queried record via the "related_to__c" object field.
+ *    - If a record doesn't exist:
+ *       - Insert the record with the name__v set as entered in the UI.
+ *
+ * The names of every record in the batch are resolved with a few chunked 
+ * "name__v contains (...)" queries instead of one query per record. Copy numbers come from a
+ * counter stored on the original record (see vSDKCopyCounter), so concurrent inserts never get
+ * the same number. Records with the same name inside one batch are numbered one after the other.
+ * A copy of a name that is new in the batch is related to its original after the insert, once the
+ * original has an ID (see vSDKPendingCopyLinks).
+ *
+ */
+
+@RecordTriggerInfo(object = "vsdk_service_basics__c", events = {RecordEvent.BEFORE_INSERT, RecordEvent.AFTER_INSERT})
+public class vSDKQueryService implements RecordTrigger {
+	
+    // Maximum number of names in a single "name__v contains (...)" clause
+    static final int NAME_CHUNK_SIZE = 250;
+    // Service calls allowed per chunk of NAME_CHUNK_SIZE records: name lookup, counter read and counter seed
+    static final int QUERIES_PER_CHUNK = 3;
+    // Batch saves allowed per insert: copy counter lock and copy counter update
+    static final int RECORD_SAVES = 2;
+    // Batch saves allowed after the insert: related_to__c of the copies of new names
+    static final int LINK_SAVES = 1;
+
+    public void execute(RecordTriggerContext recordTriggerContext) {
+
+    	RecordEvent recordEvent = recordTriggerContext.getRecordEvent();
+    	int recordCount = recordTriggerContext.getRecordChanges().size();
+    	
+    	//Count the service calls of this insert. Exceeding the budget is reported by `end`.
+    	vSDKServiceBudget.begin("vSDKQueryService " + recordEvent, recordCount);
+    	
+    	try {
+	    	if (recordEvent.toString().equals("BEFORE_INSERT")) {
+	    		vSDKServiceBudget.limit(vSDKServiceBudget.QUERY, QUERIES_PER_CHUNK * vSDKServiceBudget.chunks(recordCount, NAME_CHUNK_SIZE));
+	    		vSDKServiceBudget.limit(vSDKServiceBudget.RECORD_SAVE, RECORD_SAVES);
+	    		executeBulk(recordTriggerContext.getRecordChanges());
+	    	}
+	    	else if (recordEvent.toString().equals("AFTER_INSERT")) {
+	    		vSDKServiceBudget.limit(vSDKServiceBudget.QUERY, 0);
+	    		vSDKServiceBudget.limit(vSDKServiceBudget.RECORD_SAVE, LINK_SAVES);
+	    		vSDKPendingCopyLinks.link(recordTriggerContext.getRecordChanges());
+	    	}
+    	}
+    	finally {
+    		vSDKServiceBudget.end();
+    	}
+    }
+    
+    
+    public void executeBulk(List<RecordChange> recordChanges) {
+    	
+    	List<RecordChange> candidates = VaultCollections.newList();
+    	Set<String> names = VaultCollections.newSet();
+    	
+    	for (RecordChange inputRecord : recordChanges) {
+    		String name = inputRecord.getNew().getValue("name__v", ValueType.STRING);
+    		String relatedTo = inputRecord.getNew().getValue("related_to__c", ValueType.STRING);
+    		
+    		// Skip records that already have a related "vsdk_service_basics__c" record.
+    		// These are new inserts from "vSDKRecordService.java" and do not need processing.
+    		if ((relatedTo != null && !relatedTo.isEmpty()) || name == null) {
+    			continue;
+    		}
+    		candidates.add(inputRecord);
+    		names.add(name);
+    	}
+    	
+    	if (candidates.isEmpty()) {
+    		return;
+    	}
+    	
+    	//Resolve every name in the batch at once, then reserve one block of copy numbers per original record
+    	//from its stored counter. Numbers are handed out in order, so duplicates in this batch get N, N+1, ...
+    	//The first record with a new name is the original, and its later duplicates in the batch are copies of it.
+    	vSDKCopyNameIndex index = vSDKCopyNameIndex.load(names, NAME_CHUNK_SIZE);
+    	Map<String, Integer> copiesByName = VaultCollections.newMap();
+    	Map<String, RecordChange> newOriginals = VaultCollections.newMap();
+    	
+    	for (RecordChange inputRecord : candidates) {
+    		String name = inputRecord.getNew().getValue("name__v", ValueType.STRING);
+    		if (index.contains(name) || newOriginals.containsKey(name)) {
+    			copiesByName.put(name, copiesByName.getOrDefault(name, 0) + 1);
+    		}
+    		else {
+    			newOriginals.put(name, inputRecord);
+    		}
+    	}
+    	
+    	if (copiesByName.isEmpty()) {
+    		return;
+    	}
+    	index.reserve(copiesByName);
+    	
+    	for (RecordChange inputRecord : candidates) {
+    		String name = inputRecord.getNew().getValue("name__v", ValueType.STRING);
+    		
+    		if (index.contains(name)) {
+    			inputRecord.getNew().setValue("name__v", "Copy of: '" + name + "' " + index.nextCopyNumber(name));
+    			inputRecord.getNew().setValue("related_to__c", index.getId(name));
+    		}
+    		//A duplicate of a new name is numbered now, and related after the insert, once the original has an ID.
+    		else if (newOriginals.get(name) != inputRecord) {
+    			String copyName = "Copy of: '" + name + "' " + index.nextCopyNumber(name);
+    			inputRecord.getNew().setValue("name__v", copyName);
+    			vSDKPendingCopyLinks.add(copyName, name);
+    		}
+    	}
+    	
+    	//The new originals start their counter at the copies numbered in this batch, so later inserts continue after them.
+    	for (String name : newOriginals.keySet()) {
+    		if (copiesByName.containsKey(name)) {
+    			newOriginals.get(name).getNew().setValue(vSDKCopyCounter.COUNTER_FIELD, BigDecimal.valueOf(copiesByName.get(name)));
+    		}
+    	}
+    }
 }
\ No newline at end of file
@@ -1,85 +1,120 @@
-package com.veeva.vault.custom.triggers;
-
-import com.veeva.vault.sdk.api.data.RecordTriggerInfo;
-import com.veeva.vault.sdk.api.data.RecordEvent;
-import com.veeva.vault.sdk.api.data.RecordService;
-import com.veeva.vault.sdk.api.data.RecordTrigger;
-import com.veeva.vault.sdk.api.data.RecordTriggerContext;
-import com.veeva.vault.sdk.api.data.Record;
-import com.veeva.vault.sdk.api.data.RecordChange;
-
-import java.util.List;
-
-import com.veeva.vault.sdk.api.core.RollbackException;
-import com.veeva.vault.sdk.api.core.ServiceLocator;
-import com.veeva.vault.sdk.api.core.ValueType;
-import com.veeva.vault.sdk.api.core.VaultCollections;
-
-/**
- * This trigger demonstrates the Vault Java SDK RecordService. It uses the RecordService to:
- * 
- *    - Create two related "vsdk_service_basics__c" records with the inserted record's ID.
- *    - If is not empty, don't create any new records. This indicates that one of the new related records is passing through the trigger.
- *    - If is not empty, don't create any new records.
- *    - The related records will be named "Related to: '<name__v>' 1" and "Related to: '<name__v>' 2"
- *
- */
-
-@RecordTriggerInfo(object = "vsdk_service_basics__c", events = {RecordEvent.AFTER_INSERT})
-public class vSDKRecordService implements RecordTrigger {
-
-    public void execute(RecordTriggerContext recordTriggerContext) {
-
-    	RecordEvent recordEvent = recordTriggerContext.getRecordEvent();
-    	RecordService recordService = ServiceLocator.locate(RecordService.class);
-    	List<Record> recordList =  VaultCollections.newList();
-    	
-    	if (recordEvent.toString().equals("AFTER_INSERT")) {
-	        for (RecordChange inputRecord : recordTriggerContext.getRecordChanges()) {
-	
-	            String name = inputRecord.getNew().getValue("name__v", ValueType.STRING);
-	            String id = inputRecord.getNew().getValue("id", ValueType.STRING);
-	            String relatedTo = inputRecord.getNew().getValue("related_to__c", ValueType.STRING);
-	       
-	        	// Break out of the trigger code if the new record has a related "vsdk_service_basics__c" record.
-	            // This indicates that the records are "Copy of" records from "vSDKQueryService.java" 
-	            // and do not need processing.
-	            if (relatedTo == "" || relatedTo == null) {
-	            	
-	            	//Creates two related records by creating a new record via the RecordService.
-	            	// The name of records is set as "Related to: <name> x"
-	            	// The relation to the parent to then set with the "related_to__c" object reference field.
-	            	for (int i = 1; i <= 2; i++) {
-	            		
-		            	 Record r = recordService.newRecord("vsdk_service_basics__c");
-		                 r.setValue("name__v", "Related to: '" + name + "' " + i);
-		                 r.setValue("related_to__c", id);
-		                 
-		                 recordList.add(r);
-	            	}
-	            }  
-	        }
-	        
-	        //If there are records to insert, the batchSaveRecords takes a List<Record> as input.
-	        //This list should contain every new record that you are adding or updating.
-	    	if (recordList.size() > 0) {
-		        recordService.batchSaveRecords(recordList)
-	                .onErrors(batchOperationErrors -> {
-	                
-	                  //Iterate over the caught errors. 
-	                  //The BatchOperation.onErrors() returns a list of BatchOperationErrors. 
-	                  //The list can then be traversed to retrieve a single BatchOperationError and 
-	                  //then extract an **ErrorResult** with BatchOperationError.getError(). 
-	          	      batchOperationErrors.stream().findFirst().ifPresent(error -> {
-	        	          String errMsg = error.getError().getMessage();
-	        	          int errPosition = error.getInputPosition();
-	        	          String name = recordList.get(errPosition).getValue("name__v", ValueType.STRING);
-	        	          throw new RollbackException("OPERATION_NOT_ALLOWED", "Unable to create '" + recordList.get(errPosition).getObjectName() + "' record: '" +
-	        	                  name + "' because of '" + errMsg + "'.");
-	        	      });
-	                })
-	            .execute();
-	    	}
-    	}
-    }
+package com.veeva.vault.custom.triggers;
+
+import com.veeva.vault.sdk.api.data.RecordTriggerInfo;
+import com.veeva.vault.sdk.api.data.RecordEvent;
+import com.veeva.vault.sdk.api.data.RecordTrigger;
+import com.veeva.vault.sdk.api.data.RecordTriggerContext;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordChange;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import com.veeva.vault.custom.udc.vSDKBulkResult;
+import com.veeva.vault.custom.udc.vSDKCalloutExecutor;
+import com.veeva.vault.custom.udc.vSDKCalloutOutbox;
+import com.veeva.vault.custom.udc.vSDKPendingCopyLinks;
+import com.veeva.vault.custom.udc.vSDKRelatedRecordFanOut;
+import com.veeva.vault.custom.udc.vSDKServiceBudget;
+import com.veeva.vault.custom.udc.vSDKWorkBudget;
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+/**
+ * This trigger demonstrates the Vault Java SDK RecordService. It uses the RecordService to:
+ * 
+ *    - Create two related "vsdk_service_basics__c" records with the inserted record's ID.
+ *    - If is not empty, don't create any new records. This indicates that one of the new related records is passing through the trigger.
+ *    - If is not empty, don't create any new records.
+ *    - The related records will be named "Related to: '<name__v>' 1" and "Related to: '<name__v>' 2"
+ *
+ * The number of related records and their name template are set by CHILDREN_PER_PARENT and NAME_TEMPLATE.
+ * Records are saved in chunks by vSDKRelatedRecordFanOut. When ROLLBACK_ON_ERRORS is false, failed chunks
+ * are logged and the remaining chunks are still saved. Once the vSDKWorkBudget of the insert is nearly used,
+ * the remaining records are queued in vsdk_callout_outbox__c and get their related records later.
+ *
+ */
+
+@RecordTriggerInfo(object = "vsdk_service_basics__c", events = {RecordEvent.AFTER_INSERT})
+public class vSDKRecordService implements RecordTrigger {
+	
+    // Number of related records created for each inserted record
+    static final int CHILDREN_PER_PARENT = 2;
+    // Name of each related record. {name} is the parent name__v and {index} runs from 1 to CHILDREN_PER_PARENT
+    static final String NAME_TEMPLATE = "Related to: '{name}' {index}";
+    // Records per batchSaveRecords call
+    static final int CHUNK_SIZE = vSDKRelatedRecordFanOut.MAX_BATCH_SIZE;
+    // Roll back the whole insert on the first error, or report failed chunks and continue
+    static final boolean ROLLBACK_ON_ERRORS = true;
+
+    public void execute(RecordTriggerContext recordTriggerContext) {
+
+    	RecordEvent recordEvent = recordTriggerContext.getRecordEvent();
+    	LogService logService = ServiceLocator.locate(LogService.class);
+    	
+    	if (recordEvent.toString().equals("AFTER_INSERT")) {
+    		
+    		//Count the service calls of this insert: one batch save per chunk of related records, one outbox save
+    		//for deferred records, and no queries.
+    		int recordCount = recordTriggerContext.getRecordChanges().size();
+    		vSDKServiceBudget.begin("vSDKRecordService " + recordEvent, recordCount);
+    		vSDKWorkBudget.begin("vSDKRecordService " + recordEvent);
+    		vSDKServiceBudget.limit(vSDKServiceBudget.QUERY, 0);
+    		vSDKServiceBudget.limit(vSDKServiceBudget.RECORD_SAVE, vSDKServiceBudget.chunks(recordCount * CHILDREN_PER_PARENT, CHUNK_SIZE) + 1);
+    		
+    		try {
+	        	// Skip records that have a related "vsdk_service_basics__c" record.
+	            // This indicates that the records are "Copy of" records from "vSDKQueryService.java" 
+	            // and do not need processing. Copies of a record inserted in the same batch are related
+	            // only after the insert, so they are recognized by vSDKPendingCopyLinks instead.
+	    		Iterator<Record> parents = recordTriggerContext.getRecordChanges().stream()
+	    				.map(RecordChange::getNew)
+	    				.filter(r -> {
+	    					String relatedTo = r.getValue("related_to__c", ValueType.STRING);
+	    					return (relatedTo == null || relatedTo.isEmpty())
+	    							&& !vSDKPendingCopyLinks.isCopy(r.getValue("name__v", ValueType.STRING));
+	    				})
+	    				.iterator();
+    		
+	        	//Creates the related records via the RecordService. The records are built while the parents
+	            //are read and saved in chunks, so the full list of new records is never held in memory.
+	            //The relation to the parent is set with the "related_to__c" object reference field.
+	    		vSDKRelatedRecordFanOut fanOut = new vSDKRelatedRecordFanOut("vsdk_service_basics__c", "related_to__c")
+	    				.setChildrenPerParent(CHILDREN_PER_PARENT)
+	    				.setNameTemplate(NAME_TEMPLATE)
+	    				.setChunkSize(CHUNK_SIZE)
+	    				.setRollbackOnErrors(ROLLBACK_ON_ERRORS);
+	    		vSDKBulkResult result = fanOut.execute(parents);
+    		
+	    		if (result.hasFailures()) {
+	    			logService.error("Related record creation: {}", result.getSummary());
+	    			for (String key : result.getFailed().keySet()) {
+	    				logService.error("Unable to create related record {}: {}", key, result.getFailed().get(key));
+	    			}
+	    		}
+    		
+	    		//Parents deferred by the work budget of this insert are queued, and their related records
+	    		//are created later by vSDKCalloutOutboxProcessor.
+	    		for (Record parent : fanOut.getDeferredParents()) {
+	    			Map<String, String> payload = VaultCollections.newMap();
+	    			payload.put("parentId", parent.getValue("id", ValueType.STRING));
+	    			payload.put("parentName", parent.getValue("name__v", ValueType.STRING));
+	    			payload.put("objectName", "vsdk_service_basics__c");
+	    			payload.put("relationField", "related_to__c");
+	    			payload.put("childrenPerParent", String.valueOf(CHILDREN_PER_PARENT));
+	    			payload.put("nameTemplate", NAME_TEMPLATE);
+	    			vSDKCalloutOutbox.enqueue(vSDKCalloutExecutor.LOCAL, vSDKCalloutOutbox.RELATED_RECORDS, payload.get("parentId"), payload);
+	    		}
+	    		if (!fanOut.getDeferredParents().isEmpty()) {
+	    			logService.warn("Related record creation queued for {} records.", vSDKCalloutOutbox.flush());
+	    		}
+    		}
+    		finally {
+    			vSDKServiceBudget.end();
+    			vSDKWorkBudget.end();
+    		}
+    	}
+    }
 }
\ No newline at end of file
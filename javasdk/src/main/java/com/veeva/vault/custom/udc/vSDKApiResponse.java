@@ -0,0 +1,158 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.json.JsonArray;
+import com.veeva.vault.sdk.api.json.JsonData;
+import com.veeva.vault.sdk.api.json.JsonObject;
+import com.veeva.vault.sdk.api.json.JsonValueType;
+
+/******************************************************************************
+ * User-Defined Class:  ApiResponse
+ *-----------------------------------------------------------------------------
+ * Description: Decodes the envelope of a Vault API response in one pass.
+ *
+ *              The envelope fields (responseStatus, responseMessage, the
+ *              first entry of errors, and the responseDetails page cursors)
+ *              are read once. The parsed body is kept as a handle, so the
+ *              callout only reads the data it needs from it.
+ *
+ *              `throwIfFailed` maps a failed response to a RollbackException
+ *              the same way for every callout.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKApiResponse {
+
+	private JsonObject body;
+	private String status;
+	private String errorType;
+	private String errorMessage;
+	private String nextPage;
+	private String previousPage;
+
+	/**
+	 * @param response body of a Vault API call
+	 * @return the decoded envelope. A non-JSON response decodes to an invalid envelope.
+	 */
+
+	public static vSDKApiResponse decode(JsonData response) {
+
+		vSDKApiResponse decoded = new vSDKApiResponse();
+		if (response == null || !response.isValidJson()) {
+			return decoded;
+		}
+
+		decoded.body = response.getJsonObject();
+		decoded.readEnvelope(decoded.body);
+
+		if (decoded.body.contains("responseDetails")) {
+			JsonObject responseDetails = decoded.body.getValue("responseDetails", JsonValueType.OBJECT);
+			if (responseDetails.contains("next_page")) {
+				decoded.nextPage = responseDetails.getValue("next_page", JsonValueType.STRING);
+			}
+			if (responseDetails.contains("previous_page")) {
+				decoded.previousPage = responseDetails.getValue("previous_page", JsonValueType.STRING);
+			}
+		}
+		return decoded;
+	}
+
+	/**
+	 * Decodes the status and first error of one entry in a bulk response `data` array.
+	 *
+	 * @param row of a bulk response
+	 * @return the decoded row
+	 */
+
+	public static vSDKApiResponse decodeRow(JsonObject row) {
+		vSDKApiResponse decoded = new vSDKApiResponse();
+		decoded.body = row;
+		decoded.readEnvelope(row);
+		return decoded;
+	}
+
+	private void readEnvelope(JsonObject envelope) {
+
+		if (envelope.contains("responseStatus")) {
+			status = envelope.getValue("responseStatus", JsonValueType.STRING);
+		}
+		if (envelope.contains("errors")) {
+			JsonArray errors = envelope.getValue("errors", JsonValueType.ARRAY);
+			if (errors.getSize() > 0) {
+				JsonObject error = errors.getValue(0, JsonValueType.OBJECT);
+				errorType = error.getValue("type", JsonValueType.STRING);
+				errorMessage = error.getValue("message", JsonValueType.STRING);
+			}
+		}
+		//The responseMessage takes precedence over the first error message, as in the original callouts.
+		if (envelope.contains("responseMessage")) {
+			errorMessage = envelope.getValue("responseMessage", JsonValueType.STRING);
+		}
+	}
+
+	/**
+	 * Logs and throws a RollbackException when the response is not successful and carries an error.
+	 *
+	 * @param messagePrefix of the exception message, such as "Query Errors: "
+	 * @return this response, for chaining
+	 */
+
+	public vSDKApiResponse throwIfFailed(String messagePrefix) {
+
+		if (isValidJson() && !isSuccess() && errorMessage != null) {
+			LogService logService = ServiceLocator.locate(LogService.class);
+			logService.error("ERROR {}: {}", errorType == null ? "" : errorType, errorMessage);
+			throw new RollbackException("OPERATION_NOT_ALLOWED", messagePrefix + errorMessage);
+		}
+		return this;
+	}
+
+	public boolean isValidJson() {
+		return body != null;
+	}
+
+	public boolean isSuccess() {
+		return "SUCCESS".equals(status);
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public String getErrorType() {
+		return errorType;
+	}
+
+	//Returns the error message, or "Unknown error" when the response has none.
+	public String getErrorMessage() {
+		return errorMessage == null ? "Unknown error" : errorMessage;
+	}
+
+	public JsonObject getBody() {
+		return body;
+	}
+
+	//Returns the `data` array of the response, or null when there is none.
+	public JsonArray getDataArray() {
+		return body != null && body.contains("data") ? body.getValue("data", JsonValueType.ARRAY) : null;
+	}
+
+	public String getNextPage() {
+		return nextPage;
+	}
+
+	public String getPreviousPage() {
+		return previousPage;
+	}
+}
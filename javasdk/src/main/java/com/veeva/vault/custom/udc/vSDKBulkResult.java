@@ -0,0 +1,110 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/******************************************************************************
+ * User-Defined Class:  BulkResult
+ *-----------------------------------------------------------------------------
+ * Description: Collects the per-item outcome of a bulk operation.
+ *
+ *              Each item is identified by a key (a record name, a document
+ *              ID, ...) and is recorded as succeeded, failed with a message,
+ *              or skipped with a reason. Bulk operations return this instead
+ *              of rolling back on the first error.
+ *
+ *              Items that were already done by an earlier run, such as a
+ *              crosslink that already exists, count as succeeded and are
+ *              also listed as existing.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKBulkResult {
+
+	private final List<String> succeeded = VaultCollections.newList();
+	//Companion of `succeeded` for lookups, which also keeps the list free of duplicates
+	private final Set<String> succeededKeys = VaultCollections.newSet();
+	private final Map<String, String> failed = VaultCollections.newMap();
+	private final Map<String, String> skipped = VaultCollections.newMap();
+	private final List<String> existing = VaultCollections.newList();
+
+	public void addSuccess(String key) {
+		if (succeededKeys.add(key)) {
+			succeeded.add(key);
+		}
+	}
+
+	//Records an item that did not need to be done again, as succeeded.
+	public void addExisting(String key) {
+		if (succeededKeys.add(key)) {
+			succeeded.add(key);
+			existing.add(key);
+		}
+	}
+
+	public void addFailure(String key, String message) {
+		failed.put(key, message);
+	}
+
+	public void addSkipped(String key, String reason) {
+		skipped.put(key, reason);
+	}
+
+	//Adds every outcome of another result to this one.
+	public void merge(vSDKBulkResult other) {
+		Set<String> otherExisting = VaultCollections.newSet();
+		otherExisting.addAll(other.getExisting());
+		for (String key : other.getSucceeded()) {
+			if (otherExisting.contains(key)) {
+				addExisting(key);
+			}
+			else {
+				addSuccess(key);
+			}
+		}
+		failed.putAll(other.getFailed());
+		skipped.putAll(other.getSkipped());
+	}
+
+	public List<String> getSucceeded() {
+		return succeeded;
+	}
+
+	//Returns true if the item succeeded, without scanning the list of succeeded items.
+	public boolean isSucceeded(String key) {
+		return succeededKeys.contains(key);
+	}
+
+	public Map<String, String> getFailed() {
+		return failed;
+	}
+
+	public Map<String, String> getSkipped() {
+		return skipped;
+	}
+
+	public List<String> getExisting() {
+		return existing;
+	}
+
+	public boolean hasFailures() {
+		return !failed.isEmpty();
+	}
+
+	public String getSummary() {
+		String summary = succeeded.size() + " succeeded, " + failed.size() + " failed, " + skipped.size() + " skipped";
+		return existing.isEmpty() ? summary : summary + " (" + existing.size() + " already present)";
+	}
+}
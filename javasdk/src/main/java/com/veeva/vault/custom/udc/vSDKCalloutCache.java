@@ -0,0 +1,257 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+import com.veeva.vault.sdk.api.query.QueryService;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/******************************************************************************
+ * User-Defined Class:  CalloutCache
+ *-----------------------------------------------------------------------------
+ * Description: Provides a two level key/value cache for values that are
+ *              expensive to look up, such as callout results.
+ *
+ *              - Request level: values are kept in the RequestContext and
+ *                live until the end of the current request.
+ *              - Vault level (optional): values stored with a TTL are also
+ *                saved as 'vsdk_callout_cache__c' records, so later requests
+ *                by any user can read them until they expire.
+ *
+ *              Keys are stored in name__v and must be at most 128 characters.
+ *              Values are stored in value__c, a long text field of at most
+ *              32000 characters.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKCalloutCache implements RequestContextValue {
+
+	static final String CONTEXT_NAME = "vsdk_callout_cache";
+	static final String OBJECT_NAME = "vsdk_callout_cache__c";
+	static final int KEY_CHUNK_SIZE = 250;
+
+	private final Map<String, String> values = VaultCollections.newMap();
+	private final Map<String, String> recordIds = VaultCollections.newMap();
+	private final Set<String> misses = VaultCollections.newSet();
+	private final Map<String, String> expired = VaultCollections.newMap();
+
+	/**
+	 * Returns the cached value for the key, or null when there is no unexpired value.
+	 * Values read from the vault are kept for the rest of the request.
+	 *
+	 * @param key of the value
+	 * @param readVault whether to look for a saved value when the request has none
+	 * @return the value or null
+	 */
+
+	public static String get(String key, boolean readVault) {
+		return getAll(VaultCollections.asList(key), readVault).get(key);
+	}
+
+	/**
+	 * Returns the cached values for several keys. Keys that are not cached in
+	 * the request are read from the vault with one query per chunk of keys.
+	 *
+	 * @param keys of the values
+	 * @param readVault whether to look for saved values when the request has none
+	 * @return the values found, keyed by key
+	 */
+
+	public static Map<String, String> getAll(Collection<String> keys, boolean readVault) {
+
+		vSDKCalloutCache cache = current();
+		Map<String, String> found = VaultCollections.newMap();
+		List<String> unknown = VaultCollections.newList();
+
+		for (String key : keys) {
+			if (cache.values.containsKey(key)) {
+				found.put(key, cache.values.get(key));
+			}
+			else if (!cache.misses.contains(key)) {
+				unknown.add(key);
+			}
+		}
+
+		if (readVault && !unknown.isEmpty()) {
+			cache.load(unknown);
+			for (String key : unknown) {
+				if (cache.values.containsKey(key)) {
+					found.put(key, cache.values.get(key));
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the last saved value of a key whose saved entry has expired, such as a
+	 * response to revalidate. Only entries read from the vault by `get` in this
+	 * request are known.
+	 *
+	 * @param key of the value
+	 * @return the expired value or null
+	 */
+
+	public static String getExpired(String key) {
+		return current().expired.get(key);
+	}
+
+	/**
+	 * Caches a value for the request. When ttlSeconds is greater than zero the
+	 * value is also saved to the vault and expires after ttlSeconds.
+	 *
+	 * @param key of the value
+	 * @param value to cache
+	 * @param ttlSeconds lifetime of the saved value, or 0 to only cache for the request
+	 */
+
+	public static void put(String key, String value, long ttlSeconds) {
+		Map<String, String> entries = VaultCollections.newMap();
+		entries.put(key, value);
+		putAll(entries, ttlSeconds);
+	}
+
+	/**
+	 * Caches several values with one batch save.
+	 *
+	 * @param entries values keyed by key
+	 * @param ttlSeconds lifetime of the saved values, or 0 to only cache for the request
+	 */
+
+	public static void putAll(Map<String, String> entries, long ttlSeconds) {
+
+		vSDKCalloutCache cache = current();
+		cache.values.putAll(entries);
+		cache.misses.removeAll(entries.keySet());
+		cache.expired.keySet().removeAll(entries.keySet());
+
+		if (ttlSeconds <= 0 || entries.isEmpty()) {
+			return;
+		}
+
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		List<Record> recordList = VaultCollections.newList();
+		ZonedDateTime expires = ZonedDateTime.now().plusSeconds(ttlSeconds);
+
+		for (String key : entries.keySet()) {
+			Record r = cache.recordIds.containsKey(key)
+					? recordService.newRecordWithId(OBJECT_NAME, cache.recordIds.get(key))
+					: recordService.newRecord(OBJECT_NAME);
+			r.setValue("name__v", key);
+			r.setValue("value__c", entries.get(key));
+			r.setValue("expires__c", expires);
+			recordList.add(r);
+		}
+
+		//A cache write that fails only costs a later lookup, so errors are logged and not rolled back.
+		vSDKServiceBudget.count(vSDKServiceBudget.RECORD_SAVE, "vSDKCalloutCache.putAll");
+		recordService.batchSaveRecords(recordList)
+			.onSuccesses(successes -> successes.forEach(success -> {
+				cache.recordIds.put(recordList.get(success.getInputPosition()).getValue("name__v", ValueType.STRING), success.getRecordId());
+			}))
+			.onErrors(batchOperationErrors -> {
+				ServiceLocator.locate(LogService.class).warn("Unable to save {} callout cache entries: {}", batchOperationErrors.size(),
+						batchOperationErrors.get(0).getError().getMessage());
+			})
+			.execute();
+	}
+
+	/**
+	 * Removes the value from the request and from the vault.
+	 *
+	 * @param key of the value
+	 */
+
+	public static void invalidate(String key) {
+
+		vSDKCalloutCache cache = current();
+		cache.values.remove(key);
+		cache.expired.remove(key);
+		cache.misses.add(key);
+
+		QueryService queryService = ServiceLocator.locate(QueryService.class);
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		List<Record> recordList = VaultCollections.newList();
+
+		vSDKServiceBudget.count(vSDKServiceBudget.QUERY, "vSDKCalloutCache.invalidate");
+		queryService.query("select id from " + OBJECT_NAME + " where name__v = '" + queryService.escape(key) + "'")
+			.streamResults().forEach(qr -> {
+				recordList.add(recordService.newRecordWithId(OBJECT_NAME, qr.getValue("id", ValueType.STRING)));
+			});
+		cache.recordIds.remove(key);
+
+		if (!recordList.isEmpty()) {
+			vSDKServiceBudget.count(vSDKServiceBudget.RECORD_DELETE, "vSDKCalloutCache.invalidate");
+			recordService.batchDeleteRecords(recordList).onErrors(batchOperationErrors -> {}).execute();
+		}
+	}
+
+	//Returns the cache of the current request, creating it on first use.
+	private static vSDKCalloutCache current() {
+		vSDKCalloutCache cache = RequestContext.get().getValue(CONTEXT_NAME, vSDKCalloutCache.class);
+		if (cache == null) {
+			cache = new vSDKCalloutCache();
+			RequestContext.get().setValue(CONTEXT_NAME, cache);
+		}
+		return cache;
+	}
+
+	//Reads saved values for the keys. Expired records are remembered so they can be revalidated and updated in place.
+	private void load(List<String> keys) {
+
+		QueryService queryService = ServiceLocator.locate(QueryService.class);
+		ZonedDateTime now = ZonedDateTime.now();
+
+		for (int start = 0; start < keys.size(); start += KEY_CHUNK_SIZE) {
+			StringBuilder keyList = new StringBuilder();
+			for (String key : keys.subList(start, Math.min(start + KEY_CHUNK_SIZE, keys.size()))) {
+				if (keyList.length() > 0) {
+					keyList.append(",");
+				}
+				keyList.append("'").append(queryService.escape(key)).append("'");
+			}
+
+			String query = "select id, name__v, LONGTEXT(value__c), expires__c from " + OBJECT_NAME
+						+ " where name__v contains (" + keyList + ")";
+
+			vSDKServiceBudget.count(vSDKServiceBudget.QUERY, "vSDKCalloutCache.load");
+			queryService.query(query).streamResults().forEach(qr -> {
+				String key = qr.getValue("name__v", ValueType.STRING);
+				ZonedDateTime expires = qr.getValue("expires__c", ValueType.DATETIME);
+
+				recordIds.put(key, qr.getValue("id", ValueType.STRING));
+				if (expires != null && expires.isAfter(now)) {
+					values.put(key, qr.getValue("value__c", ValueType.STRING));
+				}
+				else {
+					expired.put(key, qr.getValue("value__c", ValueType.STRING));
+				}
+			});
+		}
+
+		for (String key : keys) {
+			if (!values.containsKey(key)) {
+				misses.add(key);
+			}
+		}
+	}
+}
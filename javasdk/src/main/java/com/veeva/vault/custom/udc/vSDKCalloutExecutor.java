@@ -0,0 +1,205 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.http.HttpOperationError;
+import com.veeva.vault.sdk.api.http.HttpRequest;
+import com.veeva.vault.sdk.api.http.HttpResponse;
+import com.veeva.vault.sdk.api.http.HttpResponseBodyValueType;
+import com.veeva.vault.sdk.api.http.HttpService;
+import com.veeva.vault.sdk.api.json.JsonData;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
+/******************************************************************************
+ * User-Defined Class:  CalloutExecutor
+ *-----------------------------------------------------------------------------
+ * Description: Sends an HttpRequest through the HttpService and records
+ *              the callout in vSDKCalloutMetrics and vSDKRateLimiter.
+ *              Callouts to named connections also go through
+ *              vSDKCircuitBreaker.
+ *
+ *              It is used like the HttpService operation it wraps:
+ *
+ *                  vSDKCalloutExecutor.send(connection, pathTemplate, request)
+ *                      .onSuccess(httpResponse -> {...})
+ *                      .onError(httpOperationError -> {...})
+ *                      .execute();
+ *
+ *              The path template identifies the endpoint without IDs, for
+ *              example "GET /api/v19.1/objects/documents/{id}".
+ *
+ *              Each request is sent once; the executor does not retry. A
+ *              429, a 503 or a missing response makes vSDKRateLimiter set a
+ *              backoff for the connection, and the SDK cannot pause a
+ *              request to wait it out. Instead, bulk callouts check
+ *              `vSDKRateLimiter.isThrottled` before each chunk and defer the
+ *              rest of their work, and vSDKCalloutOutbox sends deferred
+ *              items again in a later run, with its own backoff between
+ *              attempts.
+ *
+ *              When the circuit breaker of the connection is open, nothing
+ *              is sent and the `onRejected` handler runs instead. By default
+ *              it throws a RollbackException.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKCalloutExecutor {
+
+	// Connection name recorded for `newLocalHttpRequest` callouts
+	public static final String LOCAL = "local";
+
+	private final String connection;
+	private final String pathTemplate;
+	private final HttpRequest request;
+	private Consumer<HttpResponse<JsonData>> successHandler = httpResponse -> {};
+	private Consumer<HttpOperationError> errorHandler = httpOperationError -> {};
+	private Runnable rejectedHandler;
+
+	private vSDKCalloutExecutor(String connection, String pathTemplate, HttpRequest request) {
+		this.connection = connection;
+		this.pathTemplate = pathTemplate;
+		this.request = request;
+		this.rejectedHandler = () -> {
+			throw new RollbackException("OPERATION_NOT_ALLOWED", "Connection '" + connection + "' is unavailable. Try again later.");
+		};
+	}
+
+	/**
+	 * @param connection the request is sent to, or LOCAL
+	 * @param pathTemplate of the endpoint, such as "POST /api/v19.1/query"
+	 * @param request to send
+	 * @return the callout, ready for its handlers
+	 */
+
+	public static vSDKCalloutExecutor send(String connection, String pathTemplate, HttpRequest request) {
+		return new vSDKCalloutExecutor(connection, pathTemplate, request);
+	}
+
+	public vSDKCalloutExecutor onSuccess(Consumer<HttpResponse<JsonData>> successHandler) {
+		this.successHandler = successHandler;
+		return this;
+	}
+
+	public vSDKCalloutExecutor onError(Consumer<HttpOperationError> errorHandler) {
+		this.errorHandler = errorHandler;
+		return this;
+	}
+
+	//Runs instead of sending the request when the circuit breaker of the connection is open.
+	public vSDKCalloutExecutor onRejected(Runnable rejectedHandler) {
+		this.rejectedHandler = rejectedHandler;
+		return this;
+	}
+
+	/**
+	 * Sends the request and runs the handler matching the outcome. The callout is recorded,
+	 * even when a handler throws.
+	 */
+
+	public void execute() {
+
+		if (!LOCAL.equals(connection) && !vSDKCircuitBreaker.allowRequest(connection)) {
+			rejectedHandler.run();
+			return;
+		}
+		vSDKServiceBudget.count(vSDKServiceBudget.HTTP, connection + " " + pathTemplate);
+
+		Object[] outcome = sendOnce();
+		if (outcome[0] != null) {
+			successHandler.accept(castResponse(outcome[0]));
+		}
+		else if (outcome[1] != null) {
+			errorHandler.accept((HttpOperationError) outcome[1]);
+		}
+	}
+
+	//Sends the request and returns {response, error}. The callout is recorded before returning.
+	private Object[] sendOnce() {
+
+		HttpService httpService = ServiceLocator.locate(HttpService.class);
+		Instant start = Instant.now();
+		Object[] outcome = new Object[2];
+
+		try {
+			httpService.send(request, HttpResponseBodyValueType.JSONDATA)
+				.onSuccess(httpResponse -> outcome[0] = httpResponse)
+				.onError(httpOperationError -> outcome[1] = httpOperationError)
+				.execute();
+		}
+		finally {
+			HttpResponse<?> received = outcome[0] != null ? (HttpResponse<?>) outcome[0]
+					: outcome[1] != null ? ((HttpOperationError) outcome[1]).getHttpResponse() : null;
+			long latency = Duration.between(start, Instant.now()).toMillis();
+			int statusCode = received == null ? 0 : received.getHttpStatusCode();
+
+			vSDKCalloutMetrics.record(connection, pathTemplate, latency, statusCode, contentLength(received), outcome[0] == null);
+			vSDKRateLimiter.record(connection, received);
+			vSDKWorkBudget.countCallout();
+			if (!LOCAL.equals(connection)) {
+				vSDKCircuitBreaker.record(connection, latency, statusCode == 0 || statusCode >= 500);
+			}
+		}
+		return outcome;
+	}
+
+	//Returns the status code of a failed callout, or 0 when no response was received, such as on a timeout.
+	public static int statusCode(HttpOperationError httpOperationError) {
+		return httpOperationError.getHttpResponse() == null ? 0 : httpOperationError.getHttpResponse().getHttpStatusCode();
+	}
+
+	//Returns the response body of a failed callout, or null when no response was received.
+	public static Object responseBody(HttpOperationError httpOperationError) {
+		return httpOperationError.getHttpResponse() == null ? null : httpOperationError.getHttpResponse().getResponseBody();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static HttpResponse<JsonData> castResponse(Object response) {
+		return (HttpResponse<JsonData>) response;
+	}
+
+	/**
+	 * @param httpResponse to read from, or null
+	 * @param name of the header, matched without case
+	 * @return the first value of the header, or null when it is missing
+	 */
+
+	public static String headerValue(HttpResponse<?> httpResponse, String name) {
+		if (httpResponse == null || httpResponse.getHeaders() == null) {
+			return null;
+		}
+		for (String header : httpResponse.getHeaders().keySet()) {
+			List<String> values = httpResponse.getHeaders().get(header);
+			if (header.equalsIgnoreCase(name) && values != null && !values.isEmpty()) {
+				return values.get(0);
+			}
+		}
+		return null;
+	}
+
+	//Reads the response size from the Content-Length header, so the body does not have to be serialized.
+	private static long contentLength(HttpResponse<?> httpResponse) {
+		String value = headerValue(httpResponse, "Content-Length");
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+
+import java.util.function.Supplier;
+
+/******************************************************************************
+ * User-Defined Class:  CalloutLog
+ *-----------------------------------------------------------------------------
+ * Description: Logs HTTP callout response bodies without paying for them
+ *              when nobody reads the log.
+ *
+ *              - Bodies are only logged at debug level. The body is passed
+ *                as a Supplier and is only turned into a string when it is
+ *                actually logged.
+ *              - Logged bodies are cut to MAX_BODY_CHARS characters.
+ *              - One in SUCCESS_SAMPLE_RATE success bodies per request is
+ *                logged. Failure bodies are always logged.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKCalloutLog implements RequestContextValue {
+
+	static final String CONTEXT_NAME = "vsdk_callout_log";
+	// Maximum number of body characters written to the log
+	static final int MAX_BODY_CHARS = 2000;
+	// Log one in this many success bodies. 1 logs every success body.
+	static final int SUCCESS_SAMPLE_RATE = 10;
+
+	private int successCount = 0;
+
+	/**
+	 * Logs a success response body at debug level, sampled to one in SUCCESS_SAMPLE_RATE.
+	 *
+	 * @param body supplier of the response body
+	 */
+
+	public static void successBody(Supplier<Object> body) {
+
+		LogService logService = ServiceLocator.locate(LogService.class);
+		if (!logService.isDebugEnabled()) {
+			return;
+		}
+
+		vSDKCalloutLog log = current();
+		log.successCount++;
+		if ((log.successCount - 1) % SUCCESS_SAMPLE_RATE == 0) {
+			logService.debug("RESPONSE: {}", truncate(body.get()));
+		}
+	}
+
+	/**
+	 * Logs a failure response body at debug level. Failures are not sampled.
+	 *
+	 * @param body supplier of the response body
+	 */
+
+	public static void failureBody(Supplier<Object> body) {
+
+		LogService logService = ServiceLocator.locate(LogService.class);
+		if (logService.isDebugEnabled()) {
+			logService.debug("RESPONSE: {}", truncate(body.get()));
+		}
+	}
+
+	private static String truncate(Object body) {
+		String text = String.valueOf(body);
+		if (text.length() <= MAX_BODY_CHARS) {
+			return text;
+		}
+		return text.substring(0, MAX_BODY_CHARS) + "... (" + text.length() + " characters)";
+	}
+
+	//Returns the sampling state of the current request, creating it on first use.
+	private static vSDKCalloutLog current() {
+		vSDKCalloutLog log = RequestContext.get().getValue(CONTEXT_NAME, vSDKCalloutLog.class);
+		if (log == null) {
+			log = new vSDKCalloutLog();
+			RequestContext.get().setValue(CONTEXT_NAME, log);
+		}
+		return log;
+	}
+}
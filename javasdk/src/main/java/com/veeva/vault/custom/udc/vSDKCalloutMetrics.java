@@ -0,0 +1,141 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/******************************************************************************
+ * User-Defined Class:  CalloutMetrics
+ *-----------------------------------------------------------------------------
+ * Description: Collects per-endpoint callout metrics for the request and
+ *              writes them with one batch save.
+ *
+ *              vSDKCalloutExecutor records every callout by connection and
+ *              path template. `flush` saves one 'vsdk_callout_metric__c'
+ *              record per endpoint with the call count, error count,
+ *              status code counts, response bytes, the p50, p99, max and
+ *              total latency of the request, and the number of calls in
+ *              each latency bucket of vSDKEndpointStats.
+ *
+ *              The percentiles and max are those of a single request and
+ *              cannot be combined across records. For the latency
+ *              distribution of an endpoint across requests, report the sum
+ *              of each latency bucket field over its records.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKCalloutMetrics implements RequestContextValue {
+
+	static final String CONTEXT_NAME = "vsdk_callout_metrics";
+	static final String OBJECT_NAME = "vsdk_callout_metric__c";
+	// Set to false to stop collecting and saving metrics
+	static final boolean ENABLED = true;
+
+	private final Map<String, vSDKEndpointStats> statsByEndpoint = VaultCollections.newMap();
+
+	/**
+	 * Records one callout for the current request.
+	 *
+	 * @param connection of the callout
+	 * @param pathTemplate of the callout, such as "GET /api/v19.1/objects/documents/{id}"
+	 * @param latencyMillis of the callout
+	 * @param statusCode returned, or 0 when there was no response
+	 * @param bytes of the response body, or a negative value when unknown
+	 * @param error whether the callout failed
+	 */
+
+	public static void record(String connection, String pathTemplate, long latencyMillis, int statusCode, long bytes, boolean error) {
+
+		if (!ENABLED) {
+			return;
+		}
+		vSDKCalloutMetrics metrics = current();
+		String key = connection + " " + pathTemplate;
+		vSDKEndpointStats stats = metrics.statsByEndpoint.get(key);
+		if (stats == null) {
+			stats = new vSDKEndpointStats(connection, pathTemplate);
+			metrics.statsByEndpoint.put(key, stats);
+		}
+		stats.record(latencyMillis, statusCode, bytes, error);
+	}
+
+	/**
+	 * Saves the metrics of the current request with one batch save and clears them.
+	 * Call this once at the end of an entry point that makes callouts.
+	 */
+
+	public static void flush() {
+
+		vSDKCalloutMetrics metrics = current();
+		if (metrics.statsByEndpoint.isEmpty()) {
+			return;
+		}
+
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		List<Record> recordList = VaultCollections.newList();
+
+		for (vSDKEndpointStats stats : metrics.statsByEndpoint.values()) {
+			String name = stats.getConnection() + " " + stats.getPathTemplate();
+
+			Record r = recordService.newRecord(OBJECT_NAME);
+			r.setValue("name__v", name.length() > 128 ? name.substring(0, 128) : name);
+			r.setValue("connection__c", stats.getConnection());
+			r.setValue("path_template__c", stats.getPathTemplate());
+			r.setValue("call_count__c", BigDecimal.valueOf(stats.getCallCount()));
+			r.setValue("error_count__c", BigDecimal.valueOf(stats.getErrorCount()));
+			r.setValue("status_counts__c", stats.getStatusCounts());
+			r.setValue("response_bytes__c", BigDecimal.valueOf(stats.getResponseBytes()));
+			r.setValue("p50_latency_ms__c", BigDecimal.valueOf(stats.getLatencyPercentile(50)));
+			r.setValue("p99_latency_ms__c", BigDecimal.valueOf(stats.getLatencyPercentile(99)));
+			r.setValue("max_latency_ms__c", BigDecimal.valueOf(stats.getLatencyPercentile(100)));
+			r.setValue("total_latency_ms__c", BigDecimal.valueOf(stats.getTotalLatency()));
+			for (int bucket = 0; bucket <= vSDKEndpointStats.LATENCY_BUCKET_BOUNDS_MS.length; bucket++) {
+				r.setValue(latencyBucketField(bucket), BigDecimal.valueOf(stats.getLatencyBucketCount(bucket)));
+			}
+			recordList.add(r);
+		}
+		metrics.statsByEndpoint.clear();
+
+		//Metrics must never fail the user's action, so errors are logged and not rolled back.
+		vSDKServiceBudget.count(vSDKServiceBudget.RECORD_SAVE, "vSDKCalloutMetrics.flush");
+		recordService.batchSaveRecords(recordList)
+			.onErrors(batchOperationErrors -> {
+				ServiceLocator.locate(LogService.class).warn("Unable to save {} callout metrics: {}", batchOperationErrors.size(),
+						batchOperationErrors.get(0).getError().getMessage());
+			})
+			.execute();
+	}
+
+	//Returns the field of a latency bucket, such as "latency_250_ms__c", or "latency_over_5000_ms__c" for the last one.
+	static String latencyBucketField(int bucket) {
+		long[] bounds = vSDKEndpointStats.LATENCY_BUCKET_BOUNDS_MS;
+		return bucket < bounds.length ? "latency_" + bounds[bucket] + "_ms__c" : "latency_over_" + bounds[bounds.length - 1] + "_ms__c";
+	}
+
+	//Returns the metrics of the current request, creating them on first use.
+	private static vSDKCalloutMetrics current() {
+		vSDKCalloutMetrics metrics = RequestContext.get().getValue(CONTEXT_NAME, vSDKCalloutMetrics.class);
+		if (metrics == null) {
+			metrics = new vSDKCalloutMetrics();
+			RequestContext.get().setValue(CONTEXT_NAME, metrics);
+		}
+		return metrics;
+	}
+}
@@ -0,0 +1,438 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+import com.veeva.vault.sdk.api.query.QueryService;
+
+import java.math.BigDecimal;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/******************************************************************************
+ * User-Defined Class:  CalloutOutbox
+ *-----------------------------------------------------------------------------
+ * Description: Defers callouts to a 'vsdk_callout_outbox__c' record per item,
+ *              so a user action only writes locally and does not wait for,
+ *              or roll back on, a remote system.
+ *
+ *              - `enqueue` buffers an item for the request and `flush`
+ *                saves the buffered items with one batch save, inside the
+ *                local transaction.
+ *              - `process` drains pending items. Items are grouped by
+ *                connection and operation and each group is sent with the
+ *                bulk callouts of vSDKHttpCallouts.
+ *              - Before sending, `process` saves a lease (lease_until__c)
+ *                on its items. An item is in progress while it is leased,
+ *                and leased items are not selected by another run. Runs
+ *                that overlap wait on the lease save, and then only send the
+ *                items that are still pending.
+ *              - A failed item is retried after RETRY_DELAY_SECONDS, doubled
+ *                on each attempt. After MAX_ATTEMPTS it is dead-lettered
+ *                (status "dead") with its last error. Items deferred by the
+ *                rate limiter or circuit breaker are retried without
+ *                counting an attempt.
+ *              - Work deferred because the vSDKWorkBudget of a request was
+ *                nearly used is queued the same way, and `process` stops
+ *                sending once its own budget is nearly used.
+ *
+ *              The payload is stored as "key=value" lines in payload__c,
+ *              a long text field of at most 32000 characters.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKCalloutOutbox implements RequestContextValue {
+
+	static final String CONTEXT_NAME = "vsdk_callout_outbox";
+	static final String OBJECT_NAME = "vsdk_callout_outbox__c";
+	// Operations that can be deferred
+	public static final String WORKFLOW_START = "workflow_start";
+	public static final String CROSSLINK_CREATE = "crosslink_create";
+	public static final String EXTERNAL_ENRICHMENT = "external_enrichment";
+	public static final String RELATED_RECORDS = "related_records";
+	// Item states
+	static final String PENDING = "pending";
+	static final String DONE = "done";
+	static final String DEAD = "dead";
+	// Attempts before an item is dead-lettered, and the delay before the first retry
+	static final int MAX_ATTEMPTS = 5;
+	static final long RETRY_DELAY_SECONDS = 60;
+	// Time a run holds the items it is sending. Items of a run that failed are picked up again after it.
+	static final long LEASE_SECONDS = 600;
+	// Maximum number of IDs in a single "id contains (...)" clause
+	static final int ID_CHUNK_SIZE = 250;
+
+	private final List<Record> buffered = VaultCollections.newList();
+
+	/**
+	 * Buffers a callout for the request. Call `flush` to save the buffered callouts.
+	 *
+	 * @param connection the callout is sent to, or vSDKCalloutExecutor.LOCAL
+	 * @param operation one of WORKFLOW_START, CROSSLINK_CREATE, EXTERNAL_ENRICHMENT or RELATED_RECORDS
+	 * @param itemKey that identifies the item in the bulk result, such as the docId
+	 * @param payload parameters of the callout
+	 */
+
+	public static void enqueue(String connection, String operation, String itemKey, Map<String, String> payload) {
+
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		String name = operation + ": " + itemKey;
+
+		Record r = recordService.newRecord(OBJECT_NAME);
+		r.setValue("name__v", name.length() > 128 ? name.substring(0, 128) : name);
+		r.setValue("connection__c", connection);
+		r.setValue("operation__c", operation);
+		r.setValue("item_key__c", itemKey);
+		r.setValue("payload__c", encode(payload));
+		r.setValue("status__c", PENDING);
+		r.setValue("attempt_count__c", BigDecimal.ZERO);
+		r.setValue("next_attempt__c", ZonedDateTime.now());
+		current().buffered.add(r);
+	}
+
+	/**
+	 * Saves the buffered callouts with one batch save. A failure rolls back the request,
+	 * so the local changes are never committed without their callouts.
+	 *
+	 * @return the number of callouts saved
+	 */
+
+	public static int flush() {
+
+		vSDKCalloutOutbox outbox = current();
+		int count = outbox.buffered.size();
+		if (count == 0) {
+			return 0;
+		}
+
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		List<Record> recordList = VaultCollections.newList();
+		recordList.addAll(outbox.buffered);
+		outbox.buffered.clear();
+
+		vSDKServiceBudget.count(vSDKServiceBudget.RECORD_SAVE, "vSDKCalloutOutbox.flush");
+		recordService.batchSaveRecords(recordList).rollbackOnErrors().execute();
+		return count;
+	}
+
+	/**
+	 * Sends up to `limit` pending callouts that are due and updates their state.
+	 *
+	 * @param limit of callouts to process
+	 * @return the outcome of every processed item, keyed by outbox record ID.
+	 *         Retried items are reported as skipped and dead-lettered items as failed.
+	 */
+
+	public static vSDKBulkResult process(int limit) {
+
+		QueryService queryService = ServiceLocator.locate(QueryService.class);
+		ZonedDateTime now = ZonedDateTime.now();
+		String due = now.withZoneSameInstant(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'"));
+
+		String query = "select id, connection__c, operation__c, item_key__c, LONGTEXT(payload__c), attempt_count__c from " + OBJECT_NAME
+					+ " where " + dueFilter(due) + " and (lease_until__c = null or lease_until__c < '" + due + "')"
+					+ " order by next_attempt__c asc";
+
+		Map<String, Map<String, String>> itemsById = VaultCollections.newMap();
+		vSDKServiceBudget.count(vSDKServiceBudget.QUERY, "vSDKCalloutOutbox.process");
+		queryService.query(query).streamResults().limit(limit).forEach(qr -> {
+			Map<String, String> item = decode(qr.getValue("payload__c", ValueType.STRING));
+			BigDecimal attempts = qr.getValue("attempt_count__c", ValueType.NUMBER);
+
+			item.put("outbox.id", qr.getValue("id", ValueType.STRING));
+			item.put("outbox.key", qr.getValue("item_key__c", ValueType.STRING));
+			item.put("outbox.attempts", String.valueOf(attempts == null ? 0 : attempts.intValue()));
+			item.put("outbox.group", qr.getValue("connection__c", ValueType.STRING) + "|" + qr.getValue("operation__c", ValueType.STRING));
+			itemsById.put(item.get("outbox.id"), item);
+		});
+
+		//Items are grouped by connection and operation so each group is sent with one bulk callout.
+		Map<String, List<Map<String, String>>> itemsByGroup = VaultCollections.newMap();
+		for (String id : claim(itemsById.keySet(), now, due)) {
+			Map<String, String> item = itemsById.get(id);
+			itemsByGroup.computeIfAbsent(item.get("outbox.group"), key -> VaultCollections.newList()).add(item);
+		}
+
+		vSDKBulkResult processed = new vSDKBulkResult();
+		List<Record> updates = VaultCollections.newList();
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+
+		for (String group : itemsByGroup.keySet()) {
+			String connection = group.substring(0, group.indexOf('|'));
+			String operation = group.substring(group.indexOf('|') + 1);
+			List<Map<String, String>> items = itemsByGroup.get(group);
+
+			//Groups that are not sent are released and picked up by the next run.
+			if (vSDKWorkBudget.isNearLimit()) {
+				for (Map<String, String> item : items) {
+					Record r = recordService.newRecordWithId(OBJECT_NAME, item.get("outbox.id"));
+					r.setValue("lease_until__c", null);
+					updates.add(r);
+				}
+				continue;
+			}
+
+			vSDKBulkResult result;
+			try {
+				result = send(connection, operation, items);
+			}
+			catch (RollbackException e) {
+				result = new vSDKBulkResult();
+				for (Map<String, String> item : items) {
+					result.addFailure(item.get("outbox.key"), e.getMessage());
+				}
+			}
+
+			for (Map<String, String> item : items) {
+				updates.add(update(item, result, now, processed));
+			}
+		}
+
+		//The outcome of the callouts cannot be undone, so a failed update is logged and not rolled back.
+		if (!updates.isEmpty()) {
+			vSDKServiceBudget.count(vSDKServiceBudget.RECORD_SAVE, "vSDKCalloutOutbox.process");
+			ServiceLocator.locate(RecordService.class).batchSaveRecords(updates)
+				.onErrors(batchOperationErrors -> {
+					ServiceLocator.locate(LogService.class).warn("Unable to update {} callout outbox items: {}", batchOperationErrors.size(),
+							batchOperationErrors.get(0).getError().getMessage());
+				})
+				.execute();
+		}
+		return processed;
+	}
+
+	//Selects items that are pending and due.
+	private static String dueFilter(String due) {
+		return "status__c = '" + PENDING + "' and next_attempt__c <= '" + due + "'";
+	}
+
+	//Leases the items before they are sent and returns the IDs that are still pending and due.
+	//Saving the lease takes the row locks, so a run that overlaps waits here until the other run
+	//commits. The check after the lock then drops the items that run has already handled.
+	private static List<String> claim(Collection<String> ids, ZonedDateTime now, String due) {
+
+		List<String> claimed = VaultCollections.newList();
+		if (ids.isEmpty()) {
+			return claimed;
+		}
+
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		List<Record> leases = VaultCollections.newList();
+		for (String id : ids) {
+			Record r = recordService.newRecordWithId(OBJECT_NAME, id);
+			r.setValue("lease_until__c", now.plusSeconds(LEASE_SECONDS));
+			leases.add(r);
+		}
+		List<String> leased = VaultCollections.newList();
+		vSDKServiceBudget.count(vSDKServiceBudget.RECORD_SAVE, "vSDKCalloutOutbox.claim");
+		recordService.batchSaveRecords(leases)
+			.onSuccesses(successes -> successes.forEach(success -> leased.add(success.getRecordId())))
+			.onErrors(batchOperationErrors -> {
+				ServiceLocator.locate(LogService.class).warn("Unable to lease {} callout outbox items: {}", batchOperationErrors.size(),
+						batchOperationErrors.get(0).getError().getMessage());
+			})
+			.execute();
+
+		QueryService queryService = ServiceLocator.locate(QueryService.class);
+		for (int start = 0; start < leased.size(); start += ID_CHUNK_SIZE) {
+			List<String> chunk = leased.subList(start, Math.min(start + ID_CHUNK_SIZE, leased.size()));
+			String query = "select id from " + OBJECT_NAME + " where id contains ('" + String.join("','", chunk) + "') and " + dueFilter(due);
+
+			vSDKServiceBudget.count(vSDKServiceBudget.QUERY, "vSDKCalloutOutbox.claim");
+			queryService.query(query).streamResults().forEach(qr -> claimed.add(qr.getValue("id", ValueType.STRING)));
+		}
+		return claimed;
+	}
+
+	//Sends a group of items with the bulk callout of its operation.
+	private static vSDKBulkResult send(String connection, String operation, List<Map<String, String>> items) {
+
+		if (WORKFLOW_START.equals(operation)) {
+			//The workflow is started for the owner given at enqueue time, so items are sent per owner.
+			Map<String, Map<String, List<String>>> versionIdsByUser = VaultCollections.newMap();
+			for (Map<String, String> item : items) {
+				versionIdsByUser.computeIfAbsent(item.get("userId"), key -> VaultCollections.newMap())
+					.computeIfAbsent(item.get("cacheKey"), key -> VaultCollections.newList())
+					.add(item.get("versionId"));
+			}
+
+			vSDKBulkResult result = new vSDKBulkResult();
+			for (String userId : versionIdsByUser.keySet()) {
+				result.merge(vSDKHttpCallouts.localStartDocWorkflowBulk(versionIdsByUser.get(userId), userId, VaultCollections.newMap()));
+			}
+			return result;
+		}
+		if (CROSSLINK_CREATE.equals(operation)) {
+			vSDKHttpCallouts.v2vSetRemoteVaultIds(connection, items);
+			return vSDKHttpCallouts.v2vCreateCrosslinksBulk(connection, items);
+		}
+		if (EXTERNAL_ENRICHMENT.equals(operation)) {
+			List<String> docIds = VaultCollections.newList();
+			for (Map<String, String> item : items) {
+				docIds.add(item.get("docId"));
+			}
+			return vSDKHttpCallouts.externalHttpCalloutBulk(docIds);
+		}
+		if (RELATED_RECORDS.equals(operation)) {
+			return sendRelatedRecords(items);
+		}
+
+		vSDKBulkResult result = new vSDKBulkResult();
+		for (Map<String, String> item : items) {
+			result.addFailure(item.get("outbox.key"), "Unknown operation '" + operation + "'.");
+		}
+		return result;
+	}
+
+	//Creates the related records of deferred parents. Parents are sent per fan-out configuration.
+	private static vSDKBulkResult sendRelatedRecords(List<Map<String, String>> items) {
+
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		Map<String, List<Map<String, String>>> itemsByConfiguration = VaultCollections.newMap();
+		for (Map<String, String> item : items) {
+			String configuration = item.get("objectName") + "|" + item.get("relationField") + "|"
+					+ item.get("childrenPerParent") + "|" + item.get("nameTemplate");
+			itemsByConfiguration.computeIfAbsent(configuration, key -> VaultCollections.newList()).add(item);
+		}
+
+		vSDKBulkResult result = new vSDKBulkResult();
+		for (List<Map<String, String>> group : itemsByConfiguration.values()) {
+			Map<String, String> first = group.get(0);
+			List<Record> parents = VaultCollections.newList();
+			for (Map<String, String> item : group) {
+				Record parent = recordService.newRecordWithId(first.get("objectName"), item.get("parentId"));
+				parent.setValue("name__v", item.get("parentName"));
+				parents.add(parent);
+			}
+
+			vSDKRelatedRecordFanOut fanOut = new vSDKRelatedRecordFanOut(first.get("objectName"), first.get("relationField"))
+					.setChildrenPerParent(Integer.parseInt(first.get("childrenPerParent")))
+					.setNameTemplate(first.get("nameTemplate"))
+					.setRollbackOnErrors(false);
+			fanOut.execute(parents.iterator());
+
+			//The outcome of a parent is the outcome of its related records.
+			Set<String> deferred = VaultCollections.newSet();
+			fanOut.getDeferredParents().forEach(parent -> deferred.add(parent.getValue("id", ValueType.STRING)));
+			for (Map<String, String> item : group) {
+				String parentId = item.get("parentId");
+				if (deferred.contains(parentId)) {
+					result.addSkipped(item.get("outbox.key"), vSDKHttpCallouts.WORK_BUDGET_REACHED);
+				}
+				else if (fanOut.getFailedParents().containsKey(parentId)) {
+					result.addFailure(item.get("outbox.key"), fanOut.getFailedParents().get(parentId));
+				}
+				else {
+					result.addSuccess(item.get("outbox.key"));
+				}
+			}
+		}
+		return result;
+	}
+
+	//Returns the update of an item from the outcome of its callout, and adds the outcome to `processed`.
+	private static Record update(Map<String, String> item, vSDKBulkResult result, ZonedDateTime now, vSDKBulkResult processed) {
+
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		String id = item.get("outbox.id");
+		String key = item.get("outbox.key");
+		int attempts = Integer.parseInt(item.get("outbox.attempts"));
+		Record r = recordService.newRecordWithId(OBJECT_NAME, id);
+		r.setValue("lease_until__c", null);
+
+		if (result.isSucceeded(key)) {
+			r.setValue("status__c", DONE);
+			r.setValue("last_error__c", null);
+			processed.addSuccess(id);
+		}
+		else if (result.getSkipped().containsKey(key)) {
+			r.setValue("next_attempt__c", now.plusSeconds(RETRY_DELAY_SECONDS));
+			r.setValue("last_error__c", result.getSkipped().get(key));
+			processed.addSkipped(id, result.getSkipped().get(key));
+		}
+		else {
+			String error = result.getFailed().containsKey(key) ? result.getFailed().get(key) : "No result returned for item.";
+			attempts++;
+			r.setValue("attempt_count__c", BigDecimal.valueOf(attempts));
+			r.setValue("last_error__c", error.length() > 1500 ? error.substring(0, 1500) : error);
+
+			if (attempts >= MAX_ATTEMPTS) {
+				r.setValue("status__c", DEAD);
+				processed.addFailure(id, error);
+			}
+			else {
+				r.setValue("next_attempt__c", now.plusSeconds(RETRY_DELAY_SECONDS << (attempts - 1)));
+				processed.addSkipped(id, "Retry " + attempts + " scheduled: " + error);
+			}
+		}
+		return r;
+	}
+
+	//Writes the payload as "key=value" lines. Backslashes and line breaks in values are escaped.
+	static String encode(Map<String, String> payload) {
+		StringBuilder encoded = new StringBuilder();
+		for (String key : payload.keySet()) {
+			String value = payload.get(key) == null ? "" : payload.get(key);
+			encoded.append(key).append("=")
+				.append(value.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r"))
+				.append("\n");
+		}
+		return encoded.toString();
+	}
+
+	static Map<String, String> decode(String encoded) {
+		Map<String, String> payload = VaultCollections.newMap();
+		if (encoded == null) {
+			return payload;
+		}
+		for (String line : encoded.split("\n")) {
+			int split = line.indexOf('=');
+			if (split < 0) {
+				continue;
+			}
+			StringBuilder value = new StringBuilder();
+			for (int i = split + 1; i < line.length(); i++) {
+				char c = line.charAt(i);
+				if (c == '\\' && i + 1 < line.length()) {
+					char next = line.charAt(++i);
+					value.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+				}
+				else {
+					value.append(c);
+				}
+			}
+			payload.put(line.substring(0, split), value.toString());
+		}
+		return payload;
+	}
+
+	//Returns the outbox of the current request, creating it on first use.
+	private static vSDKCalloutOutbox current() {
+		vSDKCalloutOutbox outbox = RequestContext.get().getValue(CONTEXT_NAME, vSDKCalloutOutbox.class);
+		if (outbox == null) {
+			outbox = new vSDKCalloutOutbox();
+			RequestContext.get().setValue(CONTEXT_NAME, outbox);
+		}
+		return outbox;
+	}
+}
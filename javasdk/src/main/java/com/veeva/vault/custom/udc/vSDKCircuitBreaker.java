@@ -0,0 +1,345 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+import com.veeva.vault.sdk.api.query.QueryService;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/******************************************************************************
+ * User-Defined Class:  CircuitBreaker
+ *-----------------------------------------------------------------------------
+ * Description: Stops sending callouts to a connection that is failing, so
+ *              user actions fail fast instead of waiting for each timeout.
+ *
+ *              The state of each connection is kept in a
+ *              'vsdk_circuit_breaker__c' record named after the connection,
+ *              so it is shared by every request and user:
+ *                 - closed: calls are sent. Failures and slow calls are
+ *                   counted over WINDOW_SECONDS. Once at least MIN_CALLS
+ *                   were made and FAILURE_RATE_PERCENT of them failed, the
+ *                   breaker opens.
+ *                 - open: calls are rejected until OPEN_SECONDS have passed.
+ *                 - half_open: the first request after that sends one probe
+ *                   call. Other requests are still rejected. A successful
+ *                   probe closes the breaker, a failed probe opens it again.
+ *
+ *              State changes (open, close and the probe claim) are saved
+ *              right away and are the only saves that write state__c and
+ *              open_until__c. `flush` adds the calls of the request to the
+ *              counts of a fresh read at the end of the request and writes
+ *              only the counts, so it never undoes a state change made by
+ *              another request meanwhile. Saves are part of the request's
+ *              transaction, so a request that rolls back does not record its
+ *              calls.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKCircuitBreaker implements RequestContextValue {
+
+	static final String CONTEXT_NAME = "vsdk_circuit_breaker";
+	static final String OBJECT_NAME = "vsdk_circuit_breaker__c";
+	static final String CLOSED = "closed";
+	static final String OPEN = "open";
+	static final String HALF_OPEN = "half_open";
+	// Set to false to always send callouts
+	static final boolean ENABLED = true;
+	// The breaker opens when at least MIN_CALLS calls in WINDOW_SECONDS were made and FAILURE_RATE_PERCENT of them failed
+	static final int MIN_CALLS = 5;
+	static final int FAILURE_RATE_PERCENT = 50;
+	static final long WINDOW_SECONDS = 300;
+	// Calls slower than this count as failures
+	static final long SLOW_CALL_MILLIS = 10000;
+	// Time an open breaker rejects calls before a probe is sent, and the time a probe has to complete
+	static final long OPEN_SECONDS = 60;
+
+	private final Map<String, Record> stateByConnection = VaultCollections.newMap();
+	private final Map<String, String> recordIds = VaultCollections.newMap();
+	private final Set<String> probes = VaultCollections.newSet();
+	// Calls and failures of this request that `flush` has not added to the saved counts yet
+	private final Map<String, Integer> pendingCalls = VaultCollections.newMap();
+	private final Map<String, Integer> pendingFailures = VaultCollections.newMap();
+
+	/**
+	 * Checks whether a call may be sent to the connection. When an open breaker is due
+	 * for a probe, this request claims the probe and the call is allowed.
+	 *
+	 * @param connection to call
+	 * @return false if the call must not be sent
+	 */
+
+	public static boolean allowRequest(String connection) {
+
+		if (!ENABLED) {
+			return true;
+		}
+		vSDKCircuitBreaker breaker = current();
+		Record state = breaker.getState(connection);
+		String status = state.getValue("state__c", ValueType.STRING);
+
+		if (status == null || CLOSED.equals(status) || breaker.probes.contains(connection)) {
+			return true;
+		}
+
+		ZonedDateTime openUntil = state.getValue("open_until__c", ValueType.DATETIME);
+		if (openUntil != null && ZonedDateTime.now().isBefore(openUntil)) {
+			return false;
+		}
+
+		//Claim the probe. Until it completes or OPEN_SECONDS pass, other requests are still rejected.
+		breaker.probes.add(connection);
+		breaker.transition(connection, HALF_OPEN, ZonedDateTime.now().plusSeconds(OPEN_SECONDS), false);
+		return true;
+	}
+
+	/**
+	 * @param connection to check
+	 * @return true if calls to the connection are currently rejected
+	 */
+
+	public static boolean isOpen(String connection) {
+
+		if (!ENABLED) {
+			return false;
+		}
+		vSDKCircuitBreaker breaker = current();
+		Record state = breaker.getState(connection);
+		ZonedDateTime openUntil = state.getValue("open_until__c", ValueType.DATETIME);
+
+		String status = state.getValue("state__c", ValueType.STRING);
+
+		return status != null && !CLOSED.equals(status) && !breaker.probes.contains(connection)
+				&& openUntil != null && ZonedDateTime.now().isBefore(openUntil);
+	}
+
+	/**
+	 * Records the outcome of a call sent to the connection.
+	 *
+	 * @param connection that was called
+	 * @param latencyMillis of the call
+	 * @param failed whether the connection failed to answer, such as a 5xx status or no response
+	 */
+
+	public static void record(String connection, long latencyMillis, boolean failed) {
+
+		if (!ENABLED) {
+			return;
+		}
+		vSDKCircuitBreaker breaker = current();
+		Record state = breaker.getState(connection);
+		boolean failure = failed || latencyMillis >= SLOW_CALL_MILLIS;
+		ZonedDateTime now = ZonedDateTime.now();
+
+		if (breaker.probes.remove(connection)) {
+			if (failure) {
+				breaker.transition(connection, OPEN, now.plusSeconds(OPEN_SECONDS), false);
+			}
+			else {
+				breaker.transition(connection, CLOSED, null, true);
+				ServiceLocator.locate(LogService.class).info("Circuit breaker for {} closed.", connection);
+			}
+			return;
+		}
+
+		breaker.pendingCalls.merge(connection, 1, Integer::sum);
+		breaker.pendingFailures.merge(connection, failure ? 1 : 0, Integer::sum);
+
+		//The counts read at the start of the request plus this request's calls decide within the request.
+		//`flush` decides again against the counts of every request.
+		ZonedDateTime windowStart = state.getValue("window_start__c", ValueType.DATETIME);
+		boolean windowOpen = windowStart != null && !windowStart.plusSeconds(WINDOW_SECONDS).isBefore(now);
+		int calls = (windowOpen ? count(state, "call_count__c") : 0) + breaker.pendingCalls.get(connection);
+		int failures = (windowOpen ? count(state, "failure_count__c") : 0) + breaker.pendingFailures.get(connection);
+
+		if (shouldOpen(calls, failures)) {
+			ServiceLocator.locate(LogService.class).warn("Circuit breaker for {} opened: {} of {} calls failed.", connection, failures, calls);
+			breaker.pendingCalls.remove(connection);
+			breaker.pendingFailures.remove(connection);
+			breaker.transition(connection, OPEN, now.plusSeconds(OPEN_SECONDS), false);
+		}
+	}
+
+	/**
+	 * Adds the call counts of the current request to the saved counts with one query and one batch save.
+	 * Only the counts are written, against a fresh read, so the state set by other requests is kept.
+	 * Call this once at the end of an entry point that makes callouts.
+	 */
+
+	public static void flush() {
+
+		vSDKCircuitBreaker breaker = current();
+		if (breaker.pendingCalls.isEmpty()) {
+			return;
+		}
+		List<String> connections = VaultCollections.newList();
+		connections.addAll(breaker.pendingCalls.keySet());
+
+		QueryService queryService = ServiceLocator.locate(QueryService.class);
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		StringBuilder names = new StringBuilder();
+		for (String connection : connections) {
+			if (names.length() > 0) {
+				names.append(",");
+			}
+			names.append("'").append(queryService.escape(connection)).append("'");
+		}
+
+		Map<String, Record> fresh = VaultCollections.newMap();
+		vSDKServiceBudget.count(vSDKServiceBudget.QUERY, "vSDKCircuitBreaker.flush");
+		queryService.query("select id, name__v, state__c, window_start__c, call_count__c, failure_count__c from " + OBJECT_NAME
+				+ " where name__v contains (" + names + ")").streamResults().forEach(qr -> {
+			String connection = qr.getValue("name__v", ValueType.STRING);
+			Record state = recordService.newRecordWithId(OBJECT_NAME, qr.getValue("id", ValueType.STRING));
+			state.setValue("state__c", qr.getValue("state__c", ValueType.STRING));
+			state.setValue("window_start__c", qr.getValue("window_start__c", ValueType.DATETIME));
+			state.setValue("call_count__c", qr.getValue("call_count__c", ValueType.NUMBER));
+			state.setValue("failure_count__c", qr.getValue("failure_count__c", ValueType.NUMBER));
+			breaker.recordIds.put(connection, qr.getValue("id", ValueType.STRING));
+			fresh.put(connection, state);
+		});
+
+		ZonedDateTime now = ZonedDateTime.now();
+		List<Record> recordList = VaultCollections.newList();
+		for (String connection : connections) {
+			Record state = fresh.get(connection);
+			Record r = breaker.newStateRecord(connection);
+			ZonedDateTime windowStart = state == null ? null : state.getValue("window_start__c", ValueType.DATETIME);
+			boolean windowOpen = windowStart != null && !windowStart.plusSeconds(WINDOW_SECONDS).isBefore(now);
+
+			int calls = (windowOpen ? count(state, "call_count__c") : 0) + breaker.pendingCalls.get(connection);
+			int failures = (windowOpen ? count(state, "failure_count__c") : 0) + breaker.pendingFailures.get(connection);
+			r.setValue("window_start__c", windowOpen ? windowStart : now);
+			r.setValue("call_count__c", BigDecimal.valueOf(calls));
+			r.setValue("failure_count__c", BigDecimal.valueOf(failures));
+
+			//Calls of several requests together can reach the failure rate. Opening is a transition, so it writes the state.
+			String status = state == null ? null : state.getValue("state__c", ValueType.STRING);
+			if ((status == null || CLOSED.equals(status)) && shouldOpen(calls, failures)) {
+				ServiceLocator.locate(LogService.class).warn("Circuit breaker for {} opened: {} of {} calls failed.", connection, failures, calls);
+				r.setValue("state__c", OPEN);
+				r.setValue("open_until__c", now.plusSeconds(OPEN_SECONDS));
+			}
+			recordList.add(r);
+		}
+		breaker.pendingCalls.clear();
+		breaker.pendingFailures.clear();
+		breaker.saveRecords(connections, recordList);
+	}
+
+	private static boolean shouldOpen(int calls, int failures) {
+		return calls >= MIN_CALLS && failures * 100 >= calls * FAILURE_RATE_PERCENT;
+	}
+
+	private static int count(Record state, String field) {
+		BigDecimal value = state.getValue(field, ValueType.NUMBER);
+		return value == null ? 0 : value.intValue();
+	}
+
+	//Saves a change of state right away. Only the state fields are written, and closing also starts a new window.
+	private void transition(String connection, String status, ZonedDateTime openUntil, boolean resetWindow) {
+
+		Record state = getState(connection);
+		state.setValue("state__c", status);
+		state.setValue("open_until__c", openUntil);
+
+		Record r = newStateRecord(connection);
+		r.setValue("state__c", status);
+		r.setValue("open_until__c", openUntil);
+		if (resetWindow) {
+			state.setValue("window_start__c", ZonedDateTime.now());
+			state.setValue("call_count__c", BigDecimal.ZERO);
+			state.setValue("failure_count__c", BigDecimal.ZERO);
+			r.setValue("window_start__c", state.getValue("window_start__c", ValueType.DATETIME));
+			r.setValue("call_count__c", BigDecimal.ZERO);
+			r.setValue("failure_count__c", BigDecimal.ZERO);
+		}
+		saveRecords(VaultCollections.asList(connection), VaultCollections.asList(r));
+	}
+
+	//Returns a record to update the saved state of the connection, or to create it on first use.
+	private Record newStateRecord(String connection) {
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		if (recordIds.containsKey(connection)) {
+			return recordService.newRecordWithId(OBJECT_NAME, recordIds.get(connection));
+		}
+		Record r = recordService.newRecord(OBJECT_NAME);
+		r.setValue("name__v", connection);
+		return r;
+	}
+
+	//The breaker must never fail the user's action, so errors are logged and not rolled back.
+	private void saveRecords(List<String> connections, List<Record> recordList) {
+
+		if (recordList.isEmpty()) {
+			return;
+		}
+		vSDKServiceBudget.count(vSDKServiceBudget.RECORD_SAVE, "vSDKCircuitBreaker.saveRecords");
+		ServiceLocator.locate(RecordService.class).batchSaveRecords(recordList)
+			.onSuccesses(successes -> successes.forEach(success -> {
+				recordIds.put(connections.get(success.getInputPosition()), success.getRecordId());
+			}))
+			.onErrors(batchOperationErrors -> {
+				ServiceLocator.locate(LogService.class).warn("Unable to save {} circuit breaker states: {}", batchOperationErrors.size(),
+						batchOperationErrors.get(0).getError().getMessage());
+			})
+			.execute();
+	}
+
+	//Returns the state of the connection, reading it from the vault once per request.
+	//The state is held in an unsaved record. Saves only write the fields they change.
+	private Record getState(String connection) {
+
+		Record state = stateByConnection.get(connection);
+		if (state != null) {
+			return state;
+		}
+
+		QueryService queryService = ServiceLocator.locate(QueryService.class);
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		String query = "select id, state__c, open_until__c, window_start__c, call_count__c, failure_count__c from " + OBJECT_NAME
+					+ " where name__v = '" + queryService.escape(connection) + "'";
+
+		Record loaded = recordService.newRecord(OBJECT_NAME);
+		vSDKServiceBudget.count(vSDKServiceBudget.QUERY, "vSDKCircuitBreaker.getState");
+		queryService.query(query).streamResults().findFirst().ifPresent(qr -> {
+			recordIds.put(connection, qr.getValue("id", ValueType.STRING));
+			loaded.setValue("state__c", qr.getValue("state__c", ValueType.STRING));
+			loaded.setValue("open_until__c", qr.getValue("open_until__c", ValueType.DATETIME));
+			loaded.setValue("window_start__c", qr.getValue("window_start__c", ValueType.DATETIME));
+			loaded.setValue("call_count__c", qr.getValue("call_count__c", ValueType.NUMBER));
+			loaded.setValue("failure_count__c", qr.getValue("failure_count__c", ValueType.NUMBER));
+		});
+
+		stateByConnection.put(connection, loaded);
+		return loaded;
+	}
+
+	//Returns the breaker of the current request, creating it on first use.
+	private static vSDKCircuitBreaker current() {
+		vSDKCircuitBreaker breaker = RequestContext.get().getValue(CONTEXT_NAME, vSDKCircuitBreaker.class);
+		if (breaker == null) {
+			breaker = new vSDKCircuitBreaker();
+			RequestContext.get().setValue(CONTEXT_NAME, breaker);
+		}
+		return breaker;
+	}
+}
@@ -0,0 +1,218 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+import com.veeva.vault.sdk.api.query.QueryService;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/******************************************************************************
+ * User-Defined Class:  CopyCounter
+ *-----------------------------------------------------------------------------
+ * Description: Reserves "Copy of" numbers from a counter stored on the
+ *              original 'vsdk_service_basics__c' record (copy_count__c).
+ *
+ *              Each reservation uses a pessimistic row lock:
+ *                 - Write a token to copy_count_lock__c. Saving the record
+ *                   takes its row lock, which is held until the transaction
+ *                   ends, so concurrent inserts for the same original wait
+ *                   here instead of reading the same counter.
+ *                 - Read the counter, which no other transaction can change
+ *                   while the lock is held.
+ *                 - Write the advanced counter.
+ *              A record that cannot be locked or saved rolls back the
+ *              insert with the save error of the record, such as a lock
+ *              conflict or a validation error. Retrying in the same transaction would hit the same
+ *              error, so there is no retry.
+ *
+ *              A reservation costs the same number of reads and writes no
+ *              matter how many copies exist. Counters that are still empty
+ *              are seeded once from the existing "Copy of" records.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKCopyCounter {
+
+	static final String OBJECT_NAME = "vsdk_service_basics__c";
+	public static final String COUNTER_FIELD = "copy_count__c";
+	static final String LOCK_FIELD = "copy_count_lock__c";
+	static final int ID_CHUNK_SIZE = 250;
+
+	/**
+	 * Reserves a block of copy numbers for each original record.
+	 *
+	 * @param copiesById number of copy numbers to reserve, keyed by original record ID
+	 * @return the last copy number in use before the reserved block, keyed by original record ID.
+	 *         The reserved numbers for an ID are (value + 1) through (value + requested count).
+	 */
+
+	public static Map<String, Integer> reserve(Map<String, Integer> copiesById) {
+
+		Map<String, Integer> reserved = VaultCollections.newMap();
+		Set<String> pending = VaultCollections.newSet();
+		pending.addAll(copiesById.keySet());
+		if (pending.isEmpty()) {
+			return reserved;
+		}
+
+		String token = RequestContext.get().getCurrentUserId() + ":" + Instant.now().toString();
+		Map<String, String> errors = VaultCollections.newMap();
+		Set<String> locked = saveLockToken(pending, token, errors);
+		Map<String, Integer> current = readCounters(locked);
+		Map<String, Integer> advanced = VaultCollections.newMap();
+
+		for (String id : current.keySet()) {
+			advanced.put(id, current.get(id) + copiesById.get(id));
+		}
+
+		for (String id : saveCounters(advanced, errors)) {
+			reserved.put(id, current.get(id));
+			pending.remove(id);
+		}
+
+		if (!pending.isEmpty()) {
+			StringBuilder failures = new StringBuilder();
+			for (String id : pending) {
+				if (failures.length() > 0) {
+					failures.append(", ");
+				}
+				failures.append(id).append(" ('").append(errors.getOrDefault(id, "record not found")).append("')");
+			}
+			throw new RollbackException("OPERATION_NOT_ALLOWED", "Unable to reserve a copy number for '" + OBJECT_NAME + "' records: " + failures);
+		}
+		return reserved;
+	}
+
+	//Saves the lock token on each record and returns the IDs that were saved.
+	private static Set<String> saveLockToken(Set<String> ids, String token, Map<String, String> errors) {
+
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		List<Record> recordList = VaultCollections.newList();
+
+		for (String id : ids) {
+			Record r = recordService.newRecordWithId(OBJECT_NAME, id);
+			r.setValue(LOCK_FIELD, token);
+			recordList.add(r);
+		}
+		return saveAndCollect(recordService, recordList, errors);
+	}
+
+	//Saves the new counter values and returns the IDs that were saved.
+	private static Set<String> saveCounters(Map<String, Integer> countersById, Map<String, String> errors) {
+
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		List<Record> recordList = VaultCollections.newList();
+
+		for (String id : countersById.keySet()) {
+			Record r = recordService.newRecordWithId(OBJECT_NAME, id);
+			r.setValue(COUNTER_FIELD, BigDecimal.valueOf(countersById.get(id)));
+			recordList.add(r);
+		}
+		return saveAndCollect(recordService, recordList, errors);
+	}
+
+	//Failed records are left out of the result, and the first error message of each is added to `errors`
+	//for `reserve` to report. Nothing is rolled back here.
+	private static Set<String> saveAndCollect(RecordService recordService, List<Record> recordList, Map<String, String> errors) {
+
+		Set<String> saved = VaultCollections.newSet();
+		if (recordList.isEmpty()) {
+			return saved;
+		}
+
+		vSDKServiceBudget.count(vSDKServiceBudget.RECORD_SAVE, "vSDKCopyCounter.saveAndCollect");
+		recordService.batchSaveRecords(recordList)
+			.onSuccesses(successes -> successes.forEach(success -> {
+				saved.add(recordList.get(success.getInputPosition()).getValue("id", ValueType.STRING));
+			}))
+			.onErrors(batchOperationErrors -> batchOperationErrors.forEach(error -> {
+				String id = recordList.get(error.getInputPosition()).getValue("id", ValueType.STRING);
+				errors.putIfAbsent(id, error.getError().getMessage());
+			}))
+			.execute();
+		return saved;
+	}
+
+	//Reads the counter of every locked record. Empty counters are seeded from the number
+	//of existing "Copy of" records, which is only needed once per original record.
+	private static Map<String, Integer> readCounters(Set<String> ids) {
+
+		QueryService queryService = ServiceLocator.locate(QueryService.class);
+		Map<String, Integer> counters = VaultCollections.newMap();
+		List<String> unseeded = VaultCollections.newList();
+
+		for (String idList : toIdLists(ids)) {
+			String query = "select id, " + COUNTER_FIELD + " from " + OBJECT_NAME
+						+ " where id contains (" + idList + ")";
+
+			vSDKServiceBudget.count(vSDKServiceBudget.QUERY, "vSDKCopyCounter.readCounters");
+			queryService.query(query).streamResults().forEach(qr -> {
+				String id = qr.getValue("id", ValueType.STRING);
+				BigDecimal count = qr.getValue(COUNTER_FIELD, ValueType.NUMBER);
+
+				if (count == null) {
+					unseeded.add(id);
+				}
+				else {
+					counters.put(id, count.intValue());
+				}
+			});
+		}
+
+		for (String idList : toIdLists(unseeded)) {
+			String query = "select id, "
+						+ "(select id from vsdk_service_basics__cr where name__v like 'Copy of: %') "
+						+ "from " + OBJECT_NAME + " where id contains (" + idList + ")";
+
+			vSDKServiceBudget.count(vSDKServiceBudget.QUERY, "vSDKCopyCounter.readCounters");
+			queryService.query(query).streamResults().forEach(qr -> {
+				counters.put(qr.getValue("id", ValueType.STRING),
+						(int) qr.getSubqueryResponse("vsdk_service_basics__cr").getResultCount());
+			});
+		}
+		return counters;
+	}
+
+	//Formats the IDs as quoted "contains" lists of at most ID_CHUNK_SIZE entries.
+	private static List<String> toIdLists(Iterable<String> ids) {
+
+		List<String> idLists = VaultCollections.newList();
+		StringBuilder idList = new StringBuilder();
+		int count = 0;
+
+		for (String id : ids) {
+			if (count > 0) {
+				idList.append(",");
+			}
+			idList.append("'").append(id).append("'");
+			count++;
+			if (count == ID_CHUNK_SIZE) {
+				idLists.add(idList.toString());
+				idList.setLength(0);
+				count = 0;
+			}
+		}
+		if (count > 0) {
+			idLists.add(idList.toString());
+		}
+		return idLists;
+	}
+}
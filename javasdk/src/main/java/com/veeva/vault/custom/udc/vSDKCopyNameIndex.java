@@ -0,0 +1,143 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.query.QueryService;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/******************************************************************************
+ * User-Defined Class:  CopyNameIndex
+ *-----------------------------------------------------------------------------
+ * Description: Provides an in-memory index of existing 'vsdk_service_basics__c'
+ *              records keyed by name__v. Each entry holds the ID of the
+ *              original record and the last "Copy of" number in use.
+ *
+ *              The index is loaded for a whole trigger batch with a few
+ *              chunked "name__v contains (...)" queries. Copy numbers are
+ *              reserved in blocks through vSDKCopyCounter and handed out
+ *              in order, so duplicates inside the same batch are numbered
+ *              as well, including duplicates of a name that is new in the
+ *              batch.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKCopyNameIndex {
+
+	private final Map<String, String> idByName = VaultCollections.newMap();
+	private final Map<String, Integer> copyCountByName = VaultCollections.newMap();
+
+	/**
+	 * Loads the index for every name in the input collection.
+	 * Names are resolved with one query per chunk of `chunkSize` names.
+	 *
+	 * @param names of the records being inserted
+	 * @param chunkSize maximum number of names per "contains" clause
+	 * @return the loaded index
+	 */
+
+	public static vSDKCopyNameIndex load(Collection<String> names, int chunkSize) {
+
+		QueryService queryService = ServiceLocator.locate(QueryService.class);
+		vSDKCopyNameIndex index = new vSDKCopyNameIndex();
+		List<String> chunk = VaultCollections.newList();
+
+		for (String name : names) {
+			chunk.add(name);
+			if (chunk.size() == chunkSize) {
+				index.loadChunk(queryService, chunk);
+				chunk.clear();
+			}
+		}
+		if (chunk.size() > 0) {
+			index.loadChunk(queryService, chunk);
+		}
+		return index;
+	}
+
+	private void loadChunk(QueryService queryService, List<String> names) {
+
+		StringBuilder nameList = new StringBuilder();
+		for (String name : names) {
+			if (nameList.length() > 0) {
+				nameList.append(",");
+			}
+			nameList.append("'").append(queryService.escape(name)).append("'");
+		}
+
+		String query = "select id, name__v from vsdk_service_basics__c where name__v contains (" + nameList + ")";
+
+		vSDKServiceBudget.count(vSDKServiceBudget.QUERY, "vSDKCopyNameIndex.load");
+		queryService.query(query).streamResults().forEach(qr -> {
+			String name = qr.getValue("name__v", ValueType.STRING);
+
+			//If several records share the same name, the first one returned is treated as the original.
+			if (!idByName.containsKey(name)) {
+				idByName.put(name, qr.getValue("id", ValueType.STRING));
+			}
+		});
+	}
+
+	public boolean contains(String name) {
+		return idByName.containsKey(name);
+	}
+
+	public String getId(String name) {
+		return idByName.get(name);
+	}
+
+	/**
+	 * Reserves copy numbers for the names. Indexed names reserve from the counters stored
+	 * on the original records. Names without an existing record are first inserted in this
+	 * batch, so their copies are numbered from 1 and the caller stores the count on the new
+	 * original record. Must be called before `nextCopyNumber`.
+	 *
+	 * @param copiesByName number of copies needed, keyed by name
+	 */
+
+	public void reserve(Map<String, Integer> copiesByName) {
+
+		Map<String, Integer> copiesById = VaultCollections.newMap();
+		for (String name : copiesByName.keySet()) {
+			if (contains(name)) {
+				copiesById.put(idByName.get(name), copiesByName.get(name));
+			}
+			else {
+				copyCountByName.put(name, 0);
+			}
+		}
+
+		Map<String, Integer> reserved = vSDKCopyCounter.reserve(copiesById);
+		for (String name : copiesByName.keySet()) {
+			if (contains(name)) {
+				copyCountByName.put(name, reserved.get(idByName.get(name)));
+			}
+		}
+	}
+
+	/**
+	 * Returns the next reserved "Copy of" number for the name,
+	 * so the following call for the same name returns the number after it.
+	 *
+	 * @param name of an indexed record
+	 * @return the copy number to use
+	 */
+
+	public int nextCopyNumber(String name) {
+		int next = copyCountByName.get(name) + 1;
+		copyCountByName.put(name, next);
+		return next;
+	}
+}
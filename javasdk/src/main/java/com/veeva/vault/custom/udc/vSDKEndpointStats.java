@@ -0,0 +1,137 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.util.List;
+import java.util.Map;
+
+/******************************************************************************
+ * User-Defined Class:  EndpointStats
+ *-----------------------------------------------------------------------------
+ * Description: Aggregates the callouts made to one connection and path
+ *              template during a request: latency, status code counts,
+ *              response size and error count.
+ *
+ *              Latencies are also counted in fixed buckets. Unlike the
+ *              percentiles, bucket counts of several requests can be
+ *              added up.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKEndpointStats {
+
+	// Upper bounds of the latency buckets in milliseconds. One more bucket holds the slower calls.
+	public static final long[] LATENCY_BUCKET_BOUNDS_MS = {100, 250, 500, 1000, 2500, 5000};
+
+	private final String connection;
+	private final String pathTemplate;
+	private final List<Long> latencies = VaultCollections.newList();
+	private final Map<Integer, Integer> statusCounts = VaultCollections.newMap();
+	private long responseBytes = 0;
+	private int errorCount = 0;
+
+	public vSDKEndpointStats(String connection, String pathTemplate) {
+		this.connection = connection;
+		this.pathTemplate = pathTemplate;
+	}
+
+	/**
+	 * @param latencyMillis of the callout
+	 * @param statusCode returned, or 0 when there was no response
+	 * @param bytes of the response body, or a negative value when unknown
+	 * @param error whether the callout failed
+	 */
+
+	public void record(long latencyMillis, int statusCode, long bytes, boolean error) {
+		latencies.add(latencyMillis);
+		statusCounts.put(statusCode, statusCounts.getOrDefault(statusCode, 0) + 1);
+		if (bytes > 0) {
+			responseBytes += bytes;
+		}
+		if (error) {
+			errorCount++;
+		}
+	}
+
+	public String getConnection() {
+		return connection;
+	}
+
+	public String getPathTemplate() {
+		return pathTemplate;
+	}
+
+	public int getCallCount() {
+		return latencies.size();
+	}
+
+	public int getErrorCount() {
+		return errorCount;
+	}
+
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+
+	public long getTotalLatency() {
+		long total = 0;
+		for (long latency : latencies) {
+			total += latency;
+		}
+		return total;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the latency at the percentile (nearest rank), or 0 when there were no calls
+	 */
+
+	public long getLatencyPercentile(int percentile) {
+		if (latencies.isEmpty()) {
+			return 0;
+		}
+		List<Long> sorted = VaultCollections.newList();
+		sorted.addAll(latencies);
+		sorted.sort(null);
+		int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+		return sorted.get(Math.max(0, rank - 1));
+	}
+
+	/**
+	 * @param bucket index into LATENCY_BUCKET_BOUNDS_MS, or its length for the calls slower than the last bound
+	 * @return the number of calls slower than the previous bound and at most as slow as the bound of the bucket
+	 */
+
+	public int getLatencyBucketCount(int bucket) {
+		long lower = bucket == 0 ? -1 : LATENCY_BUCKET_BOUNDS_MS[bucket - 1];
+		long upper = bucket < LATENCY_BUCKET_BOUNDS_MS.length ? LATENCY_BUCKET_BOUNDS_MS[bucket] : Long.MAX_VALUE;
+		int count = 0;
+		for (long latency : latencies) {
+			if (latency > lower && latency <= upper) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	//Formats the status code counts as "200:12,429:1".
+	public String getStatusCounts() {
+		StringBuilder counts = new StringBuilder();
+		for (Integer statusCode : statusCounts.keySet()) {
+			if (counts.length() > 0) {
+				counts.append(",");
+			}
+			counts.append(statusCode).append(":").append(statusCounts.get(statusCode));
+		}
+		return counts.toString();
+	}
+}
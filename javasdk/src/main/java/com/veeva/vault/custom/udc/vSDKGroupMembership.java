@@ -0,0 +1,71 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.group.GetGroupsResponse;
+import com.veeva.vault.sdk.api.group.Group;
+import com.veeva.vault.sdk.api.group.GroupService;
+
+/******************************************************************************
+ * User-Defined Class:  GroupMembership
+ *-----------------------------------------------------------------------------
+ * Description: Provides memoized group membership checks for action
+ *              visibility (isExecutable).
+ *
+ *              Vault evaluates isExecutable once per rendered document, so
+ *              the result of the GroupService lookup is cached for the
+ *              request. When USER_CACHE_TTL_SECONDS is greater than zero the
+ *              result is also kept per user across requests through
+ *              vSDKCalloutCache.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKGroupMembership {
+
+	// Lifetime of a cached membership across requests, or 0 to only cache it for the request
+	static final long USER_CACHE_TTL_SECONDS = 0;
+
+	/**
+	 * @param groupName of the group, such as vault_owners__v
+	 * @return true if the current user is in the group
+	 */
+
+	public static boolean isCurrentUserInGroup(String groupName) {
+		return isUserInGroup(RequestContext.get().getCurrentUserId(), groupName);
+	}
+
+	/**
+	 * @param userId of the user to check
+	 * @param groupName of the group, such as vault_owners__v
+	 * @return true if the user is in the group
+	 */
+
+	public static boolean isUserInGroup(String userId, String groupName) {
+
+		String cacheKey = "group_member:" + userId + ":" + groupName;
+		String cached = vSDKCalloutCache.get(cacheKey, USER_CACHE_TTL_SECONDS > 0);
+		if (cached != null) {
+			return Boolean.parseBoolean(cached);
+		}
+
+		GroupService groupService = ServiceLocator.locate(GroupService.class);
+		vSDKServiceBudget.count(vSDKServiceBudget.GROUP, "vSDKGroupMembership.isUserInGroup");
+		GetGroupsResponse groupsResponse = groupService.getGroupsByNames(VaultCollections.asList(groupName));
+		Group group = groupsResponse.getGroupByName(groupName);
+
+		vSDKServiceBudget.count(vSDKServiceBudget.GROUP, "vSDKGroupMembership.isUserInGroup");
+		boolean isUserInGroup = group != null && groupService.isUserInGroup(userId, group);
+		vSDKCalloutCache.put(cacheKey, String.valueOf(isUserInGroup), USER_CACHE_TTL_SECONDS);
+		return isUserInGroup;
+	}
+}
@@ -1,435 +1,1219 @@
-package com.veeva.vault.custom.udc;
-
-import com.veeva.vault.sdk.api.core.LogService;
-import com.veeva.vault.sdk.api.core.RollbackException;
-import com.veeva.vault.sdk.api.core.ServiceLocator;
-import com.veeva.vault.sdk.api.core.StringUtils;
-import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
-import com.veeva.vault.sdk.api.core.VaultCollections;
-import com.veeva.vault.sdk.api.data.Record;
-import com.veeva.vault.sdk.api.document.DocumentService;
-import com.veeva.vault.sdk.api.document.DocumentVersion;
-import com.veeva.vault.sdk.api.http.HttpMethod;
-import com.veeva.vault.sdk.api.http.HttpRequest;
-import com.veeva.vault.sdk.api.http.HttpResponseBodyValueType;
-import com.veeva.vault.sdk.api.http.HttpService;
-import com.veeva.vault.sdk.api.json.JsonArray;
-import com.veeva.vault.sdk.api.json.JsonData;
-import com.veeva.vault.sdk.api.json.JsonObject;
-import com.veeva.vault.sdk.api.json.JsonValueType;
-
-import java.time.LocalDate;
-import java.util.List;
-import java.util.Map;
-
-/******************************************************************************                                                     
- * User-Defined Class:  HttpCallouts
- * Author:              Kevin Nee @ Veeva
- * Date:                2019-03-19
- *-----------------------------------------------------------------------------
- * Description: Provides a reusable UDC with HTTP Callouts for Vault to Vault,
- *              local, and external use cases.
- * 
- *-----------------------------------------------------------------------------
- * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
- *      This code is based on pre-existing content developed and
- *      owned by Veeva Systems Inc. and may only be used in connection
- *      with the deliverable with which it was provided to Customer.
- *--------------------------------------------------------------------
- *
- *******************************************************************************/
-
-@UserDefinedClassInfo()
-public class vSDKHttpCallouts {
-	
-	/**
-	 * Runs against a local API connection to initiate a document workflow
-	 * The workflow is initiated for the "userId" which is the owner of the document.
-	 * See https://developer.veevavault.com/api/19.1/#initiate-user-action for details.
-	 * 
-	 * @param versionId of the document
-	 * @param userId of the document owner
-	 * @param params for API input
-	 * @param action starts the document workflow
-    */
-
-    public static void localStartDocWorkflow(String versionId, String userId, Map<String,String> params, String action) {
-	   
-    	LogService logService = ServiceLocator.locate(LogService.class);
-    	HttpService httpService = ServiceLocator.locate(HttpService.class);
-    	
-    	String[] version_id = StringUtils.split(versionId, "_");
-	   
-      	//A `newLocalHttpRequest` is an Http Callout against the same vault (local) using the user that initiated the SDK code.
-    	//The user must have access to the action being performed or the Vault API will return an access error.
-		HttpRequest request = httpService.newLocalHttpRequest()
-                .setMethod(HttpMethod.PUT)
-                .appendPath("/api/v19.1/objects/documents/" + version_id[0] + "/versions/" + version_id[1] + "/" + version_id[2] + "/lifecycle_actions/" + action)
-                .setBodyParam("Approver", "user:" + userId);	
-
-		for (String key : params.keySet()) {
-			request.setBodyParam(key,params.get(key));
-		}
-	
-        httpService.send(request, HttpResponseBodyValueType.JSONDATA)
-            .onSuccess(httpResponse -> {
-                int responseCode = httpResponse.getHttpStatusCode();
-                logService.info("RESPONSE: " + responseCode);
-                logService.info("RESPONSE: " + httpResponse.getResponseBody());
-                
-				JsonData response = httpResponse.getResponseBody();
-				
-				//This API call just initiates a workflow. Log success or errors messages depending on the results of the call.
-				if (response.isValidJson()) {
-					String responseStatus = response.getJsonObject().getValue("responseStatus", JsonValueType.STRING);
-					
-					if (responseStatus.equals("SUCCESS")) {
-						logService.info("Starting HTTP  Workflow for document - " + String.join("_", version_id));
-					}
-					else {
-						logService.info("Failed to start HTTP Workflow for document - {} ", String.join("_", version_id));
-						if (response.getJsonObject().contains("responseMessage") == true) {
-							String responseMessage = response.getJsonObject().getValue("responseMessage", JsonValueType.STRING);
-							logService.error("ERROR: {}", responseMessage);
-		        	        throw new RollbackException("OPERATION_NOT_ALLOWED", "HttpService Error on HTTP Workflow: " + responseMessage);
-						}
-						if (response.getJsonObject().contains("errors") ==  true) {
-							JsonArray errors = response.getJsonObject().getValue("errors", JsonValueType.ARRAY);
-							String type = errors.getValue(0, JsonValueType.OBJECT).getValue("type", JsonValueType.STRING);
-							String message = errors.getValue(0, JsonValueType.OBJECT).getValue("message", JsonValueType.STRING);
-							logService.error("ERROR {}: {}", type, message);
-		        	        throw new RollbackException("OPERATION_NOT_ALLOWED", "HttpService Error on HTTP Workflow: " + message);
-						}
-					}
-				}
-            })
-            .onError(httpOperationError -> {
-                int responseCode = httpOperationError.getHttpResponse().getHttpStatusCode();
-                logService.info("RESPONSE: " + responseCode);
-                logService.info(httpOperationError.getMessage());
-                logService.info(httpOperationError.getHttpResponse().getResponseBody());
-            })
-            .execute();
-    }
-    
-	/** 
-	 * Runs against a local API connection to locate and verify the correct document workflow.
-	 * This is necessary so that the proper workflow is started when this method is used.
-	 * See https://developer.veevavault.com/api/19.1/#retrieve-user-actions for details
-	 * 
-	 * @param versionId of the document
-	 * @param userId of the document owner
-	 * @param params for API input
-     */
-    
-    public static void localGetLifecycleActions(String versionId, String userId, Map<String,String> params) {
-	   
-    	LogService logService = ServiceLocator.locate(LogService.class);
-    	HttpService httpService = ServiceLocator.locate(HttpService.class);
-    	
-    	String[] version_id = StringUtils.split(versionId, "_");
-	   
-    	
-      	//A `newLocalHttpRequest` is an Http Callout against the same vault (local) using the user that initiated the SDK code.
-    	//The user must have access to the action being performed or the Vault API will return an access error.
-		HttpRequest request = httpService.newLocalHttpRequest()
-                .setMethod(HttpMethod.GET)
-                .appendPath("/api/v19.1/objects/documents/" + version_id[0] + "/versions/" + version_id[1] + "/" + version_id[2] + "/lifecycle_actions");
-
-        httpService.send(request, HttpResponseBodyValueType.JSONDATA)
-            .onSuccess(httpResponse -> {
-                int responseCode = httpResponse.getHttpStatusCode();
-                logService.info("RESPONSE: " + responseCode);
-                logService.info("RESPONSE: " + httpResponse.getResponseBody());
-                
-				JsonData response = httpResponse.getResponseBody();
-				
-				if (response.isValidJson()) {
-					String responseStatus = response.getJsonObject().getValue("responseStatus", JsonValueType.STRING);
-					
-					if (responseStatus.equals("SUCCESS")) {
-						logService.info("Verifying Lifecycle Actions for document - " + String.join("_", version_id));
-						
-						JsonArray lifecycleActions = response.getJsonObject().getValue("lifecycle_actions__v", JsonValueType.ARRAY);
-						
-						for (int count = 0; count < lifecycleActions.getSize(); count++) {
-							JsonObject action = lifecycleActions.getValue(count, JsonValueType.OBJECT);
-							String actionLabel = action.getValue("label__v", JsonValueType.STRING);
-							
-							//If the correct action label is located, initiate `localStartDocWorkflow` to start the document workflow.
-							if (actionLabel.contains("Start HTTP Workflow")) {
-								logService.info("Located the workflow action '{}'", actionLabel);
-								String actionName = action.getValue("name__v", JsonValueType.STRING);
-								
-								vSDKHttpCallouts.localStartDocWorkflow(versionId, userId, params, actionName);
-							}
-						}
-					}
-					else {
-						logService.info("Failed to verify Lifecycle Actions for document - {} ", String.join("_", version_id));
-						if (response.getJsonObject().contains("responseMessage") == true) {
-							String responseMessage = response.getJsonObject().getValue("responseMessage", JsonValueType.STRING);
-							logService.error("ERROR: {}", responseMessage);
-		        	        throw new RollbackException("OPERATION_NOT_ALLOWED", "HttpService Error on HTTP Workflow: " + responseMessage);
-						}
-						if (response.getJsonObject().contains("errors") ==  true) {
-							JsonArray errors = response.getJsonObject().getValue("errors", JsonValueType.ARRAY);
-							String type = errors.getValue(0, JsonValueType.OBJECT).getValue("type", JsonValueType.STRING);
-							String message = errors.getValue(0, JsonValueType.OBJECT).getValue("message", JsonValueType.STRING);
-							logService.error("ERROR {}: {}", type, message);
-		        	        throw new RollbackException("OPERATION_NOT_ALLOWED", "HttpService Error on HTTP Workflow: " + message);
-						}
-					}
-				}
-            })
-            .onError(httpOperationError -> {
-                int responseCode = httpOperationError.getHttpResponse().getHttpStatusCode();
-                logService.info("RESPONSE: " + responseCode);
-                logService.info(httpOperationError.getMessage());
-                logService.info(httpOperationError.getHttpResponse().getResponseBody());
-            })
-            .execute();
-    }
-    
-    
-    /** 
-     * Execute an API call to an external system via the `external_http_callout` connection.
-     * This is against a free open source public API endpoint (https://reqres.in/api/unknown/2)
-     * The API should return an external ID that is populated on the document (docId).
-     * 
-     * @param docId of the affected document
-     * 
-     */
-    
-    public static void externalHttpCallout(String docId) {
-      	
-      	LogService logService = ServiceLocator.locate(LogService.class);
-      	DocumentService documentService = ServiceLocator.locate((DocumentService.class));
-  		logService.info("Entered externalHttpCallout method");
-      	
-      	//This is an external Http Request to the `external_http_callout`
-  		//Vault must have a `Connection` with the API name of `external_http_callout`
-  		//with a URL value of `https://reqres.in/api/unknown/2`.
-      	HttpService httpService = ServiceLocator.locate(HttpService.class);
-  		HttpRequest request = httpService.newHttpRequest("external_http_callout");
-  		
-		//The configured connection provides the full DNS name. 
-		request.setMethod(HttpMethod.GET);
-		request.appendPath("/api/unknown/2");
-		request.setHeader("Content-Type", "application/json");
-		
-		//Required is you want to send a user's SessionId to an external system.
-		//This is not necessary for this example.
-		//The `setResolveTokens` method resolves the ${Session.SessionId} token to the user's 
-		//in-use sesssionId.
-		request.setHeader("Authorization", "${Session.SessionId}");
-		request.setResolveTokens(true);
-
-  		logService.info("externalHttpCallout request built and ready to send.");
-  		
-  		//Send the request the external system. The response received back should be a JSON response.
-  		//First, the response is parsed into a `JsonData` object
-  		//From the response, the `getJsonObject()` will get the response as a parseable `JsonObject`
-  		//    * Here the `getValue` method can be used to retrieve `id`, `name`, and `pantone_value` returned from the external API
-  		
-  		httpService.send(request, HttpResponseBodyValueType.JSONDATA)
-  		.onSuccess(httpResponse -> {
-  			
-  			JsonData response = httpResponse.getResponseBody();
-  			
-			//On a success response from the external API, populate the `vsd_http_external_id__c` field in value with:
-			//`id`, `name`, and `pantone_value`
-  			if (response.isValidJson()) {
-  				if (httpResponse.getHttpStatusCode() == 200) {
-  					JsonObject data = response.getJsonObject().getValue("data", JsonValueType.OBJECT);
-  					
-  					String externalId = data.getValue("id",JsonValueType.NUMBER).toString() + "_"
-  									  + data.getValue("name",JsonValueType.STRING) + "_"
-  							          + data.getValue("pantone_value",JsonValueType.STRING);
-  				
-  					logService.info("External HTTP Request: SUCCESS");
-  					logService.info("External HTTP Data: " + externalId);
-  					
-  					DocumentVersion docVersion = documentService.newDocumentWithId(docId);
-  					docVersion.setValue("vsdk_http_external_id__c", externalId);
-  					documentService.saveDocumentVersions(VaultCollections.asList(docVersion));
-  				}
-  				else {
-  					logService.info("Http Callout Failed.");
-  				}
-  				response = null;
-  			}
-  			else {
-  				logService.info("externalHttpCallout error: Received a non-JSON response.");
-  			}
-  		})
-  		.onError(httpOperationError -> {
-  			logService.info(httpOperationError.getMessage());
-  			logService.info(httpOperationError.getHttpResponse().getResponseBody());
-  		}).execute();
-  		
-  		request = null;
-    }    
-
-    
-    /** 
-     * Opens a v2v connection to a target vault to create a crosslink document.
-     * 
-     * **** NOTE ****
-     * If your vault has additional required fields, they will need to be set with `setBodyParam`
-     * 
-     * @param parameters for the API body
-     * @param connection that vault is executing the API call against
-     */
-
-    public static void v2vCreateCrosslink(Map<String, String> parameters, String connection) {
-	   
-    	LogService logService = ServiceLocator.locate(LogService.class);
-    	HttpService httpService = ServiceLocator.locate(HttpService.class);
-	   
-		String docId = parameters.get("docId");
-		String docName = parameters.get("docName");
-		String type = parameters.get("type");
-		String lifecycle =  parameters.get("lifecycle");
-		String vaultId =  parameters.get("vaultId");
-		
-		logService.info("Creating Crosslink for document {} : {} Vault to Vault connection {}", docId, docName, connection);
-	   
-		//Initiate an HTTP Callout against the provided Vault to Vault connection. This record must exist and be active in both vaults.
-		//The various required detailed are then set from the provided input data.
-		HttpRequest request = httpService.newHttpRequest(connection)
-                .setMethod(HttpMethod.POST)
-                .appendPath("/api/v19.1/objects/documents")
-                .setBodyParam("source_document_id__v",docId)
-                .setBodyParam("source_vault_id__v", vaultId)
-                .setBodyParam("source_binding_rule__v", "Latest version")
-                .setBodyParam("name__v",docName)
-                .setBodyParam("type__v",type)
-                .setBodyParam("lifecycle__v", lifecycle);
-
-        httpService.send(request, HttpResponseBodyValueType.JSONDATA)
-            .onSuccess(httpResponse -> {
-                int responseCode = httpResponse.getHttpStatusCode();
-                logService.info("RESPONSE: " + responseCode);
-                logService.info("RESPONSE: " + httpResponse.getResponseBody());
-                
-                JsonData response = httpResponse.getResponseBody();
-                
-                if (response.isValidJson()) {
-                    String responseStatus = response.getJsonObject().getValue("responseStatus", JsonValueType.STRING);
-    				
-    				if (responseStatus.equals("SUCCESS")) {
-    					logService.info("Successfully created CrossLink for Document ID {}", docId);
-    				}
-					else {
-						logService.info("Failed to create CrossLink for Document ID {}", docId);
-						if (response.getJsonObject().contains("responseMessage") == true) {
-							String responseMessage = response.getJsonObject().getValue("responseMessage", JsonValueType.STRING);
-							logService.error("FAILURE: {}", responseMessage);
-		        	        throw new RollbackException("OPERATION_NOT_ALLOWED", "Failed to create CrossLink: " + responseMessage);
-						}
-						if (response.getJsonObject().contains("errors") ==  true) {
-							JsonArray errors = response.getJsonObject().getValue("errors", JsonValueType.ARRAY);
-							String errorType = errors.getValue(0, JsonValueType.OBJECT).getValue("type", JsonValueType.STRING);
-							String message = errors.getValue(0, JsonValueType.OBJECT).getValue("message", JsonValueType.STRING);
-							logService.error("FAILURE {}: {}", errorType, message);
-		        	        throw new RollbackException("OPERATION_NOT_ALLOWED", "Create Errors: " + message);
-						}
-					}
-                }
-            })
-            .onError(httpOperationError -> {
-                int responseCode = httpOperationError.getHttpResponse().getHttpStatusCode();
-                logService.info("RESPONSE: " + responseCode);
-                logService.info(httpOperationError.getMessage());
-                logService.info(httpOperationError.getHttpResponse().getResponseBody());
-                throw new RollbackException("OPERATION_NOT_ALLOWED", "HttpService Error on Create CrossLink: " + httpOperationError.getMessage());
-            })
-            .execute();
-    }
-    
-    
-    //Retrieve the source vault ID from the target's Connection record.
-    //The Vault to Vault Connection record contain detail for each other remote vault information.
-    //This step isn't strictly necessary, but the Create Document API endpoint requires the source vault ID.
-    public static void v2vHttpQuery(Map<String, String> parameters, String connection, String remoteConnectionId) {
-    	
-    	LogService logService = ServiceLocator.locate(LogService.class);
-    	
-    	//This is a vault to vault Http Request to the input connection
-    	HttpService httpService = ServiceLocator.locate(HttpService.class);
-		HttpRequest request = httpService.newHttpRequest(connection);
-
-		//The configured connection provides the full DNS name. 
-		//For the path, you only need to append the API endpoint after the DNS.
-		//The query endpoint takes a POST where the BODY is the query itself.
-		request.setMethod(HttpMethod.POST);
-		request.appendPath("/api/v19.1/query");
-		request.setHeader("Content-Type", "application/x-www-form-urlencoded");
-		String query = "select remote_vault_id__sys from connection__sys where id contains ('" + remoteConnectionId + "')";
-		request.setBodyParam("q", query);
-		
-		//Send the request the target vault. The response received back should be a JSON response.
-		//First, the response is parsed into a `JsonData` object
-		//From the response, the `getJsonObject()` will get the response as a parseable `JsonObject`
-		//    * Here the `getValue` method can be used to retrieve `responseStatus`, `responseDetails`, and `data`
-		//The `data` element is an array of JSON data. This is parsed into a `JsonArray` object.
-		//    * Each queried record is returned as an element of the array and must be parsed into a `JsonObject`. 
-		//    * Individual fields can then be retrieved from each `JsonObject` that is in the `JsonArray`.
-		
-		httpService.send(request, HttpResponseBodyValueType.JSONDATA)
-		.onSuccess(httpResponse -> {
-			
-			JsonData response = httpResponse.getResponseBody();
-			
-			if (response.isValidJson()) {
-				String responseStatus = response.getJsonObject().getValue("responseStatus", JsonValueType.STRING);
-				
-				if (responseStatus.equals("SUCCESS")) {
-					JsonArray data = response.getJsonObject().getValue("data", JsonValueType.ARRAY);
-					
-					logService.info("HTTP Query Request: SUCCESS");
-					
-					//Retrieve each record returned from the VQL query.
-					//Each element of the returned `data` JsonArray is a record with it's queried fields.
-					String sourceVaultId = null;
-					for (int i = 0; i < data.getSize();i++) {
-						JsonObject queryRecord = data.getValue(i, JsonValueType.OBJECT);
-						
-						sourceVaultId = queryRecord.getValue("remote_vault_id__sys", JsonValueType.STRING);
-					}
-					
-					logService.info("HTTP Query Request: Connection located for source vault {}", sourceVaultId);
-					parameters.put("vaultId", sourceVaultId);
-					vSDKHttpCallouts.v2vCreateCrosslink(parameters, connection);
-				}
-				else {
-					logService.info("Failed to Query Remote Vault Connection {}", connection);
-					if (response.getJsonObject().contains("responseMessage") == true) {
-						String responseMessage = response.getJsonObject().getValue("responseMessage", JsonValueType.STRING);
-						logService.error("ERROR: {}", responseMessage);
-	        	        throw new RollbackException("OPERATION_NOT_ALLOWED", "Failed to query remote vault: " + responseMessage);
-					}
-					if (response.getJsonObject().contains("errors") ==  true) {
-						JsonArray errors = response.getJsonObject().getValue("errors", JsonValueType.ARRAY);
-						String errorType = errors.getValue(0, JsonValueType.OBJECT).getValue("type", JsonValueType.STRING);
-						String message = errors.getValue(0, JsonValueType.OBJECT).getValue("message", JsonValueType.STRING);
-						logService.error("ERROR {}: {}", errorType, message);
-	        	        throw new RollbackException("OPERATION_NOT_ALLOWED", "Query Errors: " + message);
-					}
-				}
-			}
-			else {
-				logService.info("v2vHttpUpdate error: Received a non-JSON response.");
-			}
-		})
-		.onError(httpOperationError -> {
-			  int responseCode = httpOperationError.getHttpResponse().getHttpStatusCode();
-              logService.info("RESPONSE: " + responseCode);
-              logService.info(httpOperationError.getMessage());
-              logService.info(httpOperationError.getHttpResponse().getResponseBody());
-              throw new RollbackException("OPERATION_NOT_ALLOWED", "HttpService Error Vault to Vault Query: " + httpOperationError.getMessage());
-		}).execute();
-    }
-    
-}
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.StringUtils;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.document.DocumentService;
+import com.veeva.vault.sdk.api.document.DocumentVersion;
+import com.veeva.vault.sdk.api.http.HttpMethod;
+import com.veeva.vault.sdk.api.http.HttpRequest;
+import com.veeva.vault.sdk.api.http.HttpService;
+import com.veeva.vault.sdk.api.json.JsonArray;
+import com.veeva.vault.sdk.api.json.JsonData;
+import com.veeva.vault.sdk.api.json.JsonObject;
+import com.veeva.vault.sdk.api.json.JsonValueType;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/******************************************************************************                                                     
+ * User-Defined Class:  HttpCallouts
+ * Author:              Kevin Nee @ Veeva
+ * Date:                2019-03-19
+ *-----------------------------------------------------------------------------
+ * Description: Provides a reusable UDC with HTTP Callouts for Vault to Vault,
+ *              local, and external use cases.
+ * 
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKHttpCallouts {
+	
+	// Maximum number of documents in a single bulk user action request
+	public static final int BULK_ACTION_CHUNK_SIZE = 500;
+	// Maximum number of rows in a single Create Multiple Documents request
+	public static final int BULK_CREATE_CHUNK_SIZE = 500;
+	// Lifetime of cached remote vault IDs. The remote vault of a connection almost never changes.
+	static final long REMOTE_VAULT_ID_TTL_SECONDS = 86400;
+	// Reason recorded for documents that were not sent because the connection is throttled
+	static final String RATE_LIMITED = "Deferred: API rate limit reached";
+	// Reason recorded for documents that were not sent because the circuit breaker of the connection is open
+	static final String CONNECTION_UNAVAILABLE = "Deferred: connection unavailable";
+	// Reason recorded for documents that were not sent because the work budget of the request is nearly used
+	static final String WORK_BUDGET_REACHED = "Deferred: request work budget reached";
+	// Connection and resource used by the external callout
+	static final String EXTERNAL_CONNECTION = "external_http_callout";
+	static final String EXTERNAL_RESOURCE_ID = "2";
+	// Resources per page of the external list endpoint
+	static final int EXTERNAL_PAGE_SIZE = 100;
+	// Maximum number of documents in a single saveDocumentVersions call
+	public static final int EXTERNAL_SAVE_CHUNK_SIZE = 500;
+	
+	/**
+	 * Runs against a local API connection to initiate a document workflow
+	 * The workflow is initiated for the "userId" which is the owner of the document.
+	 * See https://developer.veevavault.com/api/19.1/#initiate-user-action for details.
+	 * 
+	 * @param versionId of the document
+	 * @param userId of the document owner
+	 * @param params for API input
+	 * @param action starts the document workflow
+    */
+
+    public static void localStartDocWorkflow(String versionId, String userId, Map<String,String> params, String action) {
+	   
+    	LogService logService = ServiceLocator.locate(LogService.class);
+    	HttpService httpService = ServiceLocator.locate(HttpService.class);
+    	
+    	String[] version_id = StringUtils.split(versionId, "_");
+	   
+      	//A `newLocalHttpRequest` is an Http Callout against the same vault (local) using the user that initiated the SDK code.
+    	//The user must have access to the action being performed or the Vault API will return an access error.
+		HttpRequest request = httpService.newLocalHttpRequest()
+                .setMethod(HttpMethod.PUT)
+                .appendPath("/api/v19.1/objects/documents/" + version_id[0] + "/versions/" + version_id[1] + "/" + version_id[2] + "/lifecycle_actions/" + action)
+                .setBodyParam("Approver", "user:" + userId);	
+
+		for (String key : params.keySet()) {
+			request.setBodyParam(key,params.get(key));
+		}
+	
+        vSDKCalloutExecutor.send(vSDKCalloutExecutor.LOCAL, "PUT /api/v19.1/objects/documents/{id}/versions/{major}/{minor}/lifecycle_actions/{action}", request)
+            .onSuccess(httpResponse -> {
+                int responseCode = httpResponse.getHttpStatusCode();
+                logService.info("RESPONSE: " + responseCode);
+                vSDKCalloutLog.successBody(() -> httpResponse.getResponseBody());
+                
+				vSDKApiResponse response = vSDKApiResponse.decode(httpResponse.getResponseBody());
+				
+				//This API call just initiates a workflow. Log success or errors messages depending on the results of the call.
+				if (response.isValidJson()) {
+					if (response.isSuccess()) {
+						logService.info("Starting HTTP  Workflow for document - " + String.join("_", version_id));
+					}
+					else {
+						logService.info("Failed to start HTTP Workflow for document - {} ", String.join("_", version_id));
+						response.throwIfFailed("HttpService Error on HTTP Workflow: ");
+					}
+				}
+            })
+            .onError(httpOperationError -> {
+                int responseCode = vSDKCalloutExecutor.statusCode(httpOperationError);
+                logService.info("RESPONSE: " + responseCode);
+                logService.info(httpOperationError.getMessage());
+                vSDKCalloutLog.failureBody(() -> vSDKCalloutExecutor.responseBody(httpOperationError));
+            })
+            .execute();
+    }
+    
+	/** 
+	 * Runs against a local API connection to locate and verify the correct document workflow.
+	 * This is necessary so that the proper workflow is started when this method is used.
+	 * See https://developer.veevavault.com/api/19.1/#retrieve-user-actions for details
+	 * 
+	 * @param versionId of the document
+	 * @param userId of the document owner
+	 * @param params for API input
+     */
+    
+    public static void localGetLifecycleActions(String versionId, String userId, Map<String,String> params) {
+    	localGetLifecycleActions(versionId, userId, params, null);
+    }
+    
+	/** 
+	 * Starts the "Start HTTP Workflow" action on a document. The action name is resolved from the
+	 * document's type, lifecycle and state through vSDKLifecycleActionResolver, so the lifecycle_actions
+	 * call is only made when the action is not cached yet.
+	 * 
+	 * @param docVersion of the document
+	 * @param userId of the document owner
+	 * @param params for API input
+     */
+    
+    public static void localStartHttpWorkflow(DocumentVersion docVersion, String userId, Map<String,String> params) {
+    	
+    	String versionId = docVersion.getValue("id", ValueType.STRING) + "_" + 
+				docVersion.getValue("major_version_number__v", ValueType.NUMBER).toString() + "_" + 
+				docVersion.getValue("minor_version_number__v", ValueType.NUMBER).toString();
+    	String cacheKey = vSDKLifecycleActionResolver.cacheKey(docVersion);
+    	Map<String,String> action = vSDKLifecycleActionResolver.getCached(cacheKey);
+    	
+    	if (action != null) {
+    		vSDKHttpCallouts.localStartDocWorkflow(versionId, userId, params, action.get("name__v"));
+    	}
+    	else {
+    		localGetLifecycleActions(versionId, userId, params, cacheKey);
+    	}
+    }
+    
+    //When cacheKey is set, the located action is cached under it for vSDKLifecycleActionResolver.
+    private static void localGetLifecycleActions(String versionId, String userId, Map<String,String> params, String cacheKey) {
+	   
+    	LogService logService = ServiceLocator.locate(LogService.class);
+    	HttpService httpService = ServiceLocator.locate(HttpService.class);
+    	
+    	String[] version_id = StringUtils.split(versionId, "_");
+	   
+    	
+      	//A `newLocalHttpRequest` is an Http Callout against the same vault (local) using the user that initiated the SDK code.
+    	//The user must have access to the action being performed or the Vault API will return an access error.
+		HttpRequest request = httpService.newLocalHttpRequest()
+                .setMethod(HttpMethod.GET)
+                .appendPath("/api/v19.1/objects/documents/" + version_id[0] + "/versions/" + version_id[1] + "/" + version_id[2] + "/lifecycle_actions");
+
+        vSDKCalloutExecutor.send(vSDKCalloutExecutor.LOCAL, "GET /api/v19.1/objects/documents/{id}/versions/{major}/{minor}/lifecycle_actions", request)
+            .onSuccess(httpResponse -> {
+                int responseCode = httpResponse.getHttpStatusCode();
+                logService.info("RESPONSE: " + responseCode);
+                vSDKCalloutLog.successBody(() -> httpResponse.getResponseBody());
+                
+				vSDKApiResponse response = vSDKApiResponse.decode(httpResponse.getResponseBody());
+				
+				if (response.isValidJson()) {
+					if (response.isSuccess()) {
+						logService.info("Verifying Lifecycle Actions for document - " + String.join("_", version_id));
+						
+						JsonArray lifecycleActions = response.getBody().getValue("lifecycle_actions__v", JsonValueType.ARRAY);
+						
+						for (int count = 0; count < lifecycleActions.getSize(); count++) {
+							JsonObject action = lifecycleActions.getValue(count, JsonValueType.OBJECT);
+							String actionLabel = action.getValue("label__v", JsonValueType.STRING);
+							
+							//If the correct action label is located, initiate `localStartDocWorkflow` to start the document workflow.
+							//Stop at the first match so the workflow is only started once.
+							if (actionLabel.contains(vSDKLifecycleActionResolver.ACTION_LABEL)) {
+								logService.info("Located the workflow action '{}'", actionLabel);
+								String actionName = action.getValue("name__v", JsonValueType.STRING);
+								
+								if (cacheKey != null) {
+									Map<String,String> located = VaultCollections.newMap();
+									located.put("name__v", actionName);
+									located.put("lifecycle__v", action.getValue("lifecycle__v", JsonValueType.STRING));
+									located.put("state__v", action.getValue("state__v", JsonValueType.STRING));
+									vSDKLifecycleActionResolver.cache(cacheKey, located);
+								}
+								
+								vSDKHttpCallouts.localStartDocWorkflow(versionId, userId, params, actionName);
+								break;
+							}
+						}
+					}
+					else {
+						logService.info("Failed to verify Lifecycle Actions for document - {} ", String.join("_", version_id));
+						response.throwIfFailed("HttpService Error on HTTP Workflow: ");
+					}
+				}
+            })
+            .onError(httpOperationError -> {
+                int responseCode = vSDKCalloutExecutor.statusCode(httpOperationError);
+                logService.info("RESPONSE: " + responseCode);
+                logService.info(httpOperationError.getMessage());
+                vSDKCalloutLog.failureBody(() -> vSDKCalloutExecutor.responseBody(httpOperationError));
+            })
+            .execute();
+    }
+    
+    
+    /** 
+     * Runs against a local API connection to initiate the "Start HTTP Workflow" action on many documents.
+     * Documents are grouped by type, lifecycle and state. For each chunk of a group, the action is taken
+     * from vSDKLifecycleActionResolver when cached, or located with one call that retrieves the user actions
+     * of every document in the chunk. One call then initiates the action on every document of the chunk.
+     * See https://developer.veevavault.com/api/19.1/#retrieve-user-actions-on-multiple-documents and
+     * https://developer.veevavault.com/api/19.1/#initiate-bulk-document-user-actions for details.
+     * 
+     * Failures are reported per document and do not roll back the documents that succeeded.
+     * 
+     * @param docVersions of the documents
+     * @param userId of the document owner
+     * @param params for API input
+     * @return the outcome of every document, keyed by versionId (id_major_minor)
+     */
+    
+    public static vSDKBulkResult localStartDocWorkflowBulk(List<DocumentVersion> docVersions, String userId, Map<String,String> params) {
+    	
+    	Map<String, List<String>> versionIdsByCacheKey = VaultCollections.newMap();
+    	
+    	for (DocumentVersion docVersion : docVersions) {
+    		String versionId = docVersion.getValue("id", ValueType.STRING) + "_" + 
+    				docVersion.getValue("major_version_number__v", ValueType.NUMBER).toString() + "_" + 
+    				docVersion.getValue("minor_version_number__v", ValueType.NUMBER).toString();
+    		versionIdsByCacheKey.computeIfAbsent(vSDKLifecycleActionResolver.cacheKey(docVersion), key -> VaultCollections.newList()).add(versionId);
+    	}
+    	return localStartDocWorkflowBulk(versionIdsByCacheKey, userId, params);
+    }
+    
+    /**
+     * Initiates the "Start HTTP Workflow" user action on documents that are already grouped by 
+     * vSDKLifecycleActionResolver cache key, such as documents read back from vSDKCalloutOutbox.
+     * 
+     * @param versionIdsByCacheKey versionIds (id_major_minor), keyed by `vSDKLifecycleActionResolver.cacheKey`
+     * @param userId of the document owner
+     * @param params for API input
+     * @return the outcome of every document, keyed by versionId (id_major_minor)
+     */
+    
+    public static vSDKBulkResult localStartDocWorkflowBulk(Map<String, List<String>> versionIdsByCacheKey, String userId, Map<String,String> params) {
+    	
+    	vSDKBulkResult result = new vSDKBulkResult();
+    	
+    	for (String cacheKey : versionIdsByCacheKey.keySet()) {
+    		List<String> versionIds = versionIdsByCacheKey.get(cacheKey);
+    		
+	    	for (int start = 0; start < versionIds.size(); start += BULK_ACTION_CHUNK_SIZE) {
+	    		List<String> chunk = versionIds.subList(start, Math.min(start + BULK_ACTION_CHUNK_SIZE, versionIds.size()));
+	    		
+	    		//Once the API limits or the work budget of the request are close, the remaining documents are left for a later run.
+	    		if (vSDKWorkBudget.isNearLimit()) {
+	    			chunk.forEach(versionId -> result.addSkipped(versionId, WORK_BUDGET_REACHED));
+	    			continue;
+	    		}
+	    		if (vSDKRateLimiter.isThrottled(vSDKCalloutExecutor.LOCAL)) {
+	    			chunk.forEach(versionId -> result.addSkipped(versionId, RATE_LIMITED));
+	    			continue;
+	    		}
+	    		
+	    		//The bulk endpoints take the documents as a comma separated list of id:major:minor.
+	    		Map<String,String> versionIdByDocId = VaultCollections.newMap();
+	    		StringBuilder docIds = new StringBuilder();
+	    		for (String versionId : chunk) {
+	    			String[] version_id = StringUtils.split(versionId, "_");
+	    			versionIdByDocId.put(version_id[0], versionId);
+	    			if (docIds.length() > 0) {
+	    				docIds.append(",");
+	    			}
+	    			docIds.append(String.join(":", version_id));
+	    		}
+	    		
+	    		//All documents of the group share the same user actions, so only the first match is needed.
+	    		Map<String,String> action = vSDKLifecycleActionResolver.getCached(cacheKey);
+	    		if (action == null) {
+	    			List<Map<String,String>> actions = localGetBulkLifecycleActions(docIds.toString(), result, chunk);
+	    			if (actions.isEmpty()) {
+	    				for (String versionId : chunk) {
+	    					if (!result.getFailed().containsKey(versionId)) {
+	    						result.addFailure(versionId, "No '" + vSDKLifecycleActionResolver.ACTION_LABEL + "' action is available.");
+	    					}
+	    				}
+	    				continue;
+	    			}
+	    			action = actions.get(0);
+	    			vSDKLifecycleActionResolver.cache(cacheKey, action);
+	    		}
+	    		
+	    		localStartBulkDocWorkflow(docIds.toString(), versionIdByDocId, userId, params, action, result);
+	    		
+	    		//Documents without a returned result are reported as failed.
+	    		for (String versionId : chunk) {
+	    			if (!result.isSucceeded(versionId) && !result.getFailed().containsKey(versionId)) {
+	    				result.addFailure(versionId, "No result returned for document.");
+	    			}
+	    		}
+	    		vSDKWorkBudget.countRecords(chunk.size());
+	    	}
+    	}
+    	return result;
+    }
+    
+    //Retrieves the user actions for a chunk of documents and returns the "Start HTTP Workflow" actions 
+    //with their lifecycle and state. If the call fails, every document in the chunk is marked as failed.
+    private static List<Map<String,String>> localGetBulkLifecycleActions(String docIds, vSDKBulkResult result, List<String> chunk) {
+    	
+    	LogService logService = ServiceLocator.locate(LogService.class);
+    	HttpService httpService = ServiceLocator.locate(HttpService.class);
+    	List<Map<String,String>> actions = VaultCollections.newList();
+    	
+		HttpRequest request = httpService.newLocalHttpRequest()
+                .setMethod(HttpMethod.POST)
+                .appendPath("/api/v19.1/objects/documents/lifecycle_actions")
+                .setHeader("Content-Type", "application/x-www-form-urlencoded")
+                .setBodyParam("docIds", docIds);
+		
+        vSDKCalloutExecutor.send(vSDKCalloutExecutor.LOCAL, "POST /api/v19.1/objects/documents/lifecycle_actions", request)
+            .onSuccess(httpResponse -> {
+                logService.info("RESPONSE: " + httpResponse.getHttpStatusCode());
+                
+				vSDKApiResponse response = vSDKApiResponse.decode(httpResponse.getResponseBody());
+				
+				if (response.isValidJson()) {
+					if (response.isSuccess()) {
+						JsonArray lifecycleActions = response.getBody().getValue("lifecycle_actions__v", JsonValueType.ARRAY);
+						
+						for (int count = 0; count < lifecycleActions.getSize(); count++) {
+							JsonObject action = lifecycleActions.getValue(count, JsonValueType.OBJECT);
+							String actionLabel = action.getValue("label__v", JsonValueType.STRING);
+							
+							if (actionLabel.contains(vSDKLifecycleActionResolver.ACTION_LABEL)) {
+								logService.info("Located the workflow action '{}'", actionLabel);
+								Map<String,String> located = VaultCollections.newMap();
+								located.put("name__v", action.getValue("name__v", JsonValueType.STRING));
+								located.put("lifecycle__v", action.getValue("lifecycle__v", JsonValueType.STRING));
+								located.put("state__v", action.getValue("state__v", JsonValueType.STRING));
+								actions.add(located);
+							}
+						}
+					}
+					else {
+						String message = response.getErrorMessage();
+						logService.error("Failed to verify Lifecycle Actions for {} documents: {}", chunk.size(), message);
+						for (String versionId : chunk) {
+							result.addFailure(versionId, "Failed to verify Lifecycle Actions: " + message);
+						}
+					}
+				}
+            })
+            .onError(httpOperationError -> {
+                logService.info("RESPONSE: " + vSDKCalloutExecutor.statusCode(httpOperationError));
+                logService.info(httpOperationError.getMessage());
+                for (String versionId : chunk) {
+                	result.addFailure(versionId, "HttpService Error on Lifecycle Actions: " + httpOperationError.getMessage());
+                }
+            })
+            .execute();
+        
+        return actions;
+    }
+    
+    //Initiates one user action on a chunk of documents and records the per-document results.
+    private static void localStartBulkDocWorkflow(String docIds, Map<String,String> versionIdByDocId, String userId, 
+    		Map<String,String> params, Map<String,String> action, vSDKBulkResult result) {
+    	
+    	LogService logService = ServiceLocator.locate(LogService.class);
+    	HttpService httpService = ServiceLocator.locate(HttpService.class);
+    	
+		HttpRequest request = httpService.newLocalHttpRequest()
+                .setMethod(HttpMethod.PUT)
+                .appendPath("/api/v19.1/objects/documents/lifecycle_actions/" + action.get("name__v"))
+                .setHeader("Content-Type", "application/x-www-form-urlencoded")
+                .setBodyParam("docIds", docIds)
+                .setBodyParam("lifecycle", action.get("lifecycle__v"))
+                .setBodyParam("state", action.get("state__v"))
+                .setBodyParam("Approver", "user:" + userId);
+		
+		for (String key : params.keySet()) {
+			request.setBodyParam(key,params.get(key));
+		}
+		
+        vSDKCalloutExecutor.send(vSDKCalloutExecutor.LOCAL, "PUT /api/v19.1/objects/documents/lifecycle_actions/{action}", request)
+            .onSuccess(httpResponse -> {
+                logService.info("RESPONSE: " + httpResponse.getHttpStatusCode());
+                
+				vSDKApiResponse response = vSDKApiResponse.decode(httpResponse.getResponseBody());
+				JsonArray data = response.getDataArray();
+				
+				if (data != null) {
+					
+					//Each element of `data` is the result for one document of the request.
+					for (int i = 0; i < data.getSize(); i++) {
+						JsonObject docResult = data.getValue(i, JsonValueType.OBJECT);
+						String versionId = versionIdByDocId.get(docResult.getValue("id", JsonValueType.NUMBER).toString());
+						vSDKApiResponse rowResult = vSDKApiResponse.decodeRow(docResult);
+						
+						if (versionId == null) {
+							continue;
+						}
+						if (rowResult.isSuccess()) {
+							logService.info("Starting HTTP  Workflow for document - " + versionId);
+							result.addSuccess(versionId);
+						}
+						else {
+							result.addFailure(versionId, "HttpService Error on HTTP Workflow: " + rowResult.getErrorMessage());
+						}
+					}
+				}
+				else if (response.isValidJson()) {
+					logService.error("Failed to start HTTP Workflow with action {}: {}", action.get("name__v"), response.getErrorMessage());
+				}
+            })
+            .onError(httpOperationError -> {
+                logService.info("RESPONSE: " + vSDKCalloutExecutor.statusCode(httpOperationError));
+                logService.info(httpOperationError.getMessage());
+            })
+            .execute();
+    }
+    
+    /** 
+     * Execute an API call to an external system via the `external_http_callout` connection.
+     * This is against a free open source public API endpoint (https://reqres.in/api/unknown/2)
+     * The API should return an external ID that is populated on the document (docId).
+     * 
+     * @param docId of the affected document
+     * 
+     */
+    
+    public static void externalHttpCallout(String docId) {
+      	
+      	LogService logService = ServiceLocator.locate(LogService.class);
+      	DocumentService documentService = ServiceLocator.locate((DocumentService.class));
+  		logService.info("Entered externalHttpCallout method");
+  		
+  		String externalId = externalGetResource(EXTERNAL_RESOURCE_ID);
+  		
+		//Populate the `vsdk_http_external_id__c` field with the external ID.
+  		if (externalId != null) {
+  			DocumentVersion docVersion = documentService.newDocumentWithId(docId);
+  			docVersion.setValue("vsdk_http_external_id__c", externalId);
+  			vSDKServiceBudget.count(vSDKServiceBudget.DOCUMENT_SAVE, "vSDKHttpCallouts.externalHttpCallout");
+  			documentService.saveDocumentVersions(VaultCollections.asList(docVersion));
+  		}
+    }
+    
+    /** 
+     * Retrieves a resource from the `external_http_callout` connection and returns its external ID: 
+     * `id`, `name`, and `pantone_value` joined with "_".
+     * 
+     * The external ID is cached by vSDKResponseCache. A fresh entry is returned without a callout.
+     * An expired entry is revalidated with its ETag, so an unchanged resource is not downloaded again.
+     * 
+     * @param resourceId of the resource, such as "2"
+     * @return the external ID, or null when the callout failed
+     */
+    
+    public static String externalGetResource(String resourceId) {
+      	
+      	LogService logService = ServiceLocator.locate(LogService.class);
+      	String path = "/api/unknown/" + resourceId;
+      	
+      	vSDKResponseCache cached = vSDKResponseCache.lookup(EXTERNAL_CONNECTION, "GET", path);
+      	if (cached != null && cached.isFresh()) {
+      		logService.info("External HTTP Data (cached): " + cached.getValue());
+      		return cached.getValue();
+      	}
+      	
+      	//This is an external Http Request to the `external_http_callout`
+  		//Vault must have a `Connection` with the API name of `external_http_callout`
+  		//with a URL value of `https://reqres.in/api/unknown/2`.
+      	HttpService httpService = ServiceLocator.locate(HttpService.class);
+  		HttpRequest request = httpService.newHttpRequest(EXTERNAL_CONNECTION);
+  		
+		//The configured connection provides the full DNS name. 
+		request.setMethod(HttpMethod.GET);
+		request.appendPath(path);
+		request.setHeader("Content-Type", "application/json");
+		
+		//Required is you want to send a user's SessionId to an external system.
+		//This is not necessary for this example.
+		//The `setResolveTokens` method resolves the ${Session.SessionId} token to the user's 
+		//in-use sesssionId.
+		request.setHeader("Authorization", "${Session.SessionId}");
+		request.setResolveTokens(true);
+		
+		//An expired entry is revalidated. The server answers 304 Not Modified if the resource has not changed.
+		if (cached != null && cached.getETag() != null) {
+			request.setHeader("If-None-Match", cached.getETag());
+		}
+
+  		logService.info("externalHttpCallout request built and ready to send.");
+  		
+  		//Send the request the external system. The response received back should be a JSON response.
+  		//First, the response is parsed into a `JsonData` object
+  		//From the response, the `getJsonObject()` will get the response as a parseable `JsonObject`
+  		//    * Here the `getValue` method can be used to retrieve `id`, `name`, and `pantone_value` returned from the external API
+  		String[] externalId = new String[1];
+  		
+  		vSDKCalloutExecutor.send(EXTERNAL_CONNECTION, "GET /api/unknown/{id}", request)
+  		.onRejected(() -> logService.info("externalHttpCallout skipped: the external_http_callout connection is unavailable."))
+  		.onSuccess(httpResponse -> {
+  			
+  			if (httpResponse.getHttpStatusCode() == 304 && cached != null) {
+  				cached.revalidate(httpResponse);
+  				externalId[0] = cached.getValue();
+  				logService.info("External HTTP Data (not modified): " + externalId[0]);
+  				return;
+  			}
+  			
+  			JsonData response = httpResponse.getResponseBody();
+  			
+  			if (response.isValidJson()) {
+  				if (httpResponse.getHttpStatusCode() == 200) {
+  					JsonObject data = response.getJsonObject().getValue("data", JsonValueType.OBJECT);
+  					
+  					externalId[0] = data.getValue("id",JsonValueType.NUMBER).toString() + "_"
+  								  + data.getValue("name",JsonValueType.STRING) + "_"
+  							      + data.getValue("pantone_value",JsonValueType.STRING);
+  				
+  					logService.info("External HTTP Request: SUCCESS");
+  					logService.info("External HTTP Data: " + externalId[0]);
+  					
+  					vSDKResponseCache.store(EXTERNAL_CONNECTION, "GET", path, httpResponse, externalId[0]);
+  				}
+  				else {
+  					logService.info("Http Callout Failed.");
+  				}
+  				response = null;
+  			}
+  			else {
+  				logService.info("externalHttpCallout error: Received a non-JSON response.");
+  			}
+  		})
+  		.onError(httpOperationError -> {
+  			
+  			//Some connections report a 304 response as an error.
+  			if (cached != null && vSDKCalloutExecutor.statusCode(httpOperationError) == 304) {
+  				cached.revalidate(httpOperationError.getHttpResponse());
+  				externalId[0] = cached.getValue();
+  				return;
+  			}
+  			logService.info(httpOperationError.getMessage());
+  			vSDKCalloutLog.failureBody(() -> vSDKCalloutExecutor.responseBody(httpOperationError));
+  		}).execute();
+  		
+  		request = null;
+  		return externalId[0];
+    }    
+
+    
+    /** 
+     * Populates `vsdk_http_external_id__c` on many documents. The external data is retrieved 
+     * once per resource through `externalGetResources`, joined to the documents in memory, 
+     * and saved with one `saveDocumentVersions` call per chunk of EXTERNAL_SAVE_CHUNK_SIZE documents.
+     * 
+     * @param docIds of the affected documents
+     * @return the outcome of every document, keyed by docId
+     */
+    
+    public static vSDKBulkResult externalHttpCalloutBulk(List<String> docIds) {
+    	
+    	LogService logService = ServiceLocator.locate(LogService.class);
+    	DocumentService documentService = ServiceLocator.locate((DocumentService.class));
+    	vSDKBulkResult result = new vSDKBulkResult();
+    	
+    	//Every document is enriched from the same resource in this example.
+    	Map<String, String> resourceIdByDocId = VaultCollections.newMap();
+    	for (String docId : docIds) {
+    		resourceIdByDocId.put(docId, EXTERNAL_RESOURCE_ID);
+    	}
+    	Map<String, String> externalIds = externalGetResources(resourceIdByDocId.values());
+    	
+    	List<DocumentVersion> docVersions = VaultCollections.newList();
+    	for (String docId : resourceIdByDocId.keySet()) {
+    		String externalId = externalIds.get(resourceIdByDocId.get(docId));
+    		if (externalId == null) {
+    			result.addFailure(docId, "No external data returned for resource " + resourceIdByDocId.get(docId) + ".");
+    			continue;
+    		}
+    		DocumentVersion docVersion = documentService.newDocumentWithId(docId);
+    		docVersion.setValue("vsdk_http_external_id__c", externalId);
+    		docVersions.add(docVersion);
+    	}
+    	
+    	for (int start = 0; start < docVersions.size(); start += EXTERNAL_SAVE_CHUNK_SIZE) {
+    		List<DocumentVersion> chunk = docVersions.subList(start, Math.min(start + EXTERNAL_SAVE_CHUNK_SIZE, docVersions.size()));
+    		
+    		//Once the work budget of the request is close, the remaining documents are left for a later run.
+    		if (vSDKWorkBudget.isNearLimit()) {
+    			chunk.forEach(docVersion -> result.addSkipped(docVersion.getValue("id", ValueType.STRING), WORK_BUDGET_REACHED));
+    			continue;
+    		}
+    		vSDKServiceBudget.count(vSDKServiceBudget.DOCUMENT_SAVE, "vSDKHttpCallouts.externalHttpCalloutBulk");
+    		documentService.saveDocumentVersions(chunk);
+    		chunk.forEach(docVersion -> result.addSuccess(docVersion.getValue("id", ValueType.STRING)));
+    		vSDKWorkBudget.countRecords(chunk.size());
+    	}
+    	
+    	logService.info("External HTTP enrichment: {}", result.getSummary());
+    	return result;
+    }
+    
+    /** 
+     * Retrieves several resources from the `external_http_callout` connection. Resources with a fresh 
+     * cache entry cost no callout. A single missing resource is retrieved with `externalGetResource`. 
+     * Several missing resources are read from the paginated list endpoint (/api/unknown?page=N).
+     * 
+     * @param resourceIds of the resources. Duplicates are retrieved once.
+     * @return the external ID of each resource found, keyed by resourceId
+     */
+    
+    public static Map<String, String> externalGetResources(Collection<String> resourceIds) {
+    	
+    	Map<String, String> externalIds = VaultCollections.newMap();
+    	Set<String> missing = VaultCollections.newSet();
+    	
+    	for (String resourceId : resourceIds) {
+    		if (externalIds.containsKey(resourceId) || missing.contains(resourceId)) {
+    			continue;
+    		}
+    		vSDKResponseCache cached = vSDKResponseCache.lookup(EXTERNAL_CONNECTION, "GET", "/api/unknown/" + resourceId);
+    		if (cached != null && cached.isFresh()) {
+    			externalIds.put(resourceId, cached.getValue());
+    		}
+    		else {
+    			missing.add(resourceId);
+    		}
+    	}
+    	
+    	if (missing.size() == 1) {
+    		String resourceId = missing.iterator().next();
+    		String externalId = externalGetResource(resourceId);
+    		if (externalId != null) {
+    			externalIds.put(resourceId, externalId);
+    		}
+    	}
+    	else if (missing.size() > 1) {
+    		externalListResources(missing, externalIds);
+    	}
+    	return externalIds;
+    }
+    
+    //Reads pages of the list endpoint until every missing resource is found or there are no more pages.
+    //Each resource found is cached like a response of the single resource endpoint.
+    private static void externalListResources(Set<String> missing, Map<String, String> externalIds) {
+    	
+    	LogService logService = ServiceLocator.locate(LogService.class);
+    	HttpService httpService = ServiceLocator.locate(HttpService.class);
+    	int[] totalPages = {1};
+    	
+    	for (int page = 1; page <= totalPages[0] && !missing.isEmpty(); page++) {
+    		HttpRequest request = httpService.newHttpRequest(EXTERNAL_CONNECTION)
+    				.setMethod(HttpMethod.GET)
+    				.appendPath("/api/unknown")
+    				.setQuerystringParam("page", String.valueOf(page))
+    				.setQuerystringParam("per_page", String.valueOf(EXTERNAL_PAGE_SIZE))
+    				.setHeader("Content-Type", "application/json")
+    				.setHeader("Authorization", "${Session.SessionId}")
+    				.setResolveTokens(true);
+    		
+    		boolean[] received = {false};
+    		
+    		vSDKCalloutExecutor.send(EXTERNAL_CONNECTION, "GET /api/unknown", request)
+    		.onRejected(() -> logService.info("externalListResources skipped: the external_http_callout connection is unavailable."))
+    		.onSuccess(httpResponse -> {
+    			
+    			JsonData response = httpResponse.getResponseBody();
+    			if (!response.isValidJson() || httpResponse.getHttpStatusCode() != 200) {
+    				logService.info("externalListResources error: Received an unexpected response.");
+    				return;
+    			}
+    			received[0] = true;
+    			
+    			JsonObject body = response.getJsonObject();
+    			if (body.contains("total_pages")) {
+    				totalPages[0] = ((Number) body.getValue("total_pages", JsonValueType.NUMBER)).intValue();
+    			}
+    			
+    			JsonArray data = body.getValue("data", JsonValueType.ARRAY);
+    			Map<String, String> valuesByPath = VaultCollections.newMap();
+    			for (int i = 0; i < data.getSize(); i++) {
+    				JsonObject resource = data.getValue(i, JsonValueType.OBJECT);
+    				String resourceId = resource.getValue("id", JsonValueType.NUMBER).toString();
+    				
+    				if (missing.remove(resourceId)) {
+    					String externalId = resourceId + "_"
+    							+ resource.getValue("name", JsonValueType.STRING) + "_"
+    							+ resource.getValue("pantone_value", JsonValueType.STRING);
+    					externalIds.put(resourceId, externalId);
+    					valuesByPath.put("/api/unknown/" + resourceId, externalId);
+    				}
+    			}
+    			vSDKResponseCache.storeAll(EXTERNAL_CONNECTION, "GET", valuesByPath, httpResponse);
+    		})
+    		.onError(httpOperationError -> {
+    			logService.info(httpOperationError.getMessage());
+    			vSDKCalloutLog.failureBody(() -> vSDKCalloutExecutor.responseBody(httpOperationError));
+    		}).execute();
+    		
+    		if (!received[0]) {
+    			break;
+    		}
+    	}
+    }
+
+    
+    /** 
+     * Sets the source vault ID ("vaultId") on each document from its "remoteConnectionId", 
+     * with one (usually cached) query to the target vault.
+     * 
+     * @param connection of the target vault
+     * @param documents crosslink parameters of each document
+     */
+    
+    public static void v2vSetRemoteVaultIds(String connection, List<Map<String, String>> documents) {
+    	
+    	Set<String> remoteConnectionIds = VaultCollections.newSet();
+    	for (Map<String, String> parameters : documents) {
+    		remoteConnectionIds.add(parameters.get("remoteConnectionId"));
+    	}
+    	
+    	Map<String, String> vaultIds = v2vResolveRemoteVaultIds(connection, remoteConnectionIds);
+    	for (Map<String, String> parameters : documents) {
+    		parameters.put("vaultId", vaultIds.get(parameters.get("remoteConnectionId")));
+    	}
+    }
+    
+    /** 
+     * Opens a v2v connection to a target vault to create a crosslink document.
+     * 
+     * **** NOTE ****
+     * If your vault has additional required fields, they will need to be set with `setBodyParam`
+     * 
+     * @param parameters for the API body
+     * @param connection that vault is executing the API call against
+     */
+
+    public static void v2vCreateCrosslink(Map<String, String> parameters, String connection) {
+	   
+    	LogService logService = ServiceLocator.locate(LogService.class);
+    	HttpService httpService = ServiceLocator.locate(HttpService.class);
+	   
+		String docId = parameters.get("docId");
+		String docName = parameters.get("docName");
+		String type = parameters.get("type");
+		String lifecycle =  parameters.get("lifecycle");
+		String vaultId =  parameters.get("vaultId");
+		
+		logService.info("Creating Crosslink for document {} : {} Vault to Vault connection {}", docId, docName, connection);
+	   
+		//Initiate an HTTP Callout against the provided Vault to Vault connection. This record must exist and be active in both vaults.
+		//The various required detailed are then set from the provided input data.
+		HttpRequest request = httpService.newHttpRequest(connection)
+                .setMethod(HttpMethod.POST)
+                .appendPath("/api/v19.1/objects/documents")
+                .setBodyParam("source_document_id__v",docId)
+                .setBodyParam("source_vault_id__v", vaultId)
+                .setBodyParam("source_binding_rule__v", "Latest version")
+                .setBodyParam("name__v",docName)
+                .setBodyParam("type__v",type)
+                .setBodyParam("lifecycle__v", lifecycle);
+
+        vSDKCalloutExecutor.send(connection, "POST /api/v19.1/objects/documents", request)
+            .onSuccess(httpResponse -> {
+                int responseCode = httpResponse.getHttpStatusCode();
+                logService.info("RESPONSE: " + responseCode);
+                vSDKCalloutLog.successBody(() -> httpResponse.getResponseBody());
+                
+                vSDKApiResponse response = vSDKApiResponse.decode(httpResponse.getResponseBody());
+                
+                if (response.isValidJson()) {
+    				if (response.isSuccess()) {
+    					logService.info("Successfully created CrossLink for Document ID {}", docId);
+    				}
+					else {
+						logService.info("Failed to create CrossLink for Document ID {}", docId);
+						response.throwIfFailed("Failed to create CrossLink: ");
+					}
+                }
+            })
+            .onError(httpOperationError -> {
+                int responseCode = vSDKCalloutExecutor.statusCode(httpOperationError);
+                logService.info("RESPONSE: " + responseCode);
+                logService.info(httpOperationError.getMessage());
+                vSDKCalloutLog.failureBody(() -> vSDKCalloutExecutor.responseBody(httpOperationError));
+                throw new RollbackException("OPERATION_NOT_ALLOWED", "HttpService Error on Create CrossLink: " + httpOperationError.getMessage());
+            })
+            .execute();
+    }
+    
+    
+    /** 
+     * Creates crosslink documents in several target vaults. Documents are grouped by connection
+     * and each group is sent with `v2vCreateCrosslinksBulk(String, List)`.
+     * 
+     * @param documentsByConnection API body parameters of each document (docId, docName, type, lifecycle, vaultId), keyed by connection
+     * @return the outcome of every document, keyed by connection and then by docId
+     */
+    
+    public static Map<String, vSDKBulkResult> v2vCreateCrosslinksBulk(Map<String, List<Map<String, String>>> documentsByConnection) {
+    	
+    	Map<String, vSDKBulkResult> results = VaultCollections.newMap();
+    	for (String connection : documentsByConnection.keySet()) {
+    		results.put(connection, v2vCreateCrosslinksBulk(connection, documentsByConnection.get(connection)));
+    	}
+    	return results;
+    }
+    
+    /** 
+     * Opens a v2v connection to a target vault to create many crosslink documents.
+     * The documents are sent as CSV to the bulk Create Multiple Documents endpoint in chunks of
+     * BULK_CREATE_CHUNK_SIZE. See https://developer.veevavault.com/api/19.1/#create-multiple-documents for details.
+     * 
+     * Each row of the response is mapped back to its source document. Failed rows are reported
+     * and do not roll back the rows that succeeded. Documents that are already crosslinked in the
+     * target vault, such as on a rerun or a resumed fan-out, are found with one query per chunk and
+     * reported as existing instead of being created again.
+     * 
+     * **** NOTE ****
+     * If your vault has additional required fields, they will need to be added as CSV columns.
+     * 
+     * @param connection that vault is executing the API call against
+     * @param documents API body parameters of each document (docId, docName, type, lifecycle, vaultId)
+     * @return the outcome of every document, keyed by docId
+     */
+    
+    public static vSDKBulkResult v2vCreateCrosslinksBulk(String connection, List<Map<String, String>> documents) {
+    	
+    	LogService logService = ServiceLocator.locate(LogService.class);
+    	HttpService httpService = ServiceLocator.locate(HttpService.class);
+    	vSDKBulkResult result = new vSDKBulkResult();
+    	
+    	for (int start = 0; start < documents.size(); start += BULK_CREATE_CHUNK_SIZE) {
+    		List<Map<String, String>> chunk = documents.subList(start, Math.min(start + BULK_CREATE_CHUNK_SIZE, documents.size()));
+    		
+    		//Once the API limits of the target vault or the work budget of the request are close, the remaining documents are left for a later run.
+    		if (vSDKWorkBudget.isNearLimit()) {
+    			chunk.forEach(parameters -> result.addSkipped(parameters.get("docId"), WORK_BUDGET_REACHED));
+    			continue;
+    		}
+    		if (vSDKRateLimiter.isThrottled(connection)) {
+    			chunk.forEach(parameters -> result.addSkipped(parameters.get("docId"), RATE_LIMITED));
+    			continue;
+    		}
+    		if (vSDKCircuitBreaker.isOpen(connection)) {
+    			chunk.forEach(parameters -> result.addSkipped(parameters.get("docId"), CONNECTION_UNAVAILABLE));
+    			continue;
+    		}
+    		
+    		//Documents already linked in the target vault, for example by an earlier run, are not created again.
+    		Map<String, String> existing = v2vFindExistingCrosslinks(connection, chunk);
+    		List<Map<String, String>> toCreate = VaultCollections.newList();
+    		for (Map<String, String> parameters : chunk) {
+    			if (existing.containsKey(parameters.get("docId"))) {
+    				result.addExisting(parameters.get("docId"));
+    			}
+    			else {
+    				toCreate.add(parameters);
+    			}
+    		}
+    		if (toCreate.isEmpty()) {
+    			continue;
+    		}
+    		
+    		logService.info("Creating {} Crosslinks with Vault to Vault connection {}", toCreate.size(), connection);
+    		
+    		//Each CSV row creates one crosslink. The response returns one result per row, in the same order.
+    		StringBuilder csv = new StringBuilder("source_document_id__v,source_vault_id__v,source_binding_rule__v,name__v,type__v,lifecycle__v\n");
+    		for (Map<String, String> parameters : toCreate) {
+    			csv.append(csvValue(parameters.get("docId"))).append(",")
+    			   .append(csvValue(parameters.get("vaultId"))).append(",")
+    			   .append(csvValue("Latest version")).append(",")
+    			   .append(csvValue(parameters.get("docName"))).append(",")
+    			   .append(csvValue(parameters.get("type"))).append(",")
+    			   .append(csvValue(parameters.get("lifecycle"))).append("\n");
+    		}
+    		
+			HttpRequest request = httpService.newHttpRequest(connection)
+	                .setMethod(HttpMethod.POST)
+	                .appendPath("/api/v19.1/objects/documents/batch")
+	                .setHeader("Content-Type", "text/csv")
+	                .setHeader("Accept", "application/json")
+	                .setBody(csv.toString());
+			
+	        vSDKCalloutExecutor.send(connection, "POST /api/v19.1/objects/documents/batch", request)
+	            .onSuccess(httpResponse -> {
+	                logService.info("RESPONSE: " + httpResponse.getHttpStatusCode());
+	                
+	                vSDKApiResponse response = vSDKApiResponse.decode(httpResponse.getResponseBody());
+	                JsonArray data = response.getDataArray();
+	                
+	                if (data != null) {
+	                	
+	                	for (int i = 0; i < toCreate.size(); i++) {
+	                		String docId = toCreate.get(i).get("docId");
+	                		
+	                		if (i >= data.getSize()) {
+	                			result.addFailure(docId, "No result returned for document.");
+	                			continue;
+	                		}
+	                		vSDKApiResponse rowResult = vSDKApiResponse.decodeRow(data.getValue(i, JsonValueType.OBJECT));
+	                		if (rowResult.isSuccess()) {
+	                			logService.info("Successfully created CrossLink for Document ID {}", docId);
+	                			result.addSuccess(docId);
+	                		}
+	                		else {
+	                			result.addFailure(docId, "Failed to create CrossLink: " + rowResult.getErrorMessage());
+	                		}
+	                	}
+	                }
+	                else {
+	                	String message = response.isValidJson() ? response.getErrorMessage() : "Received a non-JSON response.";
+	                	logService.error("FAILURE: {}", message);
+	                	for (Map<String, String> parameters : toCreate) {
+	                		result.addFailure(parameters.get("docId"), "Failed to create CrossLink: " + message);
+	                	}
+	                }
+	            })
+	            .onError(httpOperationError -> {
+	                logService.info("RESPONSE: " + vSDKCalloutExecutor.statusCode(httpOperationError));
+	                logService.info(httpOperationError.getMessage());
+	                for (Map<String, String> parameters : toCreate) {
+	                	result.addFailure(parameters.get("docId"), "HttpService Error on Create CrossLink: " + httpOperationError.getMessage());
+	                }
+	            })
+	            .execute();
+	        vSDKWorkBudget.countRecords(toCreate.size());
+    	}
+    	return result;
+    }
+    
+    /** 
+     * Finds the crosslinks that already exist in a target vault for the given source documents,
+     * with one query per source vault.
+     * 
+     * @param connection of the target vault
+     * @param documents crosslink parameters with "docId" and "vaultId"
+     * @return the ID of the existing crosslink in the target vault, keyed by source docId
+     */
+    
+    public static Map<String, String> v2vFindExistingCrosslinks(String connection, List<Map<String, String>> documents) {
+    	
+    	Map<String, List<String>> docIdsByVaultId = VaultCollections.newMap();
+    	for (Map<String, String> parameters : documents) {
+    		if (parameters.get("vaultId") != null && parameters.get("docId") != null) {
+    			docIdsByVaultId.computeIfAbsent(parameters.get("vaultId"), key -> VaultCollections.newList()).add(parameters.get("docId"));
+    		}
+    	}
+    	
+    	Map<String, String> existing = VaultCollections.newMap();
+    	for (String vaultId : docIdsByVaultId.keySet()) {
+    		String query = "select id, source_document_id__v from documents where source_vault_id__v = " + vaultId
+    					+ " and source_document_id__v contains (" + String.join(",", docIdsByVaultId.get(vaultId)) + ")";
+    		
+    		v2vRemoteQuery(connection, query, queryRecord -> {
+    			existing.put(String.valueOf(queryRecord.getValue("source_document_id__v", JsonValueType.NUMBER)), 
+    					String.valueOf(queryRecord.getValue("id", JsonValueType.NUMBER)));
+    			return true;
+    		});
+    	}
+    	return existing;
+    }
+    
+    //Quotes a CSV value and escapes embedded quotes.
+    private static String csvValue(String value) {
+    	return value == null ? "" : "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+    
+    
+    //Retrieve the source vault ID from the target's Connection record.
+    //The Vault to Vault Connection record contain detail for each other remote vault information.
+    //This step isn't strictly necessary, but the Create Document API endpoint requires the source vault ID.
+    //The ID is cached per connection (see v2vResolveRemoteVaultIds), so in steady state only the create call is made.
+    public static void v2vHttpQuery(Map<String, String> parameters, String connection, String remoteConnectionId) {
+    	
+    	LogService logService = ServiceLocator.locate(LogService.class);
+    	
+    	String sourceVaultId = v2vResolveRemoteVaultIds(connection, VaultCollections.asList(remoteConnectionId)).get(remoteConnectionId);
+    	
+		logService.info("HTTP Query Request: Connection located for source vault {}", sourceVaultId);
+		parameters.put("vaultId", sourceVaultId);
+		vSDKHttpCallouts.v2vCreateCrosslink(parameters, connection);
+    }
+    
+    /** 
+     * Resolves the remote vault ID of several Connection records in the target vault.
+     * IDs are read from vSDKCalloutCache first. The remaining IDs are retrieved with a single
+     * "id contains (...)" query against the target vault and cached for REMOTE_VAULT_ID_TTL_SECONDS.
+     * 
+     * @param connection that vault is executing the API call against
+     * @param remoteConnectionIds of the Connection records in the target vault
+     * @return the remote vault IDs, keyed by remote connection ID
+     */
+    
+    public static Map<String, String> v2vResolveRemoteVaultIds(String connection, Collection<String> remoteConnectionIds) {
+    	
+    	Map<String, String> cacheKeys = VaultCollections.newMap();
+    	for (String remoteConnectionId : remoteConnectionIds) {
+    		cacheKeys.put(remoteVaultIdCacheKey(connection, remoteConnectionId), remoteConnectionId);
+    	}
+    	
+    	Map<String, String> cached = vSDKCalloutCache.getAll(cacheKeys.keySet(), true);
+    	Map<String, String> vaultIds = VaultCollections.newMap();
+    	List<String> missing = VaultCollections.newList();
+    	
+    	for (String cacheKey : cacheKeys.keySet()) {
+    		if (cached.containsKey(cacheKey)) {
+    			vaultIds.put(cacheKeys.get(cacheKey), cached.get(cacheKey));
+    		}
+    		else {
+    			missing.add(cacheKeys.get(cacheKey));
+    		}
+    	}
+    	
+    	if (!missing.isEmpty()) {
+    		Map<String, String> queried = v2vQueryRemoteVaultIds(connection, missing);
+    		Map<String, String> entries = VaultCollections.newMap();
+    		for (String remoteConnectionId : queried.keySet()) {
+    			entries.put(remoteVaultIdCacheKey(connection, remoteConnectionId), queried.get(remoteConnectionId));
+    		}
+    		vSDKCalloutCache.putAll(entries, REMOTE_VAULT_ID_TTL_SECONDS);
+    		vaultIds.putAll(queried);
+    	}
+    	return vaultIds;
+    }
+    
+    /** 
+     * Removes a cached remote vault ID, for example after the Connection record has been changed.
+     * 
+     * @param connection that vault is executing the API call against
+     * @param remoteConnectionId of the Connection record in the target vault
+     */
+    
+    public static void v2vInvalidateRemoteVaultId(String connection, String remoteConnectionId) {
+    	vSDKCalloutCache.invalidate(remoteVaultIdCacheKey(connection, remoteConnectionId));
+    }
+    
+    private static String remoteVaultIdCacheKey(String connection, String remoteConnectionId) {
+    	return "remote_vault_id:" + connection + ":" + remoteConnectionId;
+    }
+    
+    private static Map<String, String> v2vQueryRemoteVaultIds(String connection, List<String> remoteConnectionIds) {
+    	
+    	LogService logService = ServiceLocator.locate(LogService.class);
+    	Map<String, String> vaultIds = VaultCollections.newMap();
+		String query = "select id, remote_vault_id__sys from connection__sys where id contains ('" + String.join("','", remoteConnectionIds) + "')";
+		
+		//Retrieve each record returned from the VQL query. Reading stops once every connection is found.
+		v2vRemoteQuery(connection, query, queryRecord -> {
+			vaultIds.put(queryRecord.getValue("id", JsonValueType.STRING), 
+					queryRecord.getValue("remote_vault_id__sys", JsonValueType.STRING));
+			return vaultIds.size() < remoteConnectionIds.size();
+		});
+		
+		logService.info("HTTP Query Request: SUCCESS");
+		return vaultIds;
+    }
+    
+    /** 
+     * Runs a VQL query against a target vault and hands each returned record to the consumer, page by page.
+     * The `responseDetails.next_page` cursor is followed until every page is read or the consumer returns false,
+     * so only one page of records is held in memory.
+     * 
+     * @param connection that vault is executing the API call against
+     * @param query VQL query to run in the target vault
+     * @param rowConsumer receives each record. Returns false to stop reading, without consuming that record.
+     * @return the position of the record the consumer stopped at, for `v2vRemoteQueryResume`, or null when every record was read
+     */
+    
+    public static vSDKV2VQueryPosition v2vRemoteQuery(String connection, String query, Predicate<JsonObject> rowConsumer) {
+    	return v2vReadPages(connection, new vSDKV2VQueryPosition(query, null, false, 0), rowConsumer);
+    }
+    
+    /** 
+     * Reads a VQL result from a page cursor, such as the previous_page cursor of an earlier response.
+     * 
+     * @param connection that vault is executing the API call against
+     * @param pageCursor next_page or previous_page path of an earlier response
+     * @param backward follows previous_page cursors instead of next_page cursors
+     * @param rowConsumer receives each record. Returns false to stop reading, without consuming that record.
+     * @return the position of the record the consumer stopped at, for `v2vRemoteQueryResume`, or null when there are no more pages
+     */
+    
+    public static vSDKV2VQueryPosition v2vRemoteQueryPage(String connection, String pageCursor, boolean backward, Predicate<JsonObject> rowConsumer) {
+    	return v2vReadPages(connection, new vSDKV2VQueryPosition(null, pageCursor, backward, 0), rowConsumer);
+    }
+    
+    /** 
+     * Continues reading a VQL result where a consumer stopped. The page of the position is read again and
+     * its records before the position are skipped, so no record is skipped or handed over twice.
+     * 
+     * @param connection that vault is executing the API call against
+     * @param position returned by `v2vRemoteQuery`, `v2vRemoteQueryPage` or an earlier resume
+     * @param rowConsumer receives each record. Returns false to stop reading, without consuming that record.
+     * @return the position of the record the consumer stopped at, or null when there are no more pages
+     */
+    
+    public static vSDKV2VQueryPosition v2vRemoteQueryResume(String connection, vSDKV2VQueryPosition position, Predicate<JsonObject> rowConsumer) {
+    	return v2vReadPages(connection, position, rowConsumer);
+    }
+    
+    //Sends the query, or requests the page cursor, and follows the cursors until there are none or the consumer stops.
+    private static vSDKV2VQueryPosition v2vReadPages(String connection, vSDKV2VQueryPosition start, Predicate<JsonObject> rowConsumer) {
+    	
+    	LogService logService = ServiceLocator.locate(LogService.class);
+    	HttpService httpService = ServiceLocator.locate(HttpService.class);
+    	String query = start.getQuery();
+    	boolean backward = start.isBackward();
+    	String[] cursor = {start.getPageCursor()};
+    	int[] firstRow = {start.getRowIndex()};
+    	vSDKV2VQueryPosition[] stoppedAt = {null};
+    	
+    	while (stoppedAt[0] == null && (query != null || cursor[0] != null)) {
+    		
+    		//The page being read, which is where a consumer that stops on it resumes
+    		String pageQuery = query;
+    		String pageCursor = cursor[0];
+    		
+    		//This is a vault to vault Http Request to the input connection
+    		//The configured connection provides the full DNS name. 
+    		//The query endpoint takes a POST where the BODY is the query itself. Further pages are retrieved with a GET of the cursor.
+    		HttpRequest request = httpService.newHttpRequest(connection);
+    		String pathTemplate;
+    		
+    		if (query != null) {
+    			request.setMethod(HttpMethod.POST);
+    			request.appendPath("/api/v19.1/query");
+    			request.setHeader("Content-Type", "application/x-www-form-urlencoded");
+    			request.setBodyParam("q", query);
+    			pathTemplate = "POST /api/v19.1/query";
+    			query = null;
+    		}
+    		else {
+    			int paramStart = cursor[0].indexOf('?');
+    			request.setMethod(HttpMethod.GET);
+    			request.appendPath(paramStart < 0 ? cursor[0] : cursor[0].substring(0, paramStart));
+    			if (paramStart >= 0) {
+    				for (String param : StringUtils.split(cursor[0].substring(paramStart + 1), "&")) {
+    					String[] keyValue = StringUtils.split(param, "=");
+    					request.setQuerystringParam(keyValue[0], keyValue.length > 1 ? keyValue[1] : "");
+    				}
+    			}
+    			pathTemplate = "GET /api/v19.1/query/{queryId}";
+    		}
+    		cursor[0] = null;
+    		
+    		//`vSDKApiResponse.decode` reads the envelope once: `responseStatus`, the first error, and the `responseDetails` page cursors
+    		//The `data` element is an array of JSON data. Each queried record is an element of the array and is parsed into a `JsonObject`.
+    		vSDKCalloutExecutor.send(connection, pathTemplate, request)
+    		.onSuccess(httpResponse -> {
+    			
+    			vSDKApiResponse response = vSDKApiResponse.decode(httpResponse.getResponseBody());
+    			
+    			if (!response.isValidJson()) {
+    				logService.info("v2vRemoteQuery error: Received a non-JSON response.");
+    				return;
+    			}
+    			if (!response.isSuccess()) {
+    				logService.info("Failed to Query Remote Vault Connection {}", connection);
+    				response.throwIfFailed("Query Errors: ");
+    				return;
+    			}
+    			
+    			String following = backward ? response.getPreviousPage() : response.getNextPage();
+    			JsonArray data = response.getDataArray();
+    			int size = data == null ? 0 : data.getSize();
+    			
+    			for (int i = firstRow[0]; i < size; i++) {
+    				if (!rowConsumer.test(data.getValue(i, JsonValueType.OBJECT))) {
+    					stoppedAt[0] = new vSDKV2VQueryPosition(pageQuery, pageCursor, backward, i);
+    					break;
+    				}
+    			}
+    			firstRow[0] = 0;
+    			cursor[0] = following;
+    		})
+    		.onError(httpOperationError -> {
+    			int responseCode = vSDKCalloutExecutor.statusCode(httpOperationError);
+    			logService.info("RESPONSE: " + responseCode);
+    			logService.info(httpOperationError.getMessage());
+    			vSDKCalloutLog.failureBody(() -> vSDKCalloutExecutor.responseBody(httpOperationError));
+    			throw new RollbackException("OPERATION_NOT_ALLOWED", "HttpService Error Vault to Vault Query: " + httpOperationError.getMessage());
+    		}).execute();
+    	}
+    	return stoppedAt[0];
+    }
+    
+}
\ No newline at end of file
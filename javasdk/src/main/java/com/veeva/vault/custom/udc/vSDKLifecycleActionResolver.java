@@ -0,0 +1,84 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.StringUtils;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.document.DocumentVersion;
+
+import java.util.Map;
+
+/******************************************************************************
+ * User-Defined Class:  LifecycleActionResolver
+ *-----------------------------------------------------------------------------
+ * Description: Caches the "Start HTTP Workflow" user action located for a
+ *              document type, lifecycle and state.
+ *
+ *              Documents with the same type, lifecycle and state offer the
+ *              same user actions, so once the action has been located with
+ *              a lifecycle_actions call, later documents skip that call.
+ *              Actions are cached for the request and, when CACHE_TTL_SECONDS
+ *              is greater than zero, in vSDKCalloutCache across requests.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKLifecycleActionResolver {
+
+	// Label of the user action that starts the workflow
+	public static final String ACTION_LABEL = "Start HTTP Workflow";
+	// Lifetime of located actions saved to the vault, or 0 to only cache them for the request
+	static final long CACHE_TTL_SECONDS = 3600;
+
+	/**
+	 * @param docVersion with the type__v, lifecycle__v and status__v fields
+	 * @return the cache key for the document's type, lifecycle and state
+	 */
+
+	public static String cacheKey(DocumentVersion docVersion) {
+		return "lifecycle_action:" + docVersion.getValue("type__v", ValueType.STRING) + ":"
+				+ docVersion.getValue("lifecycle__v", ValueType.STRING) + ":"
+				+ docVersion.getValue("status__v", ValueType.STRING);
+	}
+
+	/**
+	 * @param cacheKey from `cacheKey`
+	 * @return the located action with name__v, lifecycle__v and state__v, or null when it is not cached
+	 */
+
+	public static Map<String,String> getCached(String cacheKey) {
+
+		String value = vSDKCalloutCache.get(cacheKey, CACHE_TTL_SECONDS > 0);
+		if (value == null) {
+			return null;
+		}
+
+		String[] parts = StringUtils.split(value, "|");
+		Map<String,String> action = VaultCollections.newMap();
+		action.put("name__v", parts[0]);
+		action.put("lifecycle__v", parts.length > 1 ? parts[1] : "");
+		action.put("state__v", parts.length > 2 ? parts[2] : "");
+		return action;
+	}
+
+	/**
+	 * @param cacheKey from `cacheKey`
+	 * @param action located action with name__v, lifecycle__v and state__v
+	 */
+
+	public static void cache(String cacheKey, Map<String,String> action) {
+		String value = action.get("name__v") + "|" + nullToEmpty(action.get("lifecycle__v")) + "|" + nullToEmpty(action.get("state__v"));
+		vSDKCalloutCache.put(cacheKey, value, CACHE_TTL_SECONDS);
+	}
+
+	private static String nullToEmpty(String value) {
+		return value == null ? "" : value;
+	}
+}
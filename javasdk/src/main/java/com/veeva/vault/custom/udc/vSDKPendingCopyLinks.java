@@ -0,0 +1,132 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordChange;
+import com.veeva.vault.sdk.api.data.RecordService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/******************************************************************************
+ * User-Defined Class:  PendingCopyLinks
+ *-----------------------------------------------------------------------------
+ * Description: Links "Copy of" records to an original record that is
+ *              inserted in the same batch.
+ *
+ *              Before the insert, the original has no ID yet, so
+ *              vSDKQueryService names the copy and registers it here with
+ *              `add`. After the insert, `link` sets related_to__c on every
+ *              registered copy whose original now has an ID, with one
+ *              batch save.
+ *
+ *              Until it is linked, a copy has an empty related_to__c like
+ *              an original record. `isCopy` lets vSDKRecordService skip it,
+ *              whether it runs before or after the link.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKPendingCopyLinks implements RequestContextValue {
+
+	static final String CONTEXT_NAME = "vsdk_pending_copy_links";
+	static final String OBJECT_NAME = "vsdk_service_basics__c";
+
+	// Name of the original record, keyed by the name of each copy inserted in this request
+	private final Map<String, String> originalByCopy = VaultCollections.newMap();
+	// Copies that are already linked
+	private final Set<String> linked = VaultCollections.newSet();
+
+	/**
+	 * Registers a copy of a record that is inserted in the same batch.
+	 *
+	 * @param copyName name__v of the copy, such as "Copy of: 'Name' 1"
+	 * @param originalName name__v of the original record
+	 */
+
+	public static void add(String copyName, String originalName) {
+		current().originalByCopy.put(copyName, originalName);
+	}
+
+	//Returns true if the record is a copy registered in this request, linked or not.
+	public static boolean isCopy(String name) {
+		return name != null && current().originalByCopy.containsKey(name);
+	}
+
+	/**
+	 * Sets related_to__c on the registered copies among the inserted records whose original
+	 * is inserted in the same batch. The copies are saved with one batch save, and an error
+	 * rolls back the insert.
+	 *
+	 * @param recordChanges of an AFTER_INSERT trigger
+	 */
+
+	public static void link(List<RecordChange> recordChanges) {
+
+		vSDKPendingCopyLinks pending = current();
+		if (pending.originalByCopy.size() == pending.linked.size()) {
+			return;
+		}
+
+		Map<String, String> idByName = VaultCollections.newMap();
+		for (RecordChange inputRecord : recordChanges) {
+			idByName.put(inputRecord.getNew().getValue("name__v", ValueType.STRING), inputRecord.getNew().getValue("id", ValueType.STRING));
+		}
+
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		List<Record> recordList = VaultCollections.newList();
+		List<String> copyNames = VaultCollections.newList();
+
+		for (String copyName : pending.originalByCopy.keySet()) {
+			String originalId = idByName.get(pending.originalByCopy.get(copyName));
+			if (pending.linked.contains(copyName) || !idByName.containsKey(copyName) || originalId == null) {
+				continue;
+			}
+			Record r = recordService.newRecordWithId(OBJECT_NAME, idByName.get(copyName));
+			r.setValue("related_to__c", originalId);
+			recordList.add(r);
+			copyNames.add(copyName);
+		}
+
+		if (recordList.isEmpty()) {
+			return;
+		}
+
+		vSDKServiceBudget.count(vSDKServiceBudget.RECORD_SAVE, "vSDKPendingCopyLinks.link");
+		recordService.batchSaveRecords(recordList)
+			.onSuccesses(successes -> successes.forEach(success -> {
+				pending.linked.add(copyNames.get(success.getInputPosition()));
+			}))
+			.onErrors(batchOperationErrors -> {
+				batchOperationErrors.forEach(error -> {
+					throw new RollbackException("OPERATION_NOT_ALLOWED", "Unable to link '" + OBJECT_NAME + "' record: '" +
+							copyNames.get(error.getInputPosition()) + "' because of '" + error.getError().getMessage() + "'.");
+				});
+			})
+			.execute();
+	}
+
+	//Returns the pending links of the current request, creating them on first use.
+	private static vSDKPendingCopyLinks current() {
+		vSDKPendingCopyLinks pending = RequestContext.get().getValue(CONTEXT_NAME, vSDKPendingCopyLinks.class);
+		if (pending == null) {
+			pending = new vSDKPendingCopyLinks();
+			RequestContext.get().setValue(CONTEXT_NAME, pending);
+		}
+		return pending;
+	}
+}
@@ -0,0 +1,141 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.http.HttpResponse;
+
+import java.time.Instant;
+import java.util.Map;
+
+/******************************************************************************
+ * User-Defined Class:  RateLimiter
+ *-----------------------------------------------------------------------------
+ * Description: Tracks the Vault API rate limits of each connection during
+ *              the request.
+ *
+ *              Every response updates the remaining burst and daily limits
+ *              from the X-VaultAPI-BurstLimitRemaining and
+ *              X-VaultAPI-DailyLimitRemaining headers. A connection is
+ *              throttled when:
+ *                 - fewer than BURST_RESERVE burst calls or DAILY_RESERVE
+ *                   daily calls remain, or
+ *                 - it answered 429 or 503, for the Retry-After time or a
+ *                   jittered exponential backoff, or
+ *                 - no response was received, for the jittered backoff.
+ *
+ *              The Vault Java SDK cannot pause a request, so bulk callouts
+ *              check `isThrottled` before each chunk and report the rest of
+ *              their work as deferred instead of pushing past the limit.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKRateLimiter implements RequestContextValue {
+
+	static final String CONTEXT_NAME = "vsdk_rate_limiter";
+	// Stop sending when fewer burst or daily calls than these remain
+	static final int BURST_RESERVE = 10;
+	static final int DAILY_RESERVE = 100;
+	// Backoff after a 429 or 503 without Retry-After, or a failed connection: BASE * 2^(n-1), capped at MAX, with full jitter
+	static final long BASE_BACKOFF_MILLIS = 500;
+	static final long MAX_BACKOFF_MILLIS = 30000;
+
+	private final Map<String, Integer> burstRemaining = VaultCollections.newMap();
+	private final Map<String, Integer> dailyRemaining = VaultCollections.newMap();
+	private final Map<String, Instant> throttledUntil = VaultCollections.newMap();
+	private final Map<String, Integer> consecutiveThrottles = VaultCollections.newMap();
+
+	/**
+	 * Updates the limits of the connection from a response.
+	 *
+	 * @param connection the response came from
+	 * @param httpResponse received, or null when there was no response
+	 */
+
+	public static void record(String connection, HttpResponse<?> httpResponse) {
+
+		vSDKRateLimiter limiter = current();
+		if (httpResponse == null) {
+			limiter.throttle(connection, null);
+			return;
+		}
+
+		Integer burst = parseInt(vSDKCalloutExecutor.headerValue(httpResponse, "X-VaultAPI-BurstLimitRemaining"));
+		Integer daily = parseInt(vSDKCalloutExecutor.headerValue(httpResponse, "X-VaultAPI-DailyLimitRemaining"));
+		if (burst != null) {
+			limiter.burstRemaining.put(connection, burst);
+		}
+		if (daily != null) {
+			limiter.dailyRemaining.put(connection, daily);
+		}
+
+		int statusCode = httpResponse.getHttpStatusCode();
+		if (statusCode == 429 || statusCode == 503) {
+			limiter.throttle(connection, parseInt(vSDKCalloutExecutor.headerValue(httpResponse, "Retry-After")));
+		}
+		else {
+			limiter.consecutiveThrottles.remove(connection);
+		}
+	}
+
+	//Throttles the connection for the Retry-After time, or for the backoff of its consecutive throttles.
+	private void throttle(String connection, Integer retryAfterSeconds) {
+		int throttles = consecutiveThrottles.getOrDefault(connection, 0) + 1;
+		consecutiveThrottles.put(connection, throttles);
+
+		long backoff = retryAfterSeconds != null ? retryAfterSeconds * 1000L : backoffMillis(throttles);
+		throttledUntil.put(connection, Instant.now().plusMillis(backoff));
+	}
+
+	/**
+	 * @param connection to check
+	 * @return true if no more calls should be sent to the connection in this request for now
+	 */
+
+	public static boolean isThrottled(String connection) {
+
+		vSDKRateLimiter limiter = current();
+		Instant until = limiter.throttledUntil.get(connection);
+
+		return (until != null && Instant.now().isBefore(until))
+				|| limiter.burstRemaining.getOrDefault(connection, Integer.MAX_VALUE) < BURST_RESERVE
+				|| limiter.dailyRemaining.getOrDefault(connection, Integer.MAX_VALUE) < DAILY_RESERVE;
+	}
+
+	//Full jitter: a random delay between half and all of the exponential backoff.
+	static long backoffMillis(int attempt) {
+		long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 16));
+		return backoff / 2 + (long) (Math.random() * (backoff / 2));
+	}
+
+	private static Integer parseInt(String value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	//Returns the limits of the current request, creating them on first use.
+	private static vSDKRateLimiter current() {
+		vSDKRateLimiter limiter = RequestContext.get().getValue(CONTEXT_NAME, vSDKRateLimiter.class);
+		if (limiter == null) {
+			limiter = new vSDKRateLimiter();
+			RequestContext.get().setValue(CONTEXT_NAME, limiter);
+		}
+		return limiter;
+	}
+}
@@ -0,0 +1,175 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/******************************************************************************
+ * User-Defined Class:  RelatedRecordFanOut
+ *-----------------------------------------------------------------------------
+ * Description: Creates a configurable number of related records for each
+ *              parent record.
+ *
+ *              Child records are built while the parents are read and are
+ *              saved in chunks that fit the RecordService batch limit, so
+ *              the full list of children is never held in memory.
+ *
+ *              By default the first error rolls back the transaction. With
+ *              `setRollbackOnErrors(false)` failed chunks are reported in the
+ *              returned vSDKBulkResult and the remaining chunks are saved.
+ *
+ *              Once the vSDKWorkBudget of the request is nearly used, the
+ *              remaining parents get no related records. They are returned
+ *              by `getDeferredParents` so the caller can queue them.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKRelatedRecordFanOut {
+
+	// Maximum number of records in a single batchSaveRecords call
+	public static final int MAX_BATCH_SIZE = 500;
+	// Placeholders available in the name template
+	public static final String NAME_TOKEN = "{name}";
+	public static final String INDEX_TOKEN = "{index}";
+
+	private final String objectName;
+	private final String relationField;
+	private int childrenPerParent = 2;
+	private String nameTemplate = "Related to: '" + NAME_TOKEN + "' " + INDEX_TOKEN;
+	private int chunkSize = MAX_BATCH_SIZE;
+	private boolean rollbackOnErrors = true;
+	private final List<Record> deferredParents = VaultCollections.newList();
+	private final Map<String, String> failedParents = VaultCollections.newMap();
+
+	/**
+	 * @param objectName of the child records to create
+	 * @param relationField object reference field on the child that is set to the parent ID
+	 */
+
+	public vSDKRelatedRecordFanOut(String objectName, String relationField) {
+		this.objectName = objectName;
+		this.relationField = relationField;
+	}
+
+	public vSDKRelatedRecordFanOut setChildrenPerParent(int childrenPerParent) {
+		this.childrenPerParent = childrenPerParent;
+		return this;
+	}
+
+	public vSDKRelatedRecordFanOut setNameTemplate(String nameTemplate) {
+		this.nameTemplate = nameTemplate;
+		return this;
+	}
+
+	public vSDKRelatedRecordFanOut setChunkSize(int chunkSize) {
+		this.chunkSize = Math.max(1, Math.min(chunkSize, MAX_BATCH_SIZE));
+		return this;
+	}
+
+	public vSDKRelatedRecordFanOut setRollbackOnErrors(boolean rollbackOnErrors) {
+		this.rollbackOnErrors = rollbackOnErrors;
+		return this;
+	}
+
+	/**
+	 * Creates the related records for every parent returned by the iterator.
+	 *
+	 * @param parents records with an `id` and a `name__v`
+	 * @return the outcome of every child record, keyed by "<parent ID>:<index>" since
+	 *         parents with the same name get children with the same name
+	 */
+
+	public vSDKBulkResult execute(Iterator<Record> parents) {
+
+		RecordService recordService = ServiceLocator.locate(RecordService.class);
+		vSDKBulkResult result = new vSDKBulkResult();
+		List<Record> chunk = VaultCollections.newList();
+		List<String> keys = VaultCollections.newList();
+		int chunkNumber = 1;
+
+		while (parents.hasNext()) {
+			Record parent = parents.next();
+			
+			//Parents are handled as a whole, so a deferred parent has none of its related records yet.
+			if (!deferredParents.isEmpty() || vSDKWorkBudget.isNearLimit()) {
+				deferredParents.add(parent);
+				continue;
+			}
+			String name = parent.getValue("name__v", ValueType.STRING);
+			String id = parent.getValue("id", ValueType.STRING);
+
+			for (int i = 1; i <= childrenPerParent; i++) {
+				Record r = recordService.newRecord(objectName);
+				r.setValue("name__v", nameTemplate.replace(NAME_TOKEN, name).replace(INDEX_TOKEN, String.valueOf(i)));
+				r.setValue(relationField, id);
+				chunk.add(r);
+				keys.add(id + ":" + i);
+
+				if (chunk.size() == chunkSize) {
+					saveChunk(recordService, chunk, keys, chunkNumber++, result);
+					chunk = VaultCollections.newList();
+					keys = VaultCollections.newList();
+				}
+			}
+		}
+
+		if (chunk.size() > 0) {
+			saveChunk(recordService, chunk, keys, chunkNumber, result);
+		}
+		return result;
+	}
+
+	//Returns the parents that were not handled because the work budget of the request was nearly used.
+	public List<Record> getDeferredParents() {
+		return deferredParents;
+	}
+
+	//Returns the last error of each parent with a related record that could not be created, keyed by parent ID.
+	public Map<String, String> getFailedParents() {
+		return failedParents;
+	}
+
+	private void saveChunk(RecordService recordService, List<Record> chunk, List<String> keys, int chunkNumber, vSDKBulkResult result) {
+
+		vSDKServiceBudget.count(vSDKServiceBudget.RECORD_SAVE, "vSDKRelatedRecordFanOut.saveChunk");
+		recordService.batchSaveRecords(chunk)
+			.onSuccesses(successes -> successes.forEach(success -> {
+				result.addSuccess(keys.get(success.getInputPosition()));
+			}))
+			.onErrors(batchOperationErrors -> {
+
+				//The BatchOperation.onErrors() returns a list of BatchOperationErrors.
+				//Each BatchOperationError gives the position of the failed record in the chunk
+				//and an **ErrorResult** with BatchOperationError.getError().
+				batchOperationErrors.forEach(error -> {
+					String errMsg = error.getError().getMessage();
+					String name = chunk.get(error.getInputPosition()).getValue("name__v", ValueType.STRING);
+
+					if (rollbackOnErrors) {
+						throw new RollbackException("OPERATION_NOT_ALLOWED", "Unable to create '" + objectName + "' record: '" +
+								name + "' because of '" + errMsg + "'.");
+					}
+					result.addFailure(keys.get(error.getInputPosition()), "Chunk " + chunkNumber + ": '" + name + "': " + errMsg);
+					failedParents.put(chunk.get(error.getInputPosition()).getValue(relationField, ValueType.STRING), errMsg);
+				});
+			})
+			.execute();
+		vSDKWorkBudget.countRecords(chunk.size());
+	}
+}
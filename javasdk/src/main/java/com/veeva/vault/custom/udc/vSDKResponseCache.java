@@ -0,0 +1,167 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.http.HttpResponse;
+
+import java.util.Map;
+
+/******************************************************************************
+ * User-Defined Class:  ResponseCache
+ *-----------------------------------------------------------------------------
+ * Description: Caches the value a callout derives from a GET response,
+ *              keyed by connection + method + path, in vSDKCalloutCache.
+ *
+ *              - The entry lives for the max-age of the Cache-Control
+ *                header, or DEFAULT_TTL_SECONDS when the server sends none.
+ *              - "no-store" and "no-cache" responses are only cached for the
+ *                current request.
+ *              - The ETag is saved with the value. Once the entry expires,
+ *                the callout can send it as If-None-Match and keep the
+ *                value on a 304 Not Modified response.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKResponseCache {
+
+	// Lifetime of a cached response when the server sends no max-age
+	static final long DEFAULT_TTL_SECONDS = 3600;
+	// Separates the ETag from the value in the saved entry
+	static final String SEPARATOR = "\n";
+
+	private final String key;
+	private final String eTag;
+	private final String value;
+	private final boolean fresh;
+
+	private vSDKResponseCache(String key, String eTag, String value, boolean fresh) {
+		this.key = key;
+		this.eTag = eTag;
+		this.value = value;
+		this.fresh = fresh;
+	}
+
+	/**
+	 * Looks up the cached value of a GET response.
+	 *
+	 * @param connection of the callout
+	 * @param method of the callout, such as "GET"
+	 * @param path of the callout, including its query string
+	 * @return the entry, or null when the response was never cached.
+	 *         An expired entry is returned as not fresh so it can be revalidated.
+	 */
+
+	public static vSDKResponseCache lookup(String connection, String method, String path) {
+
+		String key = connection + " " + method + " " + path;
+		String saved = vSDKCalloutCache.get(key, true);
+		boolean fresh = saved != null;
+
+		if (saved == null) {
+			saved = vSDKCalloutCache.getExpired(key);
+		}
+		if (saved == null || !saved.contains(SEPARATOR)) {
+			return saved == null ? null : new vSDKResponseCache(key, null, saved, fresh);
+		}
+
+		int split = saved.indexOf(SEPARATOR);
+		String eTag = saved.substring(0, split);
+		return new vSDKResponseCache(key, eTag.isEmpty() ? null : eTag, saved.substring(split + 1), fresh);
+	}
+
+	/**
+	 * Caches the value derived from a response, honoring its Cache-Control and ETag headers.
+	 *
+	 * @param connection of the callout
+	 * @param method of the callout
+	 * @param path of the callout
+	 * @param httpResponse the value was derived from
+	 * @param value to cache
+	 */
+
+	public static void store(String connection, String method, String path, HttpResponse<?> httpResponse, String value) {
+
+		String eTag = vSDKCalloutExecutor.headerValue(httpResponse, "ETag");
+		vSDKCalloutCache.put(connection + " " + method + " " + path,
+				(eTag == null ? "" : eTag) + SEPARATOR + value, ttlSeconds(httpResponse));
+	}
+
+	/**
+	 * Caches the values derived from one response for several paths with one save,
+	 * such as the resources of a list response.
+	 *
+	 * @param connection of the callouts
+	 * @param method of the callouts
+	 * @param valuesByPath values to cache, keyed by the path of the single resource callout
+	 * @param httpResponse the values were derived from
+	 */
+
+	public static void storeAll(String connection, String method, Map<String, String> valuesByPath, HttpResponse<?> httpResponse) {
+
+		Map<String, String> entries = VaultCollections.newMap();
+		for (String path : valuesByPath.keySet()) {
+			//The ETag of a list response does not apply to the single resources.
+			entries.put(connection + " " + method + " " + path, SEPARATOR + valuesByPath.get(path));
+		}
+		vSDKCalloutCache.putAll(entries, ttlSeconds(httpResponse));
+	}
+
+	/**
+	 * Extends an expired entry after the server answered 304 Not Modified.
+	 *
+	 * @param httpResponse with the 304 status
+	 */
+
+	public void revalidate(HttpResponse<?> httpResponse) {
+
+		String newETag = vSDKCalloutExecutor.headerValue(httpResponse, "ETag");
+		String keptETag = newETag != null ? newETag : eTag;
+		vSDKCalloutCache.put(key, (keptETag == null ? "" : keptETag) + SEPARATOR + value, ttlSeconds(httpResponse));
+	}
+
+	//Returns the lifetime of the saved entry: max-age, DEFAULT_TTL_SECONDS, or 0 to keep it for the request only.
+	static long ttlSeconds(HttpResponse<?> httpResponse) {
+
+		String cacheControl = vSDKCalloutExecutor.headerValue(httpResponse, "Cache-Control");
+		if (cacheControl == null) {
+			return DEFAULT_TTL_SECONDS;
+		}
+
+		for (String directive : cacheControl.toLowerCase().split(",")) {
+			directive = directive.trim();
+			if (directive.equals("no-store") || directive.equals("no-cache")) {
+				return 0;
+			}
+			if (directive.startsWith("max-age=")) {
+				try {
+					return Math.max(0, Long.parseLong(directive.substring("max-age=".length()).trim()));
+				}
+				catch (NumberFormatException e) {
+					return DEFAULT_TTL_SECONDS;
+				}
+			}
+		}
+		return DEFAULT_TTL_SECONDS;
+	}
+
+	public String getETag() {
+		return eTag;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	//Returns true if the entry has not expired and can be used without a callout.
+	public boolean isFresh() {
+		return fresh;
+	}
+}
@@ -0,0 +1,190 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.util.List;
+import java.util.Map;
+
+/******************************************************************************
+ * User-Defined Class:  ServiceBudget
+ *-----------------------------------------------------------------------------
+ * Description: Counts the Vault service calls made by an entry point,
+ *              grouped by service and call site, and checks them against
+ *              the budget the entry point declares.
+ *
+ *              An entry point calls `begin`, declares a `limit` for each
+ *              service it cares about, and calls `end` from a finally block
+ *              when it is done. Every service call is preceded by a `count`
+ *              with its call site, such as "vSDKCopyNameIndex.load".
+ *
+ *              Entry points nest when a save fires another trigger. Each
+ *              `begin` pushes a frame with its own limits, and `end` pops it
+ *              and adds its calls to the enclosing frame, so the outer entry
+ *              point is checked against all the calls made on its behalf.
+ *
+ *              When a limit is exceeded, `end` logs a warning with the call
+ *              site breakdown. In strict mode, it throws a RollbackException
+ *              instead, which makes N+1 patterns fail in a sandbox vault or
+ *              a benchmark before they are deployed. Strict mode defaults to
+ *              STRICT and can be switched for a request with `setStrict`.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKServiceBudget implements RequestContextValue {
+
+	static final String CONTEXT_NAME = "vsdk_service_budget";
+	// Services that are counted
+	public static final String QUERY = "query";
+	public static final String RECORD_SAVE = "record_save";
+	public static final String RECORD_DELETE = "record_delete";
+	public static final String DOCUMENT_SAVE = "document_save";
+	public static final String DOCUMENT_ROLE = "document_role";
+	public static final String GROUP = "group";
+	public static final String HTTP = "http";
+	// Default of strict mode: fail the request when a budget is exceeded. Set to true in sandbox vaults only.
+	static final boolean STRICT = false;
+
+	private boolean strict = STRICT;
+	private String entryPoint;
+	private int records;
+	// Frames of the entry points that have begun and not ended, innermost last
+	private final List<vSDKServiceBudget> frames = VaultCollections.newList();
+	private final Map<String, Integer> limits = VaultCollections.newMap();
+	private final Map<String, Integer> totals = VaultCollections.newMap();
+	private final Map<String, Map<String, Integer>> callSites = VaultCollections.newMap();
+
+	/**
+	 * Starts counting for an entry point in a new frame. The frame of an enclosing entry point
+	 * is kept and receives the calls of this one on `end`.
+	 *
+	 * @param entryPoint name used in the report, such as "vSDKQueryService BEFORE_INSERT"
+	 * @param records number of records or documents the entry point handles
+	 */
+
+	public static void begin(String entryPoint, int records) {
+		vSDKServiceBudget frame = new vSDKServiceBudget();
+		frame.entryPoint = entryPoint;
+		frame.records = records;
+		current().frames.add(frame);
+	}
+
+	/**
+	 * Switches strict mode for the rest of the current request. In strict mode, an exceeded limit
+	 * throws a RollbackException instead of logging a warning.
+	 *
+	 * @param strict true to fail the request when a budget is exceeded
+	 */
+
+	public static void setStrict(boolean strict) {
+		current().strict = strict;
+	}
+
+	/**
+	 * Declares the maximum number of calls to a service. Services without a limit are only counted.
+	 *
+	 * @param service such as QUERY
+	 * @param maxCalls allowed for the entry point
+	 */
+
+	public static void limit(String service, int maxCalls) {
+		top().limits.put(service, maxCalls);
+	}
+
+	/**
+	 * Counts one call to a service.
+	 *
+	 * @param service such as QUERY
+	 * @param callSite that makes the call, such as "vSDKCopyNameIndex.load"
+	 */
+
+	public static void count(String service, String callSite) {
+		vSDKServiceBudget frame = top();
+		frame.totals.merge(service, 1, Integer::sum);
+		frame.callSites.computeIfAbsent(service, key -> VaultCollections.newMap()).merge(callSite, 1, Integer::sum);
+	}
+
+	/**
+	 * Ends the innermost entry point: its frame is popped and its calls are added to the enclosing
+	 * frame. The calls are then checked against the limits of the ended entry point. An exceeded
+	 * limit is logged, or throws a RollbackException in strict mode.
+	 */
+
+	public static void end() {
+
+		vSDKServiceBudget root = current();
+		if (root.frames.isEmpty()) {
+			return;
+		}
+		vSDKServiceBudget budget = root.frames.remove(root.frames.size() - 1);
+		vSDKServiceBudget parent = top();
+		for (String service : budget.callSites.keySet()) {
+			parent.totals.merge(service, budget.totals.get(service), Integer::sum);
+			Map<String, Integer> parentCallSites = parent.callSites.computeIfAbsent(service, key -> VaultCollections.newMap());
+			for (Map.Entry<String, Integer> callSite : budget.callSites.get(service).entrySet()) {
+				parentCallSites.merge(callSite.getKey(), callSite.getValue(), Integer::sum);
+			}
+		}
+
+		LogService logService = ServiceLocator.locate(LogService.class);
+		StringBuilder exceeded = new StringBuilder();
+
+		for (String service : budget.limits.keySet()) {
+			int total = budget.totals.getOrDefault(service, 0);
+			if (total > budget.limits.get(service)) {
+				if (exceeded.length() > 0) {
+					exceeded.append("; ");
+				}
+				exceeded.append(service).append(" ").append(total).append(" > ").append(budget.limits.get(service))
+					.append(" ").append(budget.callSites.get(service));
+			}
+		}
+
+		if (logService.isDebugEnabled()) {
+			logService.debug("Service calls of {} ({} records): {}", budget.entryPoint, budget.records, budget.callSites);
+		}
+
+		if (exceeded.length() > 0) {
+			String message = "Service budget exceeded by " + budget.entryPoint + " (" + budget.records + " records): " + exceeded;
+			if (root.strict) {
+				throw new RollbackException("OPERATION_NOT_ALLOWED", message);
+			}
+			logService.warn(message);
+		}
+	}
+
+	//Returns the number of chunks needed for the items, at least one.
+	public static int chunks(int items, int chunkSize) {
+		return Math.max(1, (items + chunkSize - 1) / chunkSize);
+	}
+
+	//Returns the frame of the innermost entry point, or the request itself when no entry point has begun.
+	private static vSDKServiceBudget top() {
+		vSDKServiceBudget root = current();
+		return root.frames.isEmpty() ? root : root.frames.get(root.frames.size() - 1);
+	}
+
+	//Returns the budget of the current request, creating it on first use.
+	private static vSDKServiceBudget current() {
+		vSDKServiceBudget budget = RequestContext.get().getValue(CONTEXT_NAME, vSDKServiceBudget.class);
+		if (budget == null) {
+			budget = new vSDKServiceBudget();
+			budget.entryPoint = "request";
+			RequestContext.get().setValue(CONTEXT_NAME, budget);
+		}
+		return budget;
+	}
+}
@@ -0,0 +1,132 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/******************************************************************************
+ * User-Defined Class:  V2VFanOut
+ *-----------------------------------------------------------------------------
+ * Description: Creates crosslinks in several target vaults under one
+ *              deadline, isolating the targets from each other.
+ *
+ *              Each target is handled on its own: its source vault IDs are
+ *              resolved and its crosslinks are created in bulk. A
+ *              RollbackException raised for one target is recorded as that
+ *              target's failure, and the other targets still run.
+ *
+ *              The Vault Java SDK runs a request on a single thread, so
+ *              targets are handled one after another. The deadline is
+ *              checked before each target. Targets that have not started
+ *              when it passes, or once the vSDKWorkBudget of the request is
+ *              nearly used, are skipped.
+ *
+ *              Targets that failed or were skipped, and documents that were
+ *              deferred, are returned by `getUnfinished` so they can be
+ *              resumed, for example through vSDKCalloutOutbox.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKV2VFanOut {
+
+	private final long deadlineMillis;
+	private final vSDKBulkResult targetResult = new vSDKBulkResult();
+	private final Map<String, vSDKBulkResult> documentResults = VaultCollections.newMap();
+	private final Map<String, List<Map<String, String>>> unfinished = VaultCollections.newMap();
+
+	/**
+	 * @param deadlineMillis time allowed for all targets, counted from `execute`
+	 */
+
+	public vSDKV2VFanOut(long deadlineMillis) {
+		this.deadlineMillis = deadlineMillis;
+	}
+
+	/**
+	 * Creates the crosslinks of every target vault until the deadline passes.
+	 *
+	 * @param documentsByConnection crosslink parameters of each document, keyed by target connection.
+	 *        Each document needs a "remoteConnectionId" to resolve its source vault ID.
+	 * @return this fan-out, with its results
+	 */
+
+	public vSDKV2VFanOut execute(Map<String, List<Map<String, String>>> documentsByConnection) {
+
+		LogService logService = ServiceLocator.locate(LogService.class);
+		Instant deadline = Instant.now().plusMillis(deadlineMillis);
+
+		for (String connection : documentsByConnection.keySet()) {
+			List<Map<String, String>> documents = documentsByConnection.get(connection);
+
+			if (!Instant.now().isBefore(deadline)) {
+				targetResult.addSkipped(connection, "Deadline reached before the target was started.");
+				unfinished.put(connection, documents);
+				continue;
+			}
+			if (vSDKWorkBudget.isNearLimit()) {
+				targetResult.addSkipped(connection, vSDKHttpCallouts.WORK_BUDGET_REACHED);
+				unfinished.put(connection, documents);
+				continue;
+			}
+
+			try {
+				vSDKHttpCallouts.v2vSetRemoteVaultIds(connection, documents);
+				vSDKBulkResult result = vSDKHttpCallouts.v2vCreateCrosslinksBulk(connection, documents);
+				documentResults.put(connection, result);
+
+				if (result.hasFailures()) {
+					targetResult.addFailure(connection, result.getSummary());
+				}
+				else {
+					targetResult.addSuccess(connection);
+				}
+
+				//Documents deferred by the rate limiter or circuit breaker can be resumed later.
+				List<Map<String, String>> deferred = VaultCollections.newList();
+				for (Map<String, String> parameters : documents) {
+					if (result.getSkipped().containsKey(parameters.get("docId"))) {
+						deferred.add(parameters);
+					}
+				}
+				if (!deferred.isEmpty()) {
+					unfinished.put(connection, deferred);
+				}
+			}
+			catch (RollbackException e) {
+				logService.error("Crosslinks for connection {} failed: {}", connection, e.getMessage());
+				targetResult.addFailure(connection, e.getMessage());
+				unfinished.put(connection, documents);
+			}
+		}
+		return this;
+	}
+
+	//Returns the outcome of each target vault, keyed by connection.
+	public vSDKBulkResult getTargetResult() {
+		return targetResult;
+	}
+
+	//Returns the outcome of each document, keyed by connection. Targets that failed as a whole or were skipped have none.
+	public Map<String, vSDKBulkResult> getDocumentResults() {
+		return documentResults;
+	}
+
+	//Returns the documents left to create, keyed by connection.
+	public Map<String, List<Map<String, String>>> getUnfinished() {
+		return unfinished;
+	}
+}
@@ -0,0 +1,63 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+
+/******************************************************************************
+ * User-Defined Class:  V2VQueryPosition
+ *-----------------------------------------------------------------------------
+ * Description: Position in the result of a vault to vault query where a
+ *              row consumer stopped reading.
+ *
+ *              The position is the page that was being read, given by its
+ *              page cursor, and the index of the first row of that page
+ *              that was not consumed. The first page of a query has no
+ *              cursor, so the position holds the query itself and the
+ *              query is run again on resume.
+ *
+ *              vSDKHttpCallouts.v2vRemoteQueryResume continues from a
+ *              position, skipping the rows that were already consumed.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKV2VQueryPosition {
+
+	private final String query;
+	private final String pageCursor;
+	private final boolean backward;
+	private final int rowIndex;
+
+	vSDKV2VQueryPosition(String query, String pageCursor, boolean backward, int rowIndex) {
+		this.query = query;
+		this.pageCursor = pageCursor;
+		this.backward = backward;
+		this.rowIndex = rowIndex;
+	}
+
+	//Returns the query when the position is on its first page, otherwise null.
+	public String getQuery() {
+		return query;
+	}
+
+	//Returns the next_page or previous_page path of the page, or null when the position is on the first page of the query.
+	public String getPageCursor() {
+		return pageCursor;
+	}
+
+	//Returns true when previous_page cursors are followed instead of next_page cursors.
+	public boolean isBackward() {
+		return backward;
+	}
+
+	//Returns the index in the page of the first row that was not consumed.
+	public int getRowIndex() {
+		return rowIndex;
+	}
+}
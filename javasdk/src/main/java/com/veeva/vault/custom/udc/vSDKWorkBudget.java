@@ -0,0 +1,172 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/******************************************************************************
+ * User-Defined Class:  WorkBudget
+ *-----------------------------------------------------------------------------
+ * Description: Tracks the elapsed time, callouts and records of a request so
+ *              an entry point can stop before the SDK execution limits end
+ *              the request halfway.
+ *
+ *              An entry point calls `begin`, and optionally `limits`, and
+ *              calls `end` from a finally block when it is done. Bulk
+ *              loops check `isNearLimit` before each unit of work, such as
+ *              a chunk. Once THRESHOLD_PERCENT of any limit is used, the
+ *              remaining units are reported as skipped with
+ *              vSDKHttpCallouts.WORK_BUDGET_REACHED and the entry point
+ *              queues them in vSDKCalloutOutbox as a continuation.
+ *
+ *              Callouts are counted by vSDKCalloutExecutor. Records are
+ *              counted by the bulk loops.
+ *
+ *              Entry points nest when a save fires another trigger. Only
+ *              the outermost `begin` starts the clock and sets the limits;
+ *              a nested entry point shares the budget of the request.
+ *
+ *-----------------------------------------------------------------------------
+ * Copyright (c) 2019 Veeva Systems Inc.  All Rights Reserved.
+ *      This code is based on pre-existing content developed and
+ *      owned by Veeva Systems Inc. and may only be used in connection
+ *      with the deliverable with which it was provided to Customer.
+ *--------------------------------------------------------------------
+ *
+ *******************************************************************************/
+
+@UserDefinedClassInfo()
+public class vSDKWorkBudget implements RequestContextValue {
+
+	static final String CONTEXT_NAME = "vsdk_work_budget";
+	// Default limits of a request, well below the SDK execution limits
+	static final long DEFAULT_MAX_MILLIS = 60000;
+	static final int DEFAULT_MAX_CALLOUTS = 100;
+	static final int DEFAULT_MAX_RECORDS = 10000;
+	// Share of a limit after which the remaining work is deferred
+	static final int THRESHOLD_PERCENT = 80;
+
+	private String entryPoint;
+	private Instant start = Instant.now();
+	private long maxMillis = DEFAULT_MAX_MILLIS;
+	private int maxCallouts = DEFAULT_MAX_CALLOUTS;
+	private int maxRecords = DEFAULT_MAX_RECORDS;
+	private int callouts;
+	private int records;
+	private String reason;
+	// Entry points that have begun and not ended
+	private int depth;
+
+	/**
+	 * Starts tracking an entry point with the default limits. Work tracked before is discarded,
+	 * unless another entry point is running, in which case its budget is kept.
+	 *
+	 * @param entryPoint name used in the log, such as "vSDKRecordService AFTER_INSERT"
+	 */
+
+	public static void begin(String entryPoint) {
+		vSDKWorkBudget budget = current();
+		if (budget.depth++ > 0) {
+			return;
+		}
+		budget.entryPoint = entryPoint;
+		budget.start = Instant.now();
+		budget.maxMillis = DEFAULT_MAX_MILLIS;
+		budget.maxCallouts = DEFAULT_MAX_CALLOUTS;
+		budget.maxRecords = DEFAULT_MAX_RECORDS;
+		budget.callouts = 0;
+		budget.records = 0;
+		budget.reason = null;
+	}
+
+	//Ends the entry point started by the matching `begin`.
+	public static void end() {
+		vSDKWorkBudget budget = current();
+		if (budget.depth > 0) {
+			budget.depth--;
+		}
+	}
+
+	/**
+	 * Replaces the default limits of the entry point. Ignored in a nested entry point, which
+	 * runs within the limits of the outermost one.
+	 *
+	 * @param maxMillis elapsed time allowed since `begin`
+	 * @param maxCallouts HTTP callouts allowed
+	 * @param maxRecords records or documents allowed to be processed
+	 */
+
+	public static void limits(long maxMillis, int maxCallouts, int maxRecords) {
+		vSDKWorkBudget budget = current();
+		if (budget.depth > 1) {
+			return;
+		}
+		budget.maxMillis = maxMillis;
+		budget.maxCallouts = maxCallouts;
+		budget.maxRecords = maxRecords;
+	}
+
+	//Counts one HTTP callout.
+	public static void countCallout() {
+		current().callouts++;
+	}
+
+	//Counts records or documents that have been processed.
+	public static void countRecords(int count) {
+		current().records += count;
+	}
+
+	/**
+	 * Checks whether a limit is nearly used up. Once it is, the result stays true for the rest of the request,
+	 * so the units of work after the first deferred one are deferred too.
+	 *
+	 * @return true if the remaining work should be deferred
+	 */
+
+	public static boolean isNearLimit() {
+
+		vSDKWorkBudget budget = current();
+		if (budget.reason != null) {
+			return true;
+		}
+
+		long elapsed = Duration.between(budget.start, Instant.now()).toMillis();
+		if (elapsed * 100 >= budget.maxMillis * THRESHOLD_PERCENT) {
+			budget.reason = "elapsed time " + elapsed + " of " + budget.maxMillis + " ms";
+		}
+		else if (budget.callouts * 100 >= budget.maxCallouts * THRESHOLD_PERCENT) {
+			budget.reason = "callouts " + budget.callouts + " of " + budget.maxCallouts;
+		}
+		else if (budget.records * 100 >= budget.maxRecords * THRESHOLD_PERCENT) {
+			budget.reason = "records " + budget.records + " of " + budget.maxRecords;
+		}
+		else {
+			return false;
+		}
+
+		ServiceLocator.locate(LogService.class).warn("Work budget of {} nearly used ({}). The remaining work is deferred.",
+				budget.entryPoint, budget.reason);
+		return true;
+	}
+
+	//Returns the limit that was nearly used up, or null.
+	public static String getReason() {
+		return current().reason;
+	}
+
+	//Returns the budget of the current request, creating it on first use.
+	private static vSDKWorkBudget current() {
+		vSDKWorkBudget budget = RequestContext.get().getValue(CONTEXT_NAME, vSDKWorkBudget.class);
+		if (budget == null) {
+			budget = new vSDKWorkBudget();
+			budget.entryPoint = "request";
+			RequestContext.get().setValue(CONTEXT_NAME, budget);
+		}
+		return budget;
+	}
+}